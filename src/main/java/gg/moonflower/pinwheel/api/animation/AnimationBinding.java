@@ -0,0 +1,49 @@
+package gg.moonflower.pinwheel.api.animation;
+
+import gg.moonflower.pinwheel.api.geometry.GeometryModel;
+import gg.moonflower.pinwheel.api.geometry.GeometryTree;
+
+import java.util.Arrays;
+
+/**
+ * Resolves the bones animated by an {@link AnimationData} to bone indices in a {@link GeometryTree} ahead of time.
+ * This allows animations to be applied without looking up bones by name every frame.
+ *
+ * @param animation   The animation that was bound
+ * @param boneIndices The index in the tree of the bone for each {@link AnimationData#boneAnimations()} or <code>-1</code> if the bone is not in the tree
+ * @author Ocelot
+ * @see GeometryModel#applyAnimations(gg.moonflower.molangcompiler.api.MolangEnvironment, java.util.List, AnimationBinding[])
+ * @since 1.4.0
+ */
+public record AnimationBinding(AnimationData animation, int[] boneIndices) {
+
+    public AnimationBinding {
+        if (boneIndices.length != animation.boneAnimations().length) {
+            throw new IllegalArgumentException("Expected " + animation.boneAnimations().length + " bone indices, was " + boneIndices.length);
+        }
+    }
+
+    /**
+     * Binds the specified animation to the bones of a tree. The binding is only valid for trees with the same bone layout.
+     *
+     * @param animation The animation to bind
+     * @param tree      The tree to look up bones in
+     * @return A new binding for the animation
+     */
+    public static AnimationBinding bind(AnimationData animation, GeometryTree tree) {
+        AnimationData.BoneAnimation[] boneAnimations = animation.boneAnimations();
+        int[] boneIndices = new int[boneAnimations.length];
+        for (int i = 0; i < boneAnimations.length; i++) {
+            boneIndices[i] = tree.getBoneIndex(boneAnimations[i].name());
+        }
+        return new AnimationBinding(animation, boneIndices);
+    }
+
+    @Override
+    public String toString() {
+        return "AnimationBinding{" +
+                "animation=" + this.animation.name() +
+                ", boneIndices=" + Arrays.toString(this.boneIndices) +
+                '}';
+    }
+}
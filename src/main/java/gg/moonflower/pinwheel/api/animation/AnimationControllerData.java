@@ -0,0 +1,251 @@
+package gg.moonflower.pinwheel.api.animation;
+
+import com.google.gson.*;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.pinwheel.api.JsonTupleParser;
+import gg.moonflower.pinwheel.impl.PinwheelGsonHelper;
+
+import java.lang.reflect.Type;
+import java.util.*;
+
+/**
+ * <p>Deserializes Bedrock animation controllers from JSON.</p>
+ * <p>Transition targets are resolved to state indices and all conditions are compiled when parsed,
+ * so nothing has to be looked up by name while the controller is running.</p>
+ *
+ * @param name         The name of the controller
+ * @param initialState The index of the state the controller starts in
+ * @param states       All states in the controller
+ * @author Ocelot
+ * @see AnimationStateMachine
+ * @since 1.4.0
+ */
+public record AnimationControllerData(String name, int initialState, State[] states) {
+
+    /**
+     * The state controllers start in if no initial state is specified.
+     */
+    public static final String DEFAULT_STATE = "default";
+
+    public AnimationControllerData {
+        if (initialState < 0 || initialState >= states.length) {
+            throw new IllegalArgumentException("Invalid initial state: " + initialState);
+        }
+        for (State state : states) {
+            for (Transition transition : state.transitions) {
+                if (transition.target < 0 || transition.target >= states.length) {
+                    throw new IllegalArgumentException("Invalid transition target in " + state.name + ": " + transition.target);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param name The name of the state to find
+     * @return The index of the state with that name or <code>-1</code> if there is no state with that name
+     */
+    public int getStateIndex(String name) {
+        for (int i = 0; i < this.states.length; i++) {
+            if (this.states[i].name.equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "AnimationControllerData{" +
+                "name='" + this.name + '\'' +
+                ", initialState=" + this.initialState +
+                ", states=" + Arrays.toString(this.states) +
+                '}';
+    }
+
+    /**
+     * A single state in an animation controller.
+     *
+     * @param name            The name of the state
+     * @param animations      The animations played while in this state
+     * @param transitions     The transitions to check while in this state, in order
+     * @param blendTransition The time in seconds to cross-fade out of this state when transitioning
+     * @param onEntry         The expressions to execute when entering this state
+     * @param onExit          The expressions to execute when leaving this state
+     * @author Ocelot
+     * @since 1.4.0
+     */
+    public record State(String name, StateAnimation[] animations, Transition[] transitions, float blendTransition,
+                        MolangExpression[] onEntry, MolangExpression[] onExit) {
+
+        @Override
+        public String toString() {
+            return "State{" +
+                    "name='" + this.name + '\'' +
+                    ", animations=" + Arrays.toString(this.animations) +
+                    ", transitions=" + Arrays.toString(this.transitions) +
+                    ", blendTransition=" + this.blendTransition +
+                    ", onEntry=" + Arrays.toString(this.onEntry) +
+                    ", onExit=" + Arrays.toString(this.onExit) +
+                    '}';
+        }
+    }
+
+    /**
+     * An animation that plays in a state.
+     *
+     * @param animation The short name of the animation
+     * @param weight    The weight to play the animation with
+     * @author Ocelot
+     * @since 1.4.0
+     */
+    public record StateAnimation(String animation, MolangExpression weight) {
+
+        @Override
+        public String toString() {
+            return "StateAnimation{" +
+                    "animation='" + this.animation + '\'' +
+                    ", weight=" + this.weight +
+                    '}';
+        }
+    }
+
+    /**
+     * A transition to another state.
+     *
+     * @param target    The index of the state to transition to
+     * @param condition The condition that triggers the transition when it is not <code>0</code>
+     * @author Ocelot
+     * @since 1.4.0
+     */
+    public record Transition(int target, MolangExpression condition) {
+
+        @Override
+        public String toString() {
+            return "Transition{" +
+                    "target=" + this.target +
+                    ", condition=" + this.condition +
+                    '}';
+        }
+    }
+
+    public static class Deserializer implements JsonDeserializer<AnimationControllerData[]> {
+
+        private static StateAnimation[] parseAnimations(JsonObject json) throws JsonParseException {
+            if (!json.has("animations")) {
+                return new StateAnimation[0];
+            }
+
+            JsonArray animationsJson = PinwheelGsonHelper.getAsJsonArray(json, "animations");
+            List<StateAnimation> animations = new ArrayList<>(animationsJson.size());
+            for (int i = 0; i < animationsJson.size(); i++) {
+                JsonElement element = animationsJson.get(i);
+                if (element.isJsonObject()) {
+                    for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+                        animations.add(new StateAnimation(entry.getKey(), JsonTupleParser.parseExpression(entry.getValue(), entry.getKey())));
+                    }
+                } else {
+                    animations.add(new StateAnimation(PinwheelGsonHelper.convertToString(element, "animations[" + i + "]"), MolangExpression.of(1.0F)));
+                }
+            }
+            return animations.toArray(new StateAnimation[0]);
+        }
+
+        private static Transition[] parseTransitions(JsonObject json, Map<String, Integer> stateIndices) throws JsonParseException {
+            if (!json.has("transitions")) {
+                return new Transition[0];
+            }
+
+            JsonArray transitionsJson = PinwheelGsonHelper.getAsJsonArray(json, "transitions");
+            List<Transition> transitions = new ArrayList<>(transitionsJson.size());
+            for (int i = 0; i < transitionsJson.size(); i++) {
+                for (Map.Entry<String, JsonElement> entry : PinwheelGsonHelper.convertToJsonObject(transitionsJson.get(i), "transitions[" + i + "]").entrySet()) {
+                    Integer target = stateIndices.get(entry.getKey());
+                    if (target == null) {
+                        throw new JsonSyntaxException("Unknown state: " + entry.getKey());
+                    }
+                    transitions.add(new Transition(target, JsonTupleParser.parseExpression(entry.getValue(), entry.getKey())));
+                }
+            }
+            return transitions.toArray(new Transition[0]);
+        }
+
+        private static float parseBlendTransition(JsonObject json) throws JsonParseException {
+            if (!json.has("blend_transition")) {
+                return 0;
+            }
+
+            JsonElement element = json.get("blend_transition");
+            if (!element.isJsonObject()) {
+                return Math.max(0, PinwheelGsonHelper.convertToFloat(element, "blend_transition"));
+            }
+
+            // Blend curves are approximated by a linear fade over the full length of the curve
+            float length = 0;
+            for (String key : element.getAsJsonObject().keySet()) {
+                try {
+                    length = Math.max(length, Float.parseFloat(key));
+                } catch (NumberFormatException e) {
+                    throw new JsonParseException("Invalid blend transition time '" + key + "'", e);
+                }
+            }
+            return length;
+        }
+
+        private static MolangExpression[] parseScripts(JsonObject json, String name) throws JsonParseException {
+            if (!json.has(name)) {
+                return new MolangExpression[0];
+            }
+
+            JsonArray scriptsJson = PinwheelGsonHelper.getAsJsonArray(json, name);
+            List<MolangExpression> scripts = new ArrayList<>(scriptsJson.size());
+            for (int i = 0; i < scriptsJson.size(); i++) {
+                String script = PinwheelGsonHelper.convertToString(scriptsJson.get(i), name + "[" + i + "]");
+                // Events and commands are handled by the game, not MoLang
+                if (script.startsWith("@") || script.startsWith("/")) {
+                    continue;
+                }
+                scripts.add(JsonTupleParser.parseExpression(scriptsJson.get(i), name + "[" + i + "]"));
+            }
+            return scripts.toArray(new MolangExpression[0]);
+        }
+
+        @Override
+        public AnimationControllerData[] deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
+            List<AnimationControllerData> controllers = new ArrayList<>();
+
+            JsonObject jsonObject = json.getAsJsonObject();
+            for (Map.Entry<String, JsonElement> controllerEntry : jsonObject.entrySet()) {
+                String controllerName = controllerEntry.getKey();
+                JsonObject controllerObject = PinwheelGsonHelper.convertToJsonObject(controllerEntry.getValue(), controllerName);
+                JsonObject statesObject = PinwheelGsonHelper.getAsJsonObject(controllerObject, "states");
+
+                // Resolve all state names first so transitions can refer to states defined after them
+                Map<String, Integer> stateIndices = new HashMap<>();
+                for (String stateName : statesObject.keySet()) {
+                    stateIndices.put(stateName, stateIndices.size());
+                }
+
+                String initialStateName = PinwheelGsonHelper.getAsString(controllerObject, "initial_state", DEFAULT_STATE);
+                Integer initialState = stateIndices.get(initialStateName);
+                if (initialState == null) {
+                    throw new JsonSyntaxException("Unknown initial state in " + controllerName + ": " + initialStateName);
+                }
+
+                State[] states = new State[stateIndices.size()];
+                for (Map.Entry<String, JsonElement> stateEntry : statesObject.entrySet()) {
+                    String stateName = stateEntry.getKey();
+                    JsonObject stateObject = PinwheelGsonHelper.convertToJsonObject(stateEntry.getValue(), stateName);
+                    try {
+                        states[stateIndices.get(stateName)] = new State(stateName, parseAnimations(stateObject), parseTransitions(stateObject, stateIndices), parseBlendTransition(stateObject), parseScripts(stateObject, "on_entry"), parseScripts(stateObject, "on_exit"));
+                    } catch (JsonParseException e) {
+                        throw new JsonParseException("Failed to parse state " + stateName + " in " + controllerName, e);
+                    }
+                }
+
+                controllers.add(new AnimationControllerData(controllerName, initialState, states));
+            }
+
+            return controllers.toArray(new AnimationControllerData[0]);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package gg.moonflower.pinwheel.api.animation;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import gg.moonflower.pinwheel.impl.animation.AnimationControllerParserImpl;
+
+import java.io.Reader;
+
+/**
+ * Helper to read {@link AnimationControllerData} from JSON.
+ *
+ * @author Ocelot
+ * @since 1.4.0
+ */
+public interface AnimationControllerParser {
+
+    /**
+     * Creates new animation controllers from the specified JSON element.
+     *
+     * @param reader The reader to get data from
+     * @return All animation controllers in the json
+     */
+    static AnimationControllerData[] parse(Reader reader) throws JsonSyntaxException, JsonIOException {
+        return parse(JsonParser.parseReader(reader));
+    }
+
+    /**
+     * Creates new animation controllers from the specified JSON element.
+     *
+     * @param reader The reader to get data from
+     * @return All animation controllers in the json
+     */
+    static AnimationControllerData[] parse(JsonReader reader) throws JsonSyntaxException, JsonIOException {
+        return parse(JsonParser.parseReader(reader));
+    }
+
+    /**
+     * Creates new animation controllers from the specified JSON element.
+     *
+     * @param json The raw json string
+     * @return All animation controllers in the json
+     */
+    static AnimationControllerData[] parse(String json) throws JsonSyntaxException {
+        return parse(JsonParser.parseString(json));
+    }
+
+    /**
+     * Creates new animation controllers from the specified JSON element.
+     *
+     * @param json The parsed json element
+     * @return All animation controllers in the json
+     */
+    static AnimationControllerData[] parse(JsonElement json) throws JsonSyntaxException {
+        return AnimationControllerParserImpl.parse(json);
+    }
+}
@@ -1,9 +1,13 @@
 package gg.moonflower.pinwheel.api.animation;
 
 import com.google.gson.*;
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
 import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
 import gg.moonflower.pinwheel.api.JsonTupleParser;
+import gg.moonflower.pinwheel.impl.MolangConstants;
 import gg.moonflower.pinwheel.impl.PinwheelGsonHelper;
+import org.jetbrains.annotations.Nullable;
 
 import java.lang.reflect.Type;
 import java.util.*;
@@ -193,19 +197,40 @@ public record AnimationData(String name, Loop loop, MolangExpression blendWeight
             }
             return 7.5625F * (x -= 0.95454545454F) * x + 0.984375F;
         }),
-        EASE_IN_BOUNCE(x -> 1.0F - EASE_OUT_BOUNCE.function.apply(1.0F - x)),
-        EASE_IN_OUT_BOUNCE(x -> x < 0.5 ? (1.0F - EASE_OUT_BOUNCE.function.apply(1.0F - 2.0F * x)) / 2.0F : (1.0F + EASE_OUT_BOUNCE.function.apply(2.0F * x - 1.0F)) / 2.0F);
+        EASE_IN_BOUNCE(x -> 1.0F - EASE_OUT_BOUNCE.easing.ease(1.0F - x)),
+        EASE_IN_OUT_BOUNCE(x -> x < 0.5 ? (1.0F - EASE_OUT_BOUNCE.easing.ease(1.0F - 2.0F * x)) / 2.0F : (1.0F + EASE_OUT_BOUNCE.easing.ease(2.0F * x - 1.0F)) / 2.0F);
 
-        private final Function<Float, Float> function;
+        private final Easing easing;
 
-        LerpMode(Function<Float, Float> function) {
-            this.function = function;
+        LerpMode(Easing easing) {
+            this.easing = easing;
         }
 
+        /**
+         * Applies this easing function to the specified progress without boxing.
+         *
+         * @param value The linear progress from <code>0</code> to <code>1</code>
+         * @return The eased progress clamped from <code>0</code> to <code>1</code>
+         * @since 1.4.0
+         */
+        public float ease(float value) {
+            float ease = this.easing.ease(value);
+            return Math.min(1.0F, Math.max(0.0F, ease));
+        }
+
+        /**
+         * @deprecated Use {@link #ease(float)} to avoid boxing
+         */
+        @Deprecated
         @Override
         public Float apply(Float value) {
-            float apply = this.function.apply(value);
-            return Math.min(1.0F, Math.max(0.0F, apply));
+            return this.ease(value);
+        }
+
+        @FunctionalInterface
+        private interface Easing {
+
+            float ease(float x);
         }
     }
 
@@ -220,17 +245,34 @@ public record AnimationData(String name, Loop loop, MolangExpression blendWeight
     }
 
     /**
-     * A collection of key frames to animate a single bone.
+     * <p>A collection of key frames to animate a single bone.</p>
+     * <p>Channels with constant values keep their key frames, but are sampled from the constant channel instead.</p>
      *
-     * @param name           The name of the bone to animate
-     * @param positionFrames The position channel of key frames
-     * @param rotationFrames The rotation channel of key frames
-     * @param scaleFrames    The scale channel of key frames
+     * @param name             The name of the bone to animate
+     * @param positionFrames   The position channel of key frames
+     * @param rotationFrames   The rotation channel of key frames
+     * @param scaleFrames      The scale channel of key frames
+     * @param constantPosition The position channel as constant values or <code>null</code> if any frame uses an expression
+     * @param constantRotation The rotation channel as constant values or <code>null</code> if any frame uses an expression
+     * @param constantScale    The scale channel as constant values or <code>null</code> if any frame uses an expression
      * @author Ocelot
      * @since 1.0.0
      */
     public record BoneAnimation(String name, KeyFrame[] positionFrames, KeyFrame[] rotationFrames,
-                                KeyFrame[] scaleFrames) {
+                                KeyFrame[] scaleFrames, @Nullable ConstantChannel constantPosition,
+                                @Nullable ConstantChannel constantRotation, @Nullable ConstantChannel constantScale) {
+
+        /**
+         * Creates a bone animation from key frames. Channels where every value is a plain number are converted to constant channels.
+         *
+         * @param name           The name of the bone to animate
+         * @param positionFrames The position channel of key frames
+         * @param rotationFrames The rotation channel of key frames
+         * @param scaleFrames    The scale channel of key frames
+         */
+        public BoneAnimation(String name, KeyFrame[] positionFrames, KeyFrame[] rotationFrames, KeyFrame[] scaleFrames) {
+            this(name, positionFrames, rotationFrames, scaleFrames, ConstantChannel.of(positionFrames), ConstantChannel.of(rotationFrames), ConstantChannel.of(scaleFrames));
+        }
 
         @Override
         public String toString() {
@@ -243,6 +285,76 @@ public record AnimationData(String name, Loop loop, MolangExpression blendWeight
         }
     }
 
+    /**
+     * <p>A channel of key frames where every value is a constant number. This allows sampling without evaluating any MoLang.</p>
+     * <p>Values are stored as x, y, and z for each frame.</p>
+     *
+     * @param times     The time of each frame in seconds
+     * @param lerpModes The function to use when interpolating to and from each frame
+     * @param pre       The values to use when transitioning to each frame
+     * @param post      The values to use when transitioning away from each frame
+     * @author Ocelot
+     * @since 1.4.0
+     */
+    public record ConstantChannel(float[] times, LerpMode[] lerpModes, float[] pre, float[] post) {
+
+        public ConstantChannel {
+            if (lerpModes.length != times.length) {
+                throw new IllegalArgumentException("Expected " + times.length + " lerp modes, was " + lerpModes.length);
+            }
+            if (pre.length != times.length * 3 || post.length != times.length * 3) {
+                throw new IllegalArgumentException("Expected " + times.length * 3 + " values");
+            }
+        }
+
+        /**
+         * Converts key frames into a constant channel. Expressions are treated as constant when they are printed as a plain number
+         * and evaluate to that number, which is the case for {@link MolangExpression#of(float)} and compiled number literals.
+         *
+         * @param frames The key frames sorted by time
+         * @return A constant channel with the same values or <code>null</code> if any value is not constant
+         */
+        public static @Nullable ConstantChannel of(KeyFrame[] frames) {
+            float[] times = new float[frames.length];
+            LerpMode[] lerpModes = new LerpMode[frames.length];
+            float[] pre = new float[frames.length * 3];
+            float[] post = new float[frames.length * 3];
+            MolangEnvironment environment = MolangRuntime.runtime().create();
+            for (int i = 0; i < frames.length; i++) {
+                KeyFrame frame = frames[i];
+                times[i] = frame.time();
+                lerpModes[i] = frame.lerpMode();
+                if (!getConstant(environment, frame.transformPreX(), pre, i * 3) ||
+                        !getConstant(environment, frame.transformPreY(), pre, i * 3 + 1) ||
+                        !getConstant(environment, frame.transformPreZ(), pre, i * 3 + 2) ||
+                        !getConstant(environment, frame.transformPostX(), post, i * 3) ||
+                        !getConstant(environment, frame.transformPostY(), post, i * 3 + 1) ||
+                        !getConstant(environment, frame.transformPostZ(), post, i * 3 + 2)) {
+                    return null;
+                }
+            }
+            return new ConstantChannel(times, lerpModes, pre, post);
+        }
+
+        private static boolean getConstant(MolangEnvironment environment, MolangExpression expression, float[] values, int index) {
+            float value = MolangConstants.getConstant(environment, expression);
+            if (Float.isNaN(value)) {
+                return false;
+            }
+            values[index] = value;
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "ConstantChannel{" +
+                    "times=" + Arrays.toString(this.times) +
+                    ", pre=" + Arrays.toString(this.pre) +
+                    ", post=" + Arrays.toString(this.post) +
+                    '}';
+        }
+    }
+
     /**
      * A key frame for a specific channel in an animation.
      *
@@ -371,7 +483,7 @@ public record AnimationData(String name, Loop loop, MolangExpression blendWeight
             }
         }
 
-        private static void parseTransform(Collection<KeyFrame> frames, JsonObject json, String name, Supplier<MolangExpression[]> defaultValue) throws JsonParseException {
+        private static void parseTransform(Collection<ParsedFrame> frames, JsonObject json, String name, Supplier<MolangExpression[]> defaultValue, float[] defaultConstant) throws JsonParseException {
             if (!json.has(name)) {
                 return;
             }
@@ -381,23 +493,24 @@ public record AnimationData(String name, Loop loop, MolangExpression blendWeight
                 for (Map.Entry<String, JsonElement> entry : transformJson.getAsJsonObject().entrySet()) {
                     try {
                         float time = Float.parseFloat(entry.getKey());
-                        if (frames.stream().anyMatch(keyFrame -> keyFrame.time() == time)) {
+                        if (frames.stream().anyMatch(parsedFrame -> parsedFrame.frame.time() == time)) {
                             throw new JsonSyntaxException("Duplicate channel time '" + time + "'");
                         }
 
-                        ChannelData data = parseChannel(transformJson.getAsJsonObject(), entry.getKey(), defaultValue);
-                        frames.add(new KeyFrame(time, data.lerpMode, data.pre[0], data.pre[1], data.pre[2], data.post[0], data.post[1], data.post[2]));
+                        ChannelData data = parseChannel(transformJson.getAsJsonObject(), entry.getKey(), defaultValue, defaultConstant);
+                        frames.add(new ParsedFrame(new KeyFrame(time, data.lerpMode, data.pre[0], data.pre[1], data.pre[2], data.post[0], data.post[1], data.post[2]), data.constantPre, data.constantPost));
                     } catch (NumberFormatException e) {
                         throw new JsonParseException("Invalid keyframe time '" + entry.getKey() + "'", e);
                     }
                 }
             } else {
                 MolangExpression[] values = JsonTupleParser.getExpression(json, name, 3, defaultValue);
-                frames.add(new KeyFrame(0, LerpMode.LINEAR, values[0], values[1], values[2], values[0], values[1], values[2]));
+                float[] constant = getConstant(json, name, 3, defaultConstant);
+                frames.add(new ParsedFrame(new KeyFrame(0, LerpMode.LINEAR, values[0], values[1], values[2], values[0], values[1], values[2]), constant, constant));
             }
         }
 
-        private static ChannelData parseChannel(JsonObject json, String name, Supplier<MolangExpression[]> defaultValue) throws JsonSyntaxException {
+        private static ChannelData parseChannel(JsonObject json, String name, Supplier<MolangExpression[]> defaultValue, float[] defaultConstant) throws JsonSyntaxException {
             if (!json.has(name) && !json.get(name).isJsonObject() && !json.get(name).isJsonArray()) {
                 throw new JsonSyntaxException("Missing " + name + ", expected to find a JsonObject or JsonArray");
             }
@@ -426,11 +539,80 @@ public record AnimationData(String name, Loop loop, MolangExpression blendWeight
 
                 // Parse channels. Pre will default to post if not present
                 MolangExpression[] post = JsonTupleParser.getExpression(transformationObject, "post", 3, null);
-                return new ChannelData(JsonTupleParser.getExpression(transformationObject, "pre", 3, () -> post), post, lerpMode);
+                MolangExpression[] pre = JsonTupleParser.getExpression(transformationObject, "pre", 3, () -> post);
+                float[] constantPost = getConstant(transformationObject, "post", 3, null);
+                float[] constantPre = getConstant(transformationObject, "pre", 3, constantPost);
+                return new ChannelData(pre, post, constantPre, constantPost, lerpMode);
             }
 
             MolangExpression[] transformation = JsonTupleParser.getExpression(json, name, 3, defaultValue);
-            return new ChannelData(transformation, transformation, LerpMode.LINEAR);
+            float[] constant = getConstant(json, name, 3, defaultConstant);
+            return new ChannelData(transformation, transformation, constant, constant, LerpMode.LINEAR);
+        }
+
+        /**
+         * Parses the same tuple as {@link JsonTupleParser#getExpression(JsonObject, String, int, Supplier)}, but only if every value is a plain number.
+         */
+        private static float @Nullable [] getConstant(JsonObject json, String name, int length, float @Nullable [] defaultValue) {
+            if (!json.has(name)) {
+                return defaultValue;
+            }
+
+            JsonElement element = json.get(name);
+            if (element.isJsonArray()) {
+                JsonArray vectorJson = element.getAsJsonArray();
+                float[] values = new float[length];
+                for (int i = 0; i < length; i++) {
+                    JsonElement value = vectorJson.get(vectorJson.size() == 1 ? 0 : i);
+                    if (!isConstant(value)) {
+                        return null;
+                    }
+                    values[i] = value.getAsFloat();
+                }
+                return values;
+            }
+
+            if (!isConstant(element)) {
+                return null;
+            }
+            float[] values = new float[length];
+            Arrays.fill(values, element.getAsFloat());
+            return values;
+        }
+
+        private static boolean isConstant(JsonElement json) {
+            if (!json.isJsonPrimitive()) {
+                return false;
+            }
+            JsonPrimitive primitive = json.getAsJsonPrimitive();
+            return primitive.isNumber() || (primitive.isString() && MolangConstants.isNumber(primitive.getAsString()));
+        }
+
+        private static @Nullable ConstantChannel createConstantChannel(List<ParsedFrame> frames) {
+            float[] times = new float[frames.size()];
+            LerpMode[] lerpModes = new LerpMode[frames.size()];
+            float[] pre = new float[frames.size() * 3];
+            float[] post = new float[frames.size() * 3];
+            for (int i = 0; i < frames.size(); i++) {
+                ParsedFrame frame = frames.get(i);
+                if (frame.constantPre == null || frame.constantPost == null) {
+                    return null;
+                }
+
+                times[i] = frame.frame.time();
+                lerpModes[i] = frame.frame.lerpMode();
+                System.arraycopy(frame.constantPre, 0, pre, i * 3, 3);
+                System.arraycopy(frame.constantPost, 0, post, i * 3, 3);
+            }
+            return new ConstantChannel(times, lerpModes, pre, post);
+        }
+
+        private static KeyFrame[] getFrames(List<ParsedFrame> frames) {
+            KeyFrame[] keyFrames = new KeyFrame[frames.size()];
+            for (int i = 0; i < keyFrames.length; i++) {
+                keyFrames[i] = frames.get(i).frame;
+            }
+            return keyFrames;
         }
 
         @Override
@@ -453,20 +635,23 @@ public record AnimationData(String name, Loop loop, MolangExpression blendWeight
                 List<TimelineEffect> timlineEffects = new ArrayList<>();
 
                 /* Parse Bone Animations */
-                List<KeyFrame> positions = new ArrayList<>();
-                List<KeyFrame> rotations = new ArrayList<>();
-                List<KeyFrame> scales = new ArrayList<>();
+                List<ParsedFrame> positions = new ArrayList<>();
+                List<ParsedFrame> rotations = new ArrayList<>();
+                List<ParsedFrame> scales = new ArrayList<>();
                 for (Map.Entry<String, JsonElement> boneAnimationEntry : PinwheelGsonHelper.getAsJsonObject(animationObject, "bones").entrySet()) {
                     JsonObject boneAnimationObject = boneAnimationEntry.getValue().getAsJsonObject();
 
-                    parseTransform(positions, boneAnimationObject, "position", () -> new MolangExpression[]{MolangExpression.ZERO, MolangExpression.ZERO, MolangExpression.ZERO});
-                    parseTransform(rotations, boneAnimationObject, "rotation", () -> new MolangExpression[]{MolangExpression.ZERO, MolangExpression.ZERO, MolangExpression.ZERO});
-                    parseTransform(scales, boneAnimationObject, "scale", () -> new MolangExpression[]{MolangExpression.of(1), MolangExpression.of(1), MolangExpression.of(1)});
+                    parseTransform(positions, boneAnimationObject, "position", () -> new MolangExpression[]{MolangExpression.ZERO, MolangExpression.ZERO, MolangExpression.ZERO}, new float[]{0, 0, 0});
+                    parseTransform(rotations, boneAnimationObject, "rotation", () -> new MolangExpression[]{MolangExpression.ZERO, MolangExpression.ZERO, MolangExpression.ZERO}, new float[]{0, 0, 0});
+                    parseTransform(scales, boneAnimationObject, "scale", () -> new MolangExpression[]{MolangExpression.of(1), MolangExpression.of(1), MolangExpression.of(1)}, new float[]{1, 1, 1});
 
-                    positions.sort((a, b) -> Float.compare(a.time(), b.time()));
-                    rotations.sort((a, b) -> Float.compare(a.time(), b.time()));
-                    scales.sort((a, b) -> Float.compare(a.time(), b.time()));
-                    bones.add(new BoneAnimation(boneAnimationEntry.getKey(), positions.toArray(new KeyFrame[0]), rotations.toArray(new KeyFrame[0]), scales.toArray(new KeyFrame[0])));
+                    positions.sort((a, b) -> Float.compare(a.frame.time(), b.frame.time()));
+                    rotations.sort((a, b) -> Float.compare(a.frame.time(), b.frame.time()));
+                    scales.sort((a, b) -> Float.compare(a.frame.time(), b.frame.time()));
+                    ConstantChannel constantPosition = createConstantChannel(positions);
+                    ConstantChannel constantRotation = createConstantChannel(rotations);
+                    ConstantChannel constantScale = createConstantChannel(scales);
+                    bones.add(new BoneAnimation(boneAnimationEntry.getKey(), getFrames(positions), getFrames(rotations), getFrames(scales), constantPosition, constantRotation, constantScale));
 
                     positions.clear();
                     rotations.clear();
@@ -495,7 +680,11 @@ public record AnimationData(String name, Loop loop, MolangExpression blendWeight
             return animations.toArray(new AnimationData[0]);
         }
 
-        private record ChannelData(MolangExpression[] pre, MolangExpression[] post, LerpMode lerpMode) {
+        private record ChannelData(MolangExpression[] pre, MolangExpression[] post, float @Nullable [] constantPre,
+                                   float @Nullable [] constantPost, LerpMode lerpMode) {
+        }
+
+        private record ParsedFrame(KeyFrame frame, float @Nullable [] constantPre, float @Nullable [] constantPost) {
         }
     }
 }
@@ -0,0 +1,50 @@
+package gg.moonflower.pinwheel.api.animation;
+
+import gg.moonflower.pinwheel.impl.animation.AnimationEffectDispatcherImpl;
+
+/**
+ * <p>Fires the sound, particle, and timeline effects of a {@link PlayingAnimation} as the animation time passes them.</p>
+ * <p>A cursor is kept for each effect channel, so each update only visits the effects that are fired.
+ * Effects are fired in time order when the time moves from before them to at or after them. Looping animations fire the rest of the loop
+ * and then the start of the next loop when they wrap around, but loops skipped entirely in a single update are not fired.</p>
+ * <p>Moving the animation time backwards is treated as a seek and fires nothing.</p>
+ *
+ * @author Ocelot
+ * @since 1.4.0
+ */
+public interface AnimationEffectDispatcher {
+
+    /**
+     * Fires all effects after the last time this dispatcher was updated up to and including the current animation time.
+     */
+    void update();
+
+    /**
+     * Moves to the specified time without firing any effects. The next update fires effects starting from this time.
+     *
+     * @param time The new time in seconds
+     */
+    void seek(float time);
+
+    /**
+     * @return The animation effects are fired for
+     */
+    PlayingAnimation getAnimation();
+
+    /**
+     * @return The animation time effects have been fired up to
+     */
+    float getTime();
+
+    /**
+     * Creates a new effect dispatcher starting at the current time of the specified animation.
+     * Effects at exactly the current time are fired on the first update.
+     *
+     * @param animation The animation to fire effects for
+     * @param listener  The listener to fire effects into
+     * @return A new dispatcher
+     */
+    static AnimationEffectDispatcher create(PlayingAnimation animation, AnimationEffectListener listener) {
+        return new AnimationEffectDispatcherImpl(animation, listener);
+    }
+}
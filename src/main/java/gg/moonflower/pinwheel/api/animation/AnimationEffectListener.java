@@ -0,0 +1,37 @@
+package gg.moonflower.pinwheel.api.animation;
+
+/**
+ * Receives the effects fired by an {@link AnimationEffectDispatcher}. All methods do nothing by default.
+ *
+ * @author Ocelot
+ * @since 1.4.0
+ */
+public interface AnimationEffectListener {
+
+    /**
+     * Called when a sound effect is reached.
+     *
+     * @param animation The animation the effect is from
+     * @param effect    The effect to play
+     */
+    default void onSoundEffect(PlayingAnimation animation, AnimationData.SoundEffect effect) {
+    }
+
+    /**
+     * Called when a particle effect is reached.
+     *
+     * @param animation The animation the effect is from
+     * @param effect    The effect to spawn
+     */
+    default void onParticleEffect(PlayingAnimation animation, AnimationData.ParticleEffect effect) {
+    }
+
+    /**
+     * Called when a timeline effect is reached.
+     *
+     * @param animation The animation the effect is from
+     * @param effect    The effect to execute
+     */
+    default void onTimelineEffect(PlayingAnimation animation, AnimationData.TimelineEffect effect) {
+    }
+}
@@ -0,0 +1,78 @@
+package gg.moonflower.pinwheel.api.animation;
+
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.pinwheel.api.geometry.bone.AnimatedBone;
+import gg.moonflower.pinwheel.impl.animation.AnimationKeyframeResolverImpl;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Vector3f;
+
+/**
+ * Evaluates the constant key frames of source animations for {@link BakedAnimation} and {@link CompressedAnimation}.
+ *
+ * @author Ocelot
+ */
+final class AnimationSampling {
+
+    private static final AnimationData.KeyFrame[] NO_FRAMES = new AnimationData.KeyFrame[0];
+    private static final AnimationData.ConstantChannel EMPTY_CHANNEL = new AnimationData.ConstantChannel(new float[0], new AnimationData.LerpMode[0], new float[0], new float[0]);
+
+    private AnimationSampling() {
+    }
+
+    /**
+     * @param boneAnimations The bone animations to check
+     * @return The time of the last constant key frame in any channel
+     */
+    static float getLastTime(AnimationData.BoneAnimation[] boneAnimations) {
+        float time = 0;
+        for (AnimationData.BoneAnimation boneAnimation : boneAnimations) {
+            time = Math.max(time, getLastTime(boneAnimation.constantPosition()));
+            time = Math.max(time, getLastTime(boneAnimation.constantRotation()));
+            time = Math.max(time, getLastTime(boneAnimation.constantScale()));
+        }
+        return time;
+    }
+
+    private static float getLastTime(@Nullable AnimationData.ConstantChannel channel) {
+        return channel != null && channel.times().length > 0 ? channel.times()[channel.times().length - 1] : 0;
+    }
+
+    /**
+     * Evaluates a single constant channel at each of the specified times.
+     *
+     * @param source  The channel to evaluate
+     * @param channel The channel index from <code>0</code> to {@link KeyframeCursor#CHANNELS}
+     * @param times   The animation times to evaluate at
+     * @return The x, y, and z value at each time
+     */
+    static float[] sample(AnimationData.ConstantChannel source, int channel, float[] times) {
+        return sample(new AnimationData.BoneAnimation("", NO_FRAMES, NO_FRAMES, NO_FRAMES,
+                channel == 0 ? source : EMPTY_CHANNEL,
+                channel == 1 ? source : EMPTY_CHANNEL,
+                channel == 2 ? source : EMPTY_CHANNEL), channel, times);
+    }
+
+    /**
+     * Evaluates a single channel of a bone animation at each of the specified times.
+     *
+     * @param boneAnimation The bone animation to evaluate
+     * @param channel       The channel index from <code>0</code> to {@link KeyframeCursor#CHANNELS}
+     * @param times         The animation times to evaluate at
+     * @return The x, y, and z value at each time
+     */
+    static float[] sample(AnimationData.BoneAnimation boneAnimation, int channel, float[] times) {
+        MolangEnvironment environment = MolangRuntime.runtime().create();
+        AnimatedBone.AnimationPose pose = new AnimatedBone.AnimationPose();
+        float[] samples = new float[times.length * 3];
+        for (int i = 0; i < times.length; i++) {
+            pose.identity();
+            AnimationKeyframeResolverImpl.apply(times[i], 1.0F, environment, pose, boneAnimation);
+            Vector3f value = channel == 0 ? pose.position() : channel == 1 ? pose.rotation() : pose.scale();
+            samples[i * 3] = value.x();
+            samples[i * 3 + 1] = value.y();
+            samples[i * 3 + 2] = value.z();
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,97 @@
+package gg.moonflower.pinwheel.api.animation;
+
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.pinwheel.impl.animation.AnimationStateMachineImpl;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.Function;
+
+/**
+ * <p>Runs an {@link AnimationControllerData} as a state machine.</p>
+ * <p>Only the animations of the current state and the state being blended out of are playing, so animations of inactive states
+ * are never evaluated. Cross-fades are applied through {@link PlayingAnimation#setWeight(float)}, so any weights set manually
+ * are replaced the next time the state machine is updated.</p>
+ *
+ * @author Ocelot
+ * @since 1.4.0
+ */
+public interface AnimationStateMachine extends AnimationController {
+
+    /**
+     * Resets the state machine back to the initial state without executing any exit expressions.
+     */
+    @Override
+    void clearAnimations();
+
+    /**
+     * Advances all playing animations, checks the transitions of the current state, and updates the weight of all playing animations.
+     *
+     * @param deltaTime The time in seconds since the last update
+     */
+    void update(float deltaTime);
+
+    /**
+     * Immediately transitions into the specified state, ignoring the transition conditions of the current state.
+     * The current state is blended out the same way as a regular transition.
+     * Entering the state that is still being blended out reverses that transition instead, so it fades back in from its current weight
+     * without restarting its animations.
+     *
+     * @param state The index of the state to enter
+     * @throws IndexOutOfBoundsException If the state is not in the controller
+     */
+    void setState(int state);
+
+    /**
+     * @return The controller this state machine is running
+     */
+    AnimationControllerData getController();
+
+    /**
+     * @return The index of the current state
+     */
+    int getStateIndex();
+
+    /**
+     * @return The current state
+     */
+    default AnimationControllerData.State getState() {
+        return this.getController().states()[this.getStateIndex()];
+    }
+
+    /**
+     * @return The index of the state being blended out of or <code>-1</code> if not transitioning
+     */
+    int getPreviousStateIndex();
+
+    /**
+     * @return The state being blended out of or <code>null</code> if not transitioning
+     */
+    default @Nullable AnimationControllerData.State getPreviousState() {
+        int index = this.getPreviousStateIndex();
+        return index != -1 ? this.getController().states()[index] : null;
+    }
+
+    /**
+     * @return Whether the previous state is still being blended out
+     */
+    default boolean isTransitioning() {
+        return this.getPreviousStateIndex() != -1;
+    }
+
+    /**
+     * @return The time in seconds since the current state was entered
+     */
+    float getStateTime();
+
+    /**
+     * Creates a new state machine for the specified controller and enters the initial state.
+     *
+     * @param controller  The controller to run
+     * @param environment The environment to resolve conditions and weights in
+     * @param animations  A lookup from the short names used in the controller to animations. Animations that can't be found are ignored
+     * @return A new state machine
+     */
+    static AnimationStateMachine create(AnimationControllerData controller, MolangEnvironment environment, Function<String, @Nullable AnimationData> animations) {
+        return new AnimationStateMachineImpl(controller, environment, animations);
+    }
+}
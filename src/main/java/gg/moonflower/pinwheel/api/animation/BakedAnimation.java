@@ -0,0 +1,278 @@
+package gg.moonflower.pinwheel.api.animation;
+
+import gg.moonflower.pinwheel.api.geometry.GeometryTree;
+import gg.moonflower.pinwheel.api.geometry.bone.AnimatedBone;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+
+/**
+ * <p>An animation sampled at a fixed rate into flat arrays of position, rotation, and scale for each bone.</p>
+ * <p>Sampling a baked animation is a single linear interpolation between the two closest samples, so none of the interpolation or easing
+ * of the original key frames has to be evaluated at runtime. Only animations where every channel is made of constant key frames can be baked,
+ * since any MoLang expression could depend on more than the animation time.</p>
+ * <p>Tracks are stored in the same order as {@link AnimationData#boneAnimations()}, so an {@link AnimationBinding} for the source animation
+ * can be used to apply the baked animation.</p>
+ *
+ * @author Ocelot
+ * @since 1.4.0
+ */
+public final class BakedAnimation {
+
+    private final AnimationData animation;
+    private final Track[] tracks;
+    private final float length;
+    private final int sampleCount;
+    private final float sampleRate;
+    private final float maxError;
+
+    private BakedAnimation(AnimationData animation, Track[] tracks, float length, int sampleCount, float maxError) {
+        this.animation = animation;
+        this.tracks = tracks;
+        this.length = length;
+        this.sampleCount = sampleCount;
+        this.sampleRate = getSampleRate(length, sampleCount);
+        this.maxError = maxError;
+    }
+
+    /**
+     * Checks whether every channel of the specified animation only depends on the animation time.
+     *
+     * @param animation The animation to check
+     * @return Whether the animation can be baked
+     */
+    public static boolean canBake(AnimationData animation) {
+        for (AnimationData.BoneAnimation boneAnimation : animation.boneAnimations()) {
+            if (boneAnimation.constantPosition() == null || boneAnimation.constantRotation() == null || boneAnimation.constantScale() == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Samples the specified animation into a baked animation.
+     * The samples are evenly spaced over the animation, so the actual rate may be slightly higher than the requested rate.
+     * Animations without any length are baked into a single sample at time <code>0</code>.
+     *
+     * @param animation  The animation to bake
+     * @param sampleRate The minimum number of samples to take per second
+     * @return A new baked animation
+     * @throws IllegalArgumentException If the sample rate is not positive or any channel of the animation uses MoLang expressions
+     */
+    public static BakedAnimation bake(AnimationData animation, float sampleRate) {
+        if (!(sampleRate > 0)) {
+            throw new IllegalArgumentException("Sample rate must be positive");
+        }
+        if (!canBake(animation)) {
+            throw new IllegalArgumentException("Animation " + animation.name() + " has channels that depend on MoLang expressions");
+        }
+
+        AnimationData.BoneAnimation[] boneAnimations = animation.boneAnimations();
+        float length = animation.animationLength() > 0 ? animation.animationLength() : AnimationSampling.getLastTime(boneAnimations);
+
+        // Animations without any length only hold a single pose
+        int sampleCount = length > 0 ? Math.max(2, (int) Math.ceil(length * sampleRate) + 1) : 1;
+        float actualRate = getSampleRate(length, sampleCount);
+        float[] sampleTimes = new float[sampleCount];
+        for (int sample = 0; sample < sampleCount; sample++) {
+            sampleTimes[sample] = getSampleTime(sample, length, sampleCount, actualRate);
+        }
+
+        // Interpolation error is largest between samples, so compare several points inside each interval
+        float[] errorTimes = new float[(sampleCount - 1) * 3];
+        for (int sample = 0; sample < sampleCount - 1; sample++) {
+            for (int step = 1; step < 4; step++) {
+                errorTimes[sample * 3 + step - 1] = sampleTimes[sample] + (sampleTimes[sample + 1] - sampleTimes[sample]) * step / 4.0F;
+            }
+        }
+
+        Track[] tracks = new Track[boneAnimations.length];
+        AnimatedBone.AnimationPose pose = new AnimatedBone.AnimationPose();
+        float maxError = 0;
+        for (int i = 0; i < boneAnimations.length; i++) {
+            AnimationData.BoneAnimation boneAnimation = boneAnimations[i];
+            Track track = new Track(boneAnimation.name(),
+                    AnimationSampling.sample(boneAnimation, 0, sampleTimes),
+                    AnimationSampling.sample(boneAnimation, 1, sampleTimes),
+                    AnimationSampling.sample(boneAnimation, 2, sampleTimes));
+            tracks[i] = track;
+
+            float[] position = AnimationSampling.sample(boneAnimation, 0, errorTimes);
+            float[] rotation = AnimationSampling.sample(boneAnimation, 1, errorTimes);
+            float[] scale = AnimationSampling.sample(boneAnimation, 2, errorTimes);
+            for (int j = 0; j < errorTimes.length; j++) {
+                pose.identity();
+                sample(track, sampleCount, actualRate, errorTimes[j], 1.0F, pose);
+                maxError = Math.max(maxError, getError(position, j * 3, pose.position()));
+                maxError = Math.max(maxError, getError(rotation, j * 3, pose.rotation()));
+                maxError = Math.max(maxError, getError(scale, j * 3, pose.scale()));
+            }
+        }
+        return new BakedAnimation(animation, tracks, length, sampleCount, maxError);
+    }
+
+    private static float getSampleRate(float length, int sampleCount) {
+        return length > 0 ? (sampleCount - 1) / length : 0;
+    }
+
+    private static float getSampleTime(int sample, float length, int sampleCount, float sampleRate) {
+        return sample == sampleCount - 1 ? length : sample / sampleRate;
+    }
+
+    private static float getError(float[] exact, int index, Vector3f sampled) {
+        return Math.max(Math.abs(exact[index] - sampled.x()), Math.max(Math.abs(exact[index + 1] - sampled.y()), Math.abs(exact[index + 2] - sampled.z())));
+    }
+
+    private static float lerp(float[] values, int index, int next, int axis, float delta) {
+        return values[index + axis] + (values[next + axis] - values[index + axis]) * delta;
+    }
+
+    private static void sample(Track samples, int sampleCount, float sampleRate, float animationTime, float weight, AnimatedBone.AnimationPose pose) {
+        float position = Math.max(0, animationTime) * sampleRate;
+        int index;
+        int next;
+        float delta;
+        if (position >= sampleCount - 1) {
+            index = sampleCount - 1;
+            next = index;
+            delta = 0;
+        } else {
+            index = (int) position;
+            next = index + 1;
+            delta = position - index;
+        }
+
+        index *= 3;
+        next *= 3;
+        pose.add(
+                lerp(samples.position, index, next, 0, delta) * weight,
+                lerp(samples.position, index, next, 1, delta) * weight,
+                lerp(samples.position, index, next, 2, delta) * weight,
+                lerp(samples.rotation, index, next, 0, delta) * weight,
+                lerp(samples.rotation, index, next, 1, delta) * weight,
+                lerp(samples.rotation, index, next, 2, delta) * weight,
+                (lerp(samples.scale, index, next, 0, delta) - 1) * weight,
+                (lerp(samples.scale, index, next, 1, delta) - 1) * weight,
+                (lerp(samples.scale, index, next, 2, delta) - 1) * weight);
+    }
+
+    /**
+     * Adds the sampled transformation of a single track to the specified pose.
+     * Times outside the animation are clamped to the first or last sample.
+     *
+     * @param track         The index of the track to sample
+     * @param animationTime The animation time in seconds. This is usually {@link PlayingAnimation#getRenderAnimationTime()}
+     * @param weight        The amount this animation should affect the pose
+     * @param pose          The pose to modify
+     */
+    public void sample(int track, float animationTime, float weight, AnimatedBone.AnimationPose pose) {
+        sample(this.tracks[track], this.sampleCount, this.sampleRate, animationTime, weight, pose);
+    }
+
+    /**
+     * Adds the sampled transformation of every track to the bones of the specified tree.
+     *
+     * @param tree          The tree to animate
+     * @param animationTime The animation time in seconds. This is usually {@link PlayingAnimation#getRenderAnimationTime()}
+     * @param weight        The amount this animation should affect the pose
+     * @param binding       The binding of the source animation to the tree
+     * @throws IllegalArgumentException If the binding is for a different animation
+     */
+    public void apply(GeometryTree tree, float animationTime, float weight, AnimationBinding binding) {
+        if (binding.animation() != this.animation) {
+            throw new IllegalArgumentException("Binding for " + binding.animation().name() + " does not match animation " + this.animation.name());
+        }
+
+        int[] boneIndices = binding.boneIndices();
+        for (int i = 0; i < boneIndices.length; i++) {
+            int boneIndex = boneIndices[i];
+            if (boneIndex != -1) {
+                this.sample(i, animationTime, weight, tree.getBone(boneIndex).getAnimationPose());
+            }
+        }
+    }
+
+    /**
+     * @param sample The index of the sample
+     * @return The animation time in seconds of that sample
+     */
+    public float getSampleTime(int sample) {
+        return getSampleTime(sample, this.length, this.sampleCount, this.sampleRate);
+    }
+
+    /**
+     * @return The animation that was baked
+     */
+    public AnimationData getAnimation() {
+        return this.animation;
+    }
+
+    /**
+     * @return The samples of each bone animation in the same order as {@link AnimationData#boneAnimations()}. The array must not be modified
+     */
+    public Track[] getTracks() {
+        return this.tracks;
+    }
+
+    /**
+     * @return The time in seconds covered by the samples
+     */
+    public float getLength() {
+        return this.length;
+    }
+
+    /**
+     * @return The number of samples in each track
+     */
+    public int getSampleCount() {
+        return this.sampleCount;
+    }
+
+    /**
+     * @return The actual number of samples per second or <code>0</code> if there is only a single sample
+     */
+    public float getSampleRate() {
+        return this.sampleRate;
+    }
+
+    /**
+     * @return The largest difference of any component between the samples and the exact key frames, measured between samples
+     */
+    public float getMaxError() {
+        return this.maxError;
+    }
+
+    @Override
+    public String toString() {
+        return "BakedAnimation{" +
+                "animation=" + this.animation.name() +
+                ", length=" + this.length +
+                ", sampleCount=" + this.sampleCount +
+                ", maxError=" + this.maxError +
+                '}';
+    }
+
+    /**
+     * The samples of a single bone. Values are stored as x, y, and z for each sample.
+     *
+     * @param bone     The name of the bone
+     * @param position The sampled position of the bone
+     * @param rotation The sampled rotation of the bone in degrees
+     * @param scale    The sampled scale of the bone
+     * @author Ocelot
+     * @since 1.4.0
+     */
+    public record Track(String bone, float[] position, float[] rotation, float[] scale) {
+
+        @Override
+        public String toString() {
+            return "Track{" +
+                    "bone='" + this.bone + '\'' +
+                    ", position=" + Arrays.toString(this.position) +
+                    ", rotation=" + Arrays.toString(this.rotation) +
+                    ", scale=" + Arrays.toString(this.scale) +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package gg.moonflower.pinwheel.api.animation;
+
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.pinwheel.api.geometry.bone.AnimatedBone;
+import gg.moonflower.pinwheel.impl.animation.AnimationKeyframeResolverImpl;
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.chars.CharArrayList;
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * <p>A compact representation of the key frames in an {@link AnimationData}.</p>
+ * <p>Every bone animation made of constant key frames is packed into flat primitive arrays:</p>
+ * <ul>
+ *     <li>Key frame times are quantized to unsigned 16-bit steps</li>
+ *     <li>Pre and post values are only stored separately when they differ</li>
+ *     <li>Key frames that can be removed without changing the channel by more than a tolerance are removed</li>
+ *     <li>Channels that stay the same value are reduced to a single key frame or removed entirely</li>
+ * </ul>
+ * <p>Bone animations that use MoLang expressions are kept as they are. {@link #getAnimation()} returns a copy of the source animation
+ * without the key frames of compressed bones, so the source animation doesn't have to be kept in memory.
+ * Use {@link PlayingAnimation#of(CompressedAnimation)} to play it with {@link gg.moonflower.pinwheel.api.geometry.GeometryModel}.</p>
+ *
+ * @author Ocelot
+ * @since 1.4.0
+ */
+public final class CompressedAnimation {
+
+    /**
+     * The default precision of key frame times in seconds.
+     */
+    public static final float DEFAULT_TIME_PRECISION = 1.0F / 1000.0F;
+
+    private static final AnimationData.KeyFrame[] NO_FRAMES = new AnimationData.KeyFrame[0];
+    private static final AnimationData.LerpMode[] LERP_MODES = AnimationData.LerpMode.values();
+    private static final int SPLIT = 0x80;
+    private static final int LERP_MODE_MASK = 0x7F;
+    private static final int SAMPLES_PER_FRAME = 16;
+
+    private final AnimationData animation;
+    private final boolean[] compressed;
+    private final int[] channels;
+    private final char[] times;
+    private final byte[] modes;
+    private final int[] offsets;
+    private final float[] values;
+    private final float timeStep;
+    private final float maxError;
+
+    private CompressedAnimation(AnimationData animation, boolean[] compressed, int[] channels, char[] times, byte[] modes, int[] offsets, float[] values, float timeStep, float maxError) {
+        this.animation = animation;
+        this.compressed = compressed;
+        this.channels = channels;
+        this.times = times;
+        this.modes = modes;
+        this.offsets = offsets;
+        this.values = values;
+        this.timeStep = timeStep;
+        this.maxError = maxError;
+    }
+
+    /**
+     * Compresses the specified animation with the default time precision.
+     *
+     * @param animation The animation to compress
+     * @param tolerance The maximum difference of any component allowed when removing key frames
+     * @return A new compressed animation
+     */
+    public static CompressedAnimation compress(AnimationData animation, float tolerance) {
+        return compress(animation, tolerance, DEFAULT_TIME_PRECISION);
+    }
+
+    /**
+     * Compresses the specified animation.
+     *
+     * @param animation     The animation to compress
+     * @param tolerance     The maximum difference of any component allowed when removing key frames
+     * @param timePrecision The smallest time step in seconds key frame times are quantized to.
+     *                      Long animations use a larger step so all times fit into 16 bits
+     * @return A new compressed animation
+     */
+    public static CompressedAnimation compress(AnimationData animation, float tolerance, float timePrecision) {
+        if (!(tolerance >= 0)) {
+            throw new IllegalArgumentException("Tolerance must not be negative");
+        }
+        if (!(timePrecision > 0)) {
+            throw new IllegalArgumentException("Time precision must be positive");
+        }
+
+        AnimationData.BoneAnimation[] boneAnimations = animation.boneAnimations();
+        float timeStep = Math.max(timePrecision, AnimationSampling.getLastTime(boneAnimations) / Character.MAX_VALUE);
+
+        AnimationData.BoneAnimation[] remaining = new AnimationData.BoneAnimation[boneAnimations.length];
+        boolean[] compressed = new boolean[boneAnimations.length];
+        Keys keys = new Keys();
+        IntArrayList channels = new IntArrayList(boneAnimations.length * KeyframeCursor.CHANNELS + 1);
+        float maxError = 0;
+        for (int i = 0; i < boneAnimations.length; i++) {
+            AnimationData.BoneAnimation boneAnimation = boneAnimations[i];
+            AnimationData.ConstantChannel[] constantChannels = {boneAnimation.constantPosition(), boneAnimation.constantRotation(), boneAnimation.constantScale()};
+            compressed[i] = constantChannels[0] != null && constantChannels[1] != null && constantChannels[2] != null;
+            remaining[i] = compressed[i] ? new AnimationData.BoneAnimation(boneAnimation.name(), NO_FRAMES, NO_FRAMES, NO_FRAMES) : boneAnimation;
+
+            for (int channel = 0; channel < KeyframeCursor.CHANNELS; channel++) {
+                channels.add(keys.size());
+                if (compressed[i]) {
+                    maxError = Math.max(maxError, compressChannel(constantChannels[channel], channel, tolerance, timeStep, keys));
+                }
+            }
+        }
+        channels.add(keys.size());
+
+        AnimationData shell = new AnimationData(animation.name(), animation.loop(), animation.blendWeight(), animation.animationLength(), animation.overridePreviousAnimation(), remaining, animation.soundEffects(), animation.particleEffects(), animation.timelineEffects());
+        return new CompressedAnimation(shell, compressed, channels.toIntArray(), keys.times.toCharArray(), keys.modes.toByteArray(), keys.offsets.toIntArray(), keys.values.toFloatArray(), timeStep, maxError);
+    }
+
+    /**
+     * Reduces a single channel and appends the remaining key frames.
+     *
+     * @return The largest error of the compressed channel
+     */
+    private static float compressChannel(AnimationData.ConstantChannel source, int channel, float tolerance, float timeStep, Keys result) {
+        float[] times = source.times();
+        if (times.length == 0) {
+            return 0;
+        }
+
+        float startValue = getStartValue(channel);
+        float[] sampleTimes = getSampleTimes(times);
+        float[] expected = AnimationSampling.sample(source, channel, sampleTimes);
+
+        // A channel that never changes only needs one value, or no value at all if that is the default
+        float[] last = new float[]{expected[expected.length - 3], expected[expected.length - 2], expected[expected.length - 1]};
+        Keys candidate = new Keys();
+        float constantError = Float.MAX_VALUE;
+        if (Math.abs(last[0] - startValue) <= tolerance && Math.abs(last[1] - startValue) <= tolerance && Math.abs(last[2] - startValue) <= tolerance) {
+            constantError = getError(candidate, startValue, timeStep, sampleTimes, expected, 0, sampleTimes.length);
+        }
+        if (constantError > tolerance) {
+            candidate.add((char) 0, AnimationData.LerpMode.LINEAR, last, last);
+            constantError = getError(candidate, startValue, timeStep, sampleTimes, expected, 0, sampleTimes.length);
+        }
+        if (constantError <= tolerance) {
+            result.addAll(candidate);
+            return constantError;
+        }
+
+        // Greedily remove key frames, always comparing against the source so the error can't accumulate
+        IntArrayList kept = new IntArrayList(times.length);
+        for (int i = 0; i < times.length; i++) {
+            kept.add(i);
+        }
+        encode(source, kept, 0, kept.size(), timeStep, candidate);
+        float limit = Math.max(tolerance, getError(candidate, startValue, timeStep, sampleTimes, expected, 0, sampleTimes.length));
+        for (int i = 1; i < kept.size() - 1; ) {
+            int removed = kept.removeInt(i);
+            if (getRemovalError(source, kept, i, startValue, timeStep, sampleTimes, expected, candidate) > limit) {
+                kept.add(i, removed);
+                i++;
+            }
+        }
+
+        encode(source, kept, 0, kept.size(), timeStep, candidate);
+        result.addAll(candidate);
+        return getError(candidate, startValue, timeStep, sampleTimes, expected, 0, sampleTimes.length);
+    }
+
+    /**
+     * Measures the error after removing a key frame. Removing a key only changes the segments up to two key frames away from it,
+     * since catmull-rom segments also depend on the key frames before and after them, so only those samples are checked.
+     *
+     * @param kept    The kept source frames, with the key frame already removed
+     * @param removed The position the key frame was removed from
+     * @param window  The keys to encode the affected key frames into
+     * @return The largest error of the samples around the removed key frame
+     */
+    private static float getRemovalError(AnimationData.ConstantChannel source, IntArrayList kept, int removed, float startValue, float timeStep, float[] sampleTimes, float[] expected, Keys window) {
+        // The first encoded key is sampled as the start of the channel, so encode enough keys around the affected segments for it not to matter
+        encode(source, kept, Math.max(0, removed - 4), Math.min(kept.size(), removed + 4), timeStep, window);
+        int from = removed >= 2 ? (kept.getInt(removed - 2) + 1) * (SAMPLES_PER_FRAME + 1) : 0;
+        int to = removed + 1 < kept.size() ? (kept.getInt(removed + 1) + 1) * (SAMPLES_PER_FRAME + 1) : sampleTimes.length;
+        return getError(window, startValue, timeStep, sampleTimes, expected, from, to);
+    }
+
+    private static void encode(AnimationData.ConstantChannel source, IntArrayList kept, int from, int to, float timeStep, Keys result) {
+        result.clear();
+        float[] pre = new float[3];
+        float[] post = new float[3];
+        for (int i = from; i < to; i++) {
+            int frame = kept.getInt(i);
+            System.arraycopy(source.pre(), frame * 3, pre, 0, 3);
+            System.arraycopy(source.post(), frame * 3, post, 0, 3);
+            result.add(quantize(source.times()[frame], timeStep), source.lerpModes()[frame], pre, post);
+        }
+    }
+
+    /**
+     * Quantizes a key frame time. Frames at time <code>0</code> are never interpolated towards, so only times that are exactly <code>0</code>
+     * are stored as <code>0</code> and {@link #findKey(char[], int, int, float, float)} skips the same frames as the source.
+     */
+    private static char quantize(float time, float timeStep) {
+        if (time == 0) {
+            return 0;
+        }
+        return (char) Math.max(1, Math.min(Character.MAX_VALUE, Math.round(time / timeStep)));
+    }
+
+    private static float[] getSampleTimes(float[] times) {
+        FloatArrayList sampleTimes = new FloatArrayList(times.length * (SAMPLES_PER_FRAME + 1) + 1);
+        float last = 0;
+        for (float time : times) {
+            for (int i = 0; i < SAMPLES_PER_FRAME; i++) {
+                sampleTimes.add(last + (time - last) * i / SAMPLES_PER_FRAME);
+            }
+            sampleTimes.add(time);
+            last = time;
+        }
+        // The last sample is after all key frames, where the channel holds its final value
+        sampleTimes.add(last + 1.0F);
+        return sampleTimes.toFloatArray();
+    }
+
+    private static float getError(Keys keys, float startValue, float timeStep, float[] sampleTimes, float[] expected, int from, int to) {
+        char[] times = keys.times.elements();
+        byte[] modes = keys.modes.elements();
+        int[] offsets = keys.offsets.elements();
+        float[] values = keys.values.elements();
+        int end = keys.size();
+
+        float error = 0;
+        for (int i = from; i < to; i++) {
+            int key = findKey(times, 0, end, timeStep, sampleTimes[i]);
+            for (int axis = 0; axis < 3; axis++) {
+                float value = sample(times, modes, offsets, values, 0, end, timeStep, key, sampleTimes[i], startValue, axis);
+                error = Math.max(error, Math.abs(value - expected[i * 3 + axis]));
+            }
+        }
+        return error;
+    }
+
+    private static float getStartValue(int channel) {
+        return channel == 2 ? 1 : 0;
+    }
+
+    /**
+     * Finds the key frame to interpolate towards the same way as {@link AnimationKeyframeResolverImpl}.
+     *
+     * @return The index of the key frame or <code>-1</code> if the channel does not change the value
+     */
+    private static int findKey(char[] times, int start, int end, float timeStep, float animationTime) {
+        if (start == end) {
+            return -1;
+        }
+
+        int low = start;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] * timeStep < animationTime) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        int i = low == end ? end - 1 : low;
+        if (end - start == 1) {
+            return i;
+        }
+        while (i < end && times[i] == 0) {
+            i++;
+        }
+        return i == end ? -1 : i;
+    }
+
+    private static float getPre(int[] offsets, float[] values, int key, int axis) {
+        return values[offsets[key] + axis];
+    }
+
+    private static float getPost(byte[] modes, int[] offsets, float[] values, int key, int axis) {
+        return values[offsets[key] + ((modes[key] & SPLIT) != 0 ? 3 : 0) + axis];
+    }
+
+    private static float sample(char[] times, byte[] modes, int[] offsets, float[] values, int start, int end, float timeStep, int key, float animationTime, float startValue, int axis) {
+        if (key == -1) {
+            return startValue;
+        }
+        if (end - start == 1) {
+            return getPost(modes, offsets, values, key, axis);
+        }
+
+        float timeOffset = key == start ? 0 : times[key - 1] * timeStep;
+        float duration = times[key] * timeStep - timeOffset;
+        // Frames closer than a time step can share a quantized time
+        float progress = duration > 0 ? Math.min(1.0F, (animationTime - timeOffset) / duration) : 1.0F;
+        float from = key == start ? startValue : getPost(modes, offsets, values, key - 1, axis);
+        float to = getPre(offsets, values, key, axis);
+
+        AnimationData.LerpMode lerpMode = LERP_MODES[modes[key] & LERP_MODE_MASK];
+        if (lerpMode == AnimationData.LerpMode.CATMULLROM) {
+            float before = key >= start + 2 ? getPost(modes, offsets, values, key - 2, axis) : from;
+            float after = key < end - 1 ? getPre(offsets, values, key + 1, axis) : to;
+            return AnimationKeyframeResolverImpl.catmullRom(before, from, to, after, progress);
+        }
+        return AnimationKeyframeResolverImpl.lerp(lerpMode.ease(progress), from, to);
+    }
+
+    private float sample(int channel, float animationTime, int axis, int key) {
+        return sample(this.times, this.modes, this.offsets, this.values, this.channels[channel], this.channels[channel + 1], this.timeStep, key, animationTime, getStartValue(channel % KeyframeCursor.CHANNELS), axis);
+    }
+
+    private int findKey(int channel, float animationTime) {
+        return findKey(this.times, this.channels[channel], this.channels[channel + 1], this.timeStep, animationTime);
+    }
+
+    /**
+     * Applies a single bone animation to the specified pose.
+     *
+     * @param boneAnimation The index of the bone animation in {@link AnimationData#boneAnimations()}
+     * @param animationTime The current animation time in seconds
+     * @param weight        The amount this animation should affect the pose
+     * @param environment   The environment to resolve bone animations that weren't compressed in
+     * @param pose          The pose to modify
+     * @param cursor        The cursor to use for bone animations that weren't compressed or <code>null</code> to search every time
+     */
+    public void apply(int boneAnimation, float animationTime, float weight, MolangEnvironment environment, AnimatedBone.AnimationPose pose, @Nullable KeyframeCursor cursor) {
+        if (!this.compressed[boneAnimation]) {
+            AnimationKeyframeResolverImpl.apply(animationTime, weight, environment, pose, this.animation.boneAnimations()[boneAnimation], cursor, boneAnimation);
+            return;
+        }
+
+        int channel = boneAnimation * KeyframeCursor.CHANNELS;
+        int position = this.findKey(channel, animationTime);
+        int rotation = this.findKey(channel + 1, animationTime);
+        int scale = this.findKey(channel + 2, animationTime);
+        pose.add(
+                this.sample(channel, animationTime, 0, position) * weight,
+                this.sample(channel, animationTime, 1, position) * weight,
+                this.sample(channel, animationTime, 2, position) * weight,
+                this.sample(channel + 1, animationTime, 0, rotation) * weight,
+                this.sample(channel + 1, animationTime, 1, rotation) * weight,
+                this.sample(channel + 1, animationTime, 2, rotation) * weight,
+                (this.sample(channel + 2, animationTime, 0, scale) - 1) * weight,
+                (this.sample(channel + 2, animationTime, 1, scale) - 1) * weight,
+                (this.sample(channel + 2, animationTime, 2, scale) - 1) * weight);
+    }
+
+    /**
+     * @return The source animation without the key frames of compressed bone animations
+     */
+    public AnimationData getAnimation() {
+        return this.animation;
+    }
+
+    /**
+     * @param boneAnimation The index of the bone animation in {@link AnimationData#boneAnimations()}
+     * @return Whether the bone animation was compressed. Bone animations that use MoLang expressions can't be compressed
+     */
+    public boolean isCompressed(int boneAnimation) {
+        return this.compressed[boneAnimation];
+    }
+
+    /**
+     * @param boneAnimation The index of the bone animation in {@link AnimationData#boneAnimations()}
+     * @param channel       The channel index from <code>0</code> to {@link KeyframeCursor#CHANNELS}
+     * @return The number of key frames stored for that channel
+     */
+    public int getKeyCount(int boneAnimation, int channel) {
+        int index = boneAnimation * KeyframeCursor.CHANNELS + channel;
+        return this.channels[index + 1] - this.channels[index];
+    }
+
+    /**
+     * @return The total number of key frames stored for all compressed bone animations
+     */
+    public int getKeyCount() {
+        return this.times.length;
+    }
+
+    /**
+     * @return The size of each quantized time step in seconds
+     */
+    public float getTimeStep() {
+        return this.timeStep;
+    }
+
+    /**
+     * @return The largest difference of any component between the compressed channels and the source key frames
+     */
+    public float getMaxError() {
+        return this.maxError;
+    }
+
+    @Override
+    public String toString() {
+        return "CompressedAnimation{" +
+                "animation=" + this.animation.name() +
+                ", keys=" + this.times.length +
+                ", timeStep=" + this.timeStep +
+                ", maxError=" + this.maxError +
+                '}';
+    }
+
+    /**
+     * Growable key frame storage used while compressing.
+     */
+    private static class Keys {
+
+        private final CharArrayList times = new CharArrayList();
+        private final ByteArrayList modes = new ByteArrayList();
+        private final IntArrayList offsets = new IntArrayList();
+        private final FloatArrayList values = new FloatArrayList();
+
+        private void add(char time, AnimationData.LerpMode lerpMode, float[] pre, float[] post) {
+            boolean split = pre[0] != post[0] || pre[1] != post[1] || pre[2] != post[2];
+            this.times.add(time);
+            this.modes.add((byte) (lerpMode.ordinal() | (split ? SPLIT : 0)));
+            this.offsets.add(this.values.size());
+            this.values.addElements(this.values.size(), pre, 0, 3);
+            if (split) {
+                this.values.addElements(this.values.size(), post, 0, 3);
+            }
+        }
+
+        private void addAll(Keys keys) {
+            int valueOffset = this.values.size();
+            this.times.addAll(keys.times);
+            this.modes.addAll(keys.modes);
+            for (int i = 0; i < keys.offsets.size(); i++) {
+                this.offsets.add(keys.offsets.getInt(i) + valueOffset);
+            }
+            this.values.addAll(keys.values);
+        }
+
+        private void clear() {
+            this.times.clear();
+            this.modes.clear();
+            this.offsets.clear();
+            this.values.clear();
+        }
+
+        private int size() {
+            return this.times.size();
+        }
+    }
+}
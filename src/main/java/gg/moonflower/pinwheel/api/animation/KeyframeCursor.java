@@ -0,0 +1,74 @@
+package gg.moonflower.pinwheel.api.animation;
+
+import java.util.Arrays;
+
+/**
+ * Remembers the last key frame segment sampled for each channel of an animation.
+ * When an animation is played forward, the next segment can be found without searching all key frames.
+ *
+ * @author Ocelot
+ * @see PlayingAnimation#getCursor()
+ * @since 1.4.0
+ */
+public final class KeyframeCursor {
+
+    /**
+     * The number of channels tracked for each bone animation. These are position, rotation, and scale.
+     */
+    public static final int CHANNELS = 3;
+
+    private final int[] segments;
+
+    /**
+     * Creates a new cursor for the specified number of bone animations.
+     *
+     * @param boneAnimations The number of bone animations to track
+     */
+    public KeyframeCursor(int boneAnimations) {
+        this.segments = new int[boneAnimations * CHANNELS];
+    }
+
+    /**
+     * Creates a new cursor for all bone animations in the specified animation.
+     *
+     * @param animation The animation to create a cursor for
+     * @return A new cursor
+     */
+    public static KeyframeCursor create(AnimationData animation) {
+        return new KeyframeCursor(animation.boneAnimations().length);
+    }
+
+    /**
+     * @param boneAnimation The index of the bone animation in {@link AnimationData#boneAnimations()}
+     * @param channel       The channel index from <code>0</code> to {@link #CHANNELS}
+     * @return The index of the last key frame sampled in that channel
+     */
+    public int getSegment(int boneAnimation, int channel) {
+        return this.segments[boneAnimation * CHANNELS + channel];
+    }
+
+    /**
+     * Sets the last key frame sampled in a channel.
+     *
+     * @param boneAnimation The index of the bone animation in {@link AnimationData#boneAnimations()}
+     * @param channel       The channel index from <code>0</code> to {@link #CHANNELS}
+     * @param segment       The index of the key frame
+     */
+    public void setSegment(int boneAnimation, int channel, int segment) {
+        this.segments[boneAnimation * CHANNELS + channel] = segment;
+    }
+
+    /**
+     * Moves all channels back to the first key frame.
+     */
+    public void reset() {
+        Arrays.fill(this.segments, 0);
+    }
+
+    @Override
+    public String toString() {
+        return "KeyframeCursor{" +
+                "segments=" + Arrays.toString(this.segments) +
+                '}';
+    }
+}
@@ -2,6 +2,7 @@ package gg.moonflower.pinwheel.api.animation;
 
 import gg.moonflower.molangcompiler.api.MolangEnvironment;
 import gg.moonflower.pinwheel.impl.animation.PlayingAnimationImpl;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Represents an animation with a current animation state.
@@ -59,6 +60,27 @@ public interface PlayingAnimation {
      */
     float getWeight(MolangEnvironment environment);
 
+    /**
+     * Retrieves the cursor used to remember key frame positions between samples.
+     * The cursor is optional and only speeds up finding key frames.
+     *
+     * @return The cursor for this animation or <code>null</code> to always search for key frames
+     * @since 1.4.0
+     */
+    default @Nullable KeyframeCursor getCursor() {
+        return null;
+    }
+
+    /**
+     * Retrieves the compressed key frames to sample instead of the key frames in {@link #getAnimation()}.
+     *
+     * @return The compressed animation or <code>null</code> if this animation is not compressed
+     * @since 1.4.0
+     */
+    default @Nullable CompressedAnimation getCompressedAnimation() {
+        return null;
+    }
+
     /**
      * Sets the animation time.
      *
@@ -82,4 +104,16 @@ public interface PlayingAnimation {
     static PlayingAnimation of(AnimationData animation) {
         return new PlayingAnimationImpl(animation);
     }
+
+    /**
+     * Creates a new playing animation for the specified compressed animation.
+     * {@link #getAnimation()} returns {@link CompressedAnimation#getAnimation()}, so bindings must be created for that animation.
+     *
+     * @param animation The animation to create an instance for
+     * @return A new playing animation
+     * @since 1.4.0
+     */
+    static PlayingAnimation of(CompressedAnimation animation) {
+        return new PlayingAnimationImpl(animation.getAnimation(), animation);
+    }
 }
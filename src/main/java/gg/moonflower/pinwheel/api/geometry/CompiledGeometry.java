@@ -0,0 +1,141 @@
+package gg.moonflower.pinwheel.api.geometry;
+
+import gg.moonflower.pinwheel.api.geometry.bone.BoneBounds;
+import gg.moonflower.pinwheel.api.geometry.bone.Polygon;
+import gg.moonflower.pinwheel.impl.geometry.CompiledGeometryImpl;
+
+import java.util.List;
+
+/**
+ * <p>The immutable compiled mesh and bone hierarchy of a geometry model.</p>
+ * <p>Compiling geometry is expensive, so a single compiled geometry should be shared between every instance of the same model.
+ * Each {@link GeometryTree} created with {@link #createTree()} references the same polygons and only allocates its own pose state.</p>
+ *
+ * @author Ocelot
+ * @since 1.4.0
+ */
+public interface CompiledGeometry {
+
+    /**
+     * Creates a new geometry tree that shares the mesh of this geometry. Trees created from the same geometry can be animated independently.
+     *
+     * @return A new tree to access all bones in the model
+     */
+    GeometryTree createTree();
+
+    /**
+     * @return The number of bones in the geometry
+     */
+    int getBoneCount();
+
+    /**
+     * Retrieves the index of a bone by name. Indices match {@link GeometryTree#getBoneIndex(String)} in trees created from this geometry.
+     *
+     * @param name The name of the bone
+     * @return The index of the bone or <code>-1</code> if there is no bone
+     */
+    int getBoneIndex(String name);
+
+    /**
+     * Retrieves the index of the parent of a bone. Bones are ordered so parents always have a lower index than their children.
+     *
+     * @param index The index of the bone
+     * @return The index of the parent bone or <code>-1</code> if the bone is a root bone
+     * @throws IndexOutOfBoundsException If there is no bone at that index
+     */
+    int getParentIndex(int index);
+
+    /**
+     * @param index The index of the bone
+     * @return The definition of the bone at that index
+     * @throws IndexOutOfBoundsException If there is no bone at that index
+     */
+    GeometryModelData.Bone getBone(int index);
+
+    /**
+     * @param index The index of the bone
+     * @return An unmodifiable view of the polygons in the bone at that index
+     * @throws IndexOutOfBoundsException If there is no bone at that index
+     */
+    List<Polygon> getPolygons(int index);
+
+    /**
+     * @param index The index of the bone
+     * @return The bounds of the polygons in the bone at that index before the bone is transformed
+     * @throws IndexOutOfBoundsException If there is no bone at that index
+     * @since 1.4.0
+     */
+    BoneBounds getBounds(int index);
+
+    /**
+     * @return The number of cube faces removed by {@link GeometryCompileOptions#cullHiddenFaces()}
+     */
+    int getCulledPolygonCount();
+
+    /**
+     * @return The number of polygons removed by {@link GeometryCompileOptions#mergeQuads()}
+     */
+    int getMergedPolygonCount();
+
+    /**
+     * @return The deduplicated and indexed mesh of all bones. This is computed once and shared by all trees
+     * @since 1.4.0
+     */
+    IndexedGeometry getIndexedGeometry();
+
+    /**
+     * @return All locators in the geometry
+     */
+    GeometryModelData.Locator[] getLocators();
+
+    /**
+     * Compiles the specified model.
+     *
+     * @param model The model to compile
+     * @return The compiled geometry
+     * @throws GeometryCompileException If there is an issue linking bones to parents or compiling bones
+     */
+    static CompiledGeometry compile(GeometryModelData model) throws GeometryCompileException {
+        return compile(model, GeometryCompileOptions.DEFAULT);
+    }
+
+    /**
+     * Compiles the specified model.
+     *
+     * @param model   The model to compile
+     * @param options The optimizations to apply to the mesh
+     * @return The compiled geometry
+     * @throws GeometryCompileException If there is an issue linking bones to parents or compiling bones
+     */
+    static CompiledGeometry compile(GeometryModelData model, GeometryCompileOptions options) throws GeometryCompileException {
+        GeometryModelData.Description desc = model.description();
+        return compile(desc.textureWidth(), desc.textureHeight(), model.bones(), options);
+    }
+
+    /**
+     * Compiles the specified bones.
+     *
+     * @param textureWidth  The width of the texture. Used for calculating bone UV
+     * @param textureHeight The height of the texture. Used for calculating bone UV
+     * @param bones         The bones to compile
+     * @return The compiled geometry
+     * @throws GeometryCompileException If there is an issue linking bones to parents or compiling bones
+     */
+    static CompiledGeometry compile(int textureWidth, int textureHeight, GeometryModelData.Bone[] bones) throws GeometryCompileException {
+        return compile(textureWidth, textureHeight, bones, GeometryCompileOptions.DEFAULT);
+    }
+
+    /**
+     * Compiles the specified bones.
+     *
+     * @param textureWidth  The width of the texture. Used for calculating bone UV
+     * @param textureHeight The height of the texture. Used for calculating bone UV
+     * @param bones         The bones to compile
+     * @param options       The optimizations to apply to the mesh
+     * @return The compiled geometry
+     * @throws GeometryCompileException If there is an issue linking bones to parents or compiling bones
+     */
+    static CompiledGeometry compile(int textureWidth, int textureHeight, GeometryModelData.Bone[] bones, GeometryCompileOptions options) throws GeometryCompileException {
+        return new CompiledGeometryImpl(textureWidth, textureHeight, bones, options);
+    }
+}
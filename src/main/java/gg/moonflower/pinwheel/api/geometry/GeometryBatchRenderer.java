@@ -0,0 +1,48 @@
+package gg.moonflower.pinwheel.api.geometry;
+
+import gg.moonflower.pinwheel.api.geometry.bone.AnimatedBone;
+import gg.moonflower.pinwheel.api.geometry.bone.Polygon;
+import gg.moonflower.pinwheel.api.transform.MatrixStack;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Renders geometry one bone and material span at a time instead of one polygon at a time.
+ *
+ * @author Ocelot
+ * @see GeometryTree#renderBatched(GeometryBatchRenderer, MatrixStack)
+ * @since 1.4.0
+ */
+@FunctionalInterface
+public interface GeometryBatchRenderer {
+
+    /**
+     * Renders all polygons of a single span.
+     *
+     * @param matrixStack The current position and normal the span should be rendered with
+     * @param bone        The bone the span belongs to
+     * @param geometry    The packed vertex and index data of all spans
+     * @param span        The index of the span to render in the geometry
+     */
+    void render(MatrixStack matrixStack, AnimatedBone bone, IndexedGeometry geometry, int span);
+
+    /**
+     * Creates a batch renderer that passes each polygon of a span to the specified per-polygon renderer.
+     *
+     * @param renderer The renderer to pass polygons to
+     * @return A batch renderer that uses the specified renderer
+     */
+    static GeometryBatchRenderer polygons(GeometryRenderer renderer) {
+        return (matrixStack, bone, geometry, span) -> {
+            String material = geometry.getSpanMaterial(span);
+            List<Polygon> polygons = bone.getPolygons();
+            for (int i = 0; i < polygons.size(); i++) {
+                Polygon polygon = polygons.get(i);
+                if (Objects.equals(material, polygon.material())) {
+                    renderer.render(matrixStack, polygon);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,70 @@
+package gg.moonflower.pinwheel.api.geometry;
+
+/**
+ * Optional mesh optimizations applied when compiling geometry.
+ *
+ * @param cullHiddenFaces Whether to remove cube faces that are fully covered by another cube in the same bone.
+ *                        This assumes cubes are opaque, so textures with transparent pixels may show holes
+ * @param mergeQuads      Whether to merge adjacent coplanar quads in the same bone with continuous texture coordinates and the same material into larger quads
+ * @author Ocelot
+ * @see Builder
+ * @since 1.4.0
+ */
+public record GeometryCompileOptions(boolean cullHiddenFaces, boolean mergeQuads) {
+
+    /**
+     * Options that compile all geometry exactly as defined.
+     */
+    public static final GeometryCompileOptions DEFAULT = builder().build();
+
+    /**
+     * @return A new builder for compile options
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Constructs new geometry compile options.
+     *
+     * @author Ocelot
+     * @since 1.4.0
+     */
+    public static class Builder {
+
+        private boolean cullHiddenFaces;
+        private boolean mergeQuads;
+
+        private Builder() {
+            this.cullHiddenFaces = false;
+            this.mergeQuads = false;
+        }
+
+        /**
+         * Sets whether cube faces fully covered by another cube in the same bone should be removed.
+         *
+         * @param cullHiddenFaces Whether to remove hidden faces
+         */
+        public Builder setCullHiddenFaces(boolean cullHiddenFaces) {
+            this.cullHiddenFaces = cullHiddenFaces;
+            return this;
+        }
+
+        /**
+         * Sets whether adjacent coplanar quads with continuous texture coordinates should be merged into larger quads.
+         *
+         * @param mergeQuads Whether to merge quads
+         */
+        public Builder setMergeQuads(boolean mergeQuads) {
+            this.mergeQuads = mergeQuads;
+            return this;
+        }
+
+        /**
+         * @return New options with all the properties defined
+         */
+        public GeometryCompileOptions build() {
+            return new GeometryCompileOptions(this.cullHiddenFaces, this.mergeQuads);
+        }
+    }
+}
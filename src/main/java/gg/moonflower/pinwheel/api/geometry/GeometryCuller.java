@@ -0,0 +1,61 @@
+package gg.moonflower.pinwheel.api.geometry;
+
+import gg.moonflower.pinwheel.api.geometry.bone.BoneBounds;
+import gg.moonflower.pinwheel.api.transform.MatrixStack;
+import gg.moonflower.pinwheel.impl.geometry.GeometryCullerImpl;
+import org.joml.FrustumIntersection;
+
+/**
+ * <p>Determines which bones of a {@link GeometryTree} are inside a view frustum using the current pose of each bone.</p>
+ * <p>Each bone is tested with the bounding sphere of its {@link BoneBounds} transformed into model space and, if the sphere is only partially inside,
+ * the transformed bounding box. A subtree is visible if any bone in the subtree is visible, so an entire subtree can be skipped with a single check.
+ * Bones that are not visible are never inside the frustum.</p>
+ * <p>A culler keeps the results of the last {@link #cull(FrustumIntersection)} and allocates no memory, so a single culler should be kept per tree.</p>
+ *
+ * @author Ocelot
+ * @see GeometryTree#renderBatched(GeometryBatchRenderer, MatrixStack, GeometryCuller)
+ * @since 1.4.0
+ */
+public interface GeometryCuller {
+
+    /**
+     * Tests every bone against the specified frustum. The frustum must be in the model space of the tree,
+     * so it should be created from the projection, view, and model matrices multiplied together.
+     *
+     * @param frustum The frustum to test bones against
+     * @return Whether any part of the model is inside the frustum
+     */
+    boolean cull(FrustumIntersection frustum);
+
+    /**
+     * @return Whether any part of the model was inside the frustum during the last cull
+     */
+    boolean isModelVisible();
+
+    /**
+     * @param index The index of the bone
+     * @return Whether the polygons of that bone were inside the frustum during the last cull
+     */
+    boolean isBoneVisible(int index);
+
+    /**
+     * @param index The index of the bone
+     * @return Whether the polygons of that bone or any of its children were inside the frustum during the last cull
+     */
+    boolean isSubtreeVisible(int index);
+
+    /**
+     * @return The tree this culler tests the bones of
+     */
+    GeometryTree getTree();
+
+    /**
+     * Creates a new culler for the specified tree. All bones are considered visible until the first cull.
+     *
+     * @param tree The tree to cull bones of
+     * @return A new culler
+     */
+    static GeometryCuller create(GeometryTree tree) {
+        return new GeometryCullerImpl(tree);
+    }
+}
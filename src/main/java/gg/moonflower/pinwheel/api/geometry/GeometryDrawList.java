@@ -0,0 +1,186 @@
+package gg.moonflower.pinwheel.api.geometry;
+
+import gg.moonflower.pinwheel.api.texture.ModelTexture;
+import gg.moonflower.pinwheel.api.texture.TextureTable;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>All spans of {@link IndexedGeometry} grouped by the texture they resolve to in a {@link TextureTable}.</p>
+ * <p>Each batch draws every span that uses the same texture, regardless of which bone the span belongs to, so switching render state
+ * is only required once per batch. The indices of each batch are stored contiguously, so a batch can be drawn with a single call
+ * when skinning with {@link GeometryTree#writeBonePalette(java.nio.FloatBuffer, org.joml.Matrix4f[], boolean)}.</p>
+ * <p>Batches are sorted by {@link ModelTexture.TextureLayer}, so all solid batches are drawn before translucent batches.
+ * Materials with multiple layers add their spans to one batch per layer.</p>
+ *
+ * @author Ocelot
+ * @see GeometryTree#renderDrawList(GeometryDrawList, GeometryDrawListRenderer, org.joml.Matrix4f[])
+ * @since 1.4.0
+ */
+public final class GeometryDrawList {
+
+    /**
+     * The material used for polygons that do not specify a material.
+     */
+    public static final String DEFAULT_MATERIAL = "texture";
+
+    private final IndexedGeometry geometry;
+    private final List<Batch> batches;
+    private final int[] indices;
+
+    private GeometryDrawList(IndexedGeometry geometry, List<Batch> batches, int[] indices) {
+        this.geometry = geometry;
+        this.batches = Collections.unmodifiableList(batches);
+        this.indices = indices;
+    }
+
+    /**
+     * Groups all spans of the specified geometry by the textures their materials resolve to.
+     *
+     * @param geometry The geometry to create draw batches for
+     * @param textures The table to resolve span materials with
+     * @return A new draw list for the geometry
+     */
+    public static GeometryDrawList create(IndexedGeometry geometry, TextureTable textures) {
+        Map<ModelTexture, IntArrayList> groups = new LinkedHashMap<>();
+        for (int span = 0; span < geometry.getSpanCount(); span++) {
+            String material = geometry.getSpanMaterial(span);
+            for (ModelTexture texture : textures.getLayerTextures(material != null ? material : DEFAULT_MATERIAL)) {
+                groups.computeIfAbsent(texture, unused -> new IntArrayList()).add(span);
+            }
+        }
+
+        List<Map.Entry<ModelTexture, IntArrayList>> sorted = new ArrayList<>(groups.entrySet());
+        sorted.sort(Comparator.comparing(entry -> entry.getKey().layer()));
+
+        int[] geometryIndices = geometry.getIndices();
+        IntArrayList indices = new IntArrayList(geometryIndices.length);
+        List<Batch> batches = new ArrayList<>(sorted.size());
+        for (Map.Entry<ModelTexture, IntArrayList> entry : sorted) {
+            int[] spans = entry.getValue().toIntArray();
+            int firstIndex = indices.size();
+            for (int span : spans) {
+                int first = geometry.getFirstIndex(span);
+                indices.addElements(indices.size(), geometryIndices, first, geometry.getIndexCount(span));
+            }
+            batches.add(new Batch(entry.getKey(), spans, firstIndex, indices.size() - firstIndex));
+        }
+
+        return new GeometryDrawList(geometry, batches, indices.toIntArray());
+    }
+
+    /**
+     * @return The geometry the batches draw
+     */
+    public IndexedGeometry getGeometry() {
+        return this.geometry;
+    }
+
+    /**
+     * @return All batches in the order they should be drawn
+     */
+    public List<Batch> getBatches() {
+        return this.batches;
+    }
+
+    /**
+     * @return The vertex indices of every batch in order. The array is not copied and must not be modified
+     */
+    public int[] getIndices() {
+        return this.indices;
+    }
+
+    /**
+     * Writes all indices into the specified buffer as unsigned shorts.
+     *
+     * @param buffer The buffer to write into
+     * @throws IllegalStateException If there are too many vertices to use short indices
+     * @see IndexedGeometry#hasShortIndices()
+     */
+    public void writeIndices(ShortBuffer buffer) {
+        if (!this.geometry.hasShortIndices()) {
+            throw new IllegalStateException("Too many vertices for short indices: " + this.geometry.getVertexCount());
+        }
+        for (int index : this.indices) {
+            buffer.put((short) index);
+        }
+    }
+
+    /**
+     * Writes all indices into the specified buffer.
+     *
+     * @param buffer The buffer to write into
+     */
+    public void writeIndices(IntBuffer buffer) {
+        buffer.put(this.indices);
+    }
+
+    @Override
+    public String toString() {
+        return "GeometryDrawList{" +
+                "geometry=" + this.geometry +
+                ", batches=" + this.batches +
+                '}';
+    }
+
+    /**
+     * A group of spans that all use the same texture.
+     *
+     * @param texture    The texture all spans are drawn with
+     * @param spans      The index of each span in the geometry. The array must not be modified
+     * @param firstIndex The index of the first index of this batch in {@link #getIndices()}
+     * @param indexCount The number of indices in this batch
+     * @author Ocelot
+     * @since 1.4.0
+     */
+    public record Batch(ModelTexture texture, int[] spans, int firstIndex, int indexCount) {
+
+        /**
+         * @return The render layer this batch is drawn in
+         */
+        public ModelTexture.TextureLayer layer() {
+            return this.texture.layer();
+        }
+
+        @Override
+        public boolean equals(@Nullable Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Batch batch = (Batch) o;
+            return this.firstIndex == batch.firstIndex && this.indexCount == batch.indexCount && this.texture.equals(batch.texture) && Arrays.equals(this.spans, batch.spans);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = this.texture.hashCode();
+            result = 31 * result + Arrays.hashCode(this.spans);
+            result = 31 * result + this.firstIndex;
+            result = 31 * result + this.indexCount;
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "Batch{" +
+                    "texture=" + this.texture +
+                    ", spans=" + Arrays.toString(this.spans) +
+                    ", firstIndex=" + this.firstIndex +
+                    ", indexCount=" + this.indexCount +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package gg.moonflower.pinwheel.api.geometry;
+
+import org.joml.Matrix4f;
+
+/**
+ * Renders geometry one texture batch at a time across all bones.
+ *
+ * @author Ocelot
+ * @see GeometryTree#renderDrawList(GeometryDrawList, GeometryDrawListRenderer, Matrix4f[])
+ * @since 1.4.0
+ */
+@FunctionalInterface
+public interface GeometryDrawListRenderer {
+
+    /**
+     * Renders all spans of a single batch.
+     *
+     * @param drawList     The draw list the batch is part of
+     * @param batch        The batch to render
+     * @param boneMatrices The model space transformation of each bone by index. Bones that are not visible have a zero matrix
+     */
+    void render(GeometryDrawList drawList, GeometryDrawList.Batch batch, Matrix4f[] boneMatrices);
+}
@@ -2,17 +2,23 @@ package gg.moonflower.pinwheel.api.geometry;
 
 import gg.moonflower.molangcompiler.api.MolangEnvironment;
 import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.pinwheel.api.animation.AnimationBinding;
 import gg.moonflower.pinwheel.api.animation.AnimationController;
 import gg.moonflower.pinwheel.api.animation.AnimationData;
+import gg.moonflower.pinwheel.api.animation.CompressedAnimation;
+import gg.moonflower.pinwheel.api.animation.KeyframeCursor;
 import gg.moonflower.pinwheel.api.animation.PlayingAnimation;
 import gg.moonflower.pinwheel.api.geometry.bone.AnimatedBone;
 import gg.moonflower.pinwheel.api.transform.LocatorTransformation;
 import gg.moonflower.pinwheel.api.transform.MatrixStack;
+import gg.moonflower.pinwheel.impl.animation.AnimationJobTask;
 import gg.moonflower.pinwheel.impl.animation.AnimationKeyframeResolverImpl;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * An abstract geometry model that can be rendered.
@@ -110,6 +116,38 @@ public interface GeometryModel extends GeometryTree {
         AnimationKeyframeResolverImpl.apply(animationTime, weight, environment, pose, boneAnimation);
     }
 
+    /**
+     * Applies the specified bone animation to the specified pose, using a cursor to find key frames.
+     *
+     * @param animationTime      The current animation time in seconds
+     * @param weight             The amount this animation should affect the pose
+     * @param environment        The environment to resolve animations in
+     * @param pose               The pose to modify
+     * @param boneAnimation      The animation to apply
+     * @param cursor             The cursor to remember key frame positions in or <code>null</code> to search every time
+     * @param boneAnimationIndex The index of the bone animation in {@link AnimationData#boneAnimations()}
+     * @since 1.4.0
+     */
+    static void applyKeyframeAnimation(float animationTime, float weight, MolangEnvironment environment, AnimatedBone.AnimationPose pose, AnimationData.BoneAnimation boneAnimation, @Nullable KeyframeCursor cursor, int boneAnimationIndex) {
+        AnimationKeyframeResolverImpl.apply(animationTime, weight, environment, pose, boneAnimation, cursor, boneAnimationIndex);
+    }
+
+    /**
+     * <p>Applies the animations of every job, spreading the jobs across the specified pool. This blocks until all jobs are applied.</p>
+     * <p>Each job must use a different model and {@link MolangEnvironment}, since neither can be safely shared between threads.
+     * Playing animations must also not be shared between jobs because they store a {@link KeyframeCursor}.</p>
+     *
+     * @param jobs The animations to apply
+     * @param pool The pool to apply animations in
+     * @since 1.4.0
+     */
+    static void applyAnimationsParallel(List<AnimationJob> jobs, ForkJoinPool pool) {
+        if (jobs.isEmpty()) {
+            return;
+        }
+        pool.invoke(new AnimationJobTask(jobs, 0, jobs.size()));
+    }
+
     /**
      * Applies the specified animation transformations at the specified time.
      *
@@ -137,13 +175,71 @@ public interface GeometryModel extends GeometryTree {
 
             AnimationData data = animation.getAnimation();
             float localAnimationTime = animation.getRenderAnimationTime();
-            for (AnimationData.BoneAnimation boneAnimation : data.boneAnimations()) {
+            KeyframeCursor cursor = animation.getCursor();
+            CompressedAnimation compressed = animation.getCompressedAnimation();
+            AnimationData.BoneAnimation[] boneAnimations = data.boneAnimations();
+            for (int i = 0; i < boneAnimations.length; i++) {
+                AnimationData.BoneAnimation boneAnimation = boneAnimations[i];
                 AnimatedBone bone = this.getBone(boneAnimation.name());
                 if (bone == null) {
                     continue;
                 }
 
-                GeometryModel.applyKeyframeAnimation(localAnimationTime, blendWeight, environment, bone.getAnimationPose(), boneAnimation);
+                if (compressed != null) {
+                    compressed.apply(i, localAnimationTime, blendWeight, environment, bone.getAnimationPose(), cursor);
+                } else {
+                    GeometryModel.applyKeyframeAnimation(localAnimationTime, blendWeight, environment, bone.getAnimationPose(), boneAnimation, cursor, i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the specified animation transformations at the specified time using bones resolved ahead of time.
+     *
+     * @param environment The runtime to execute MoLang instructions in.
+     *                    This is generally going to be {@link MolangRuntime#runtime()}
+     * @param animations  The animations to play
+     * @param bindings    The binding of each animation to the bones in this model. Must be in the same order as the animations
+     * @throws IllegalArgumentException If the bindings do not match the animations
+     * @since 1.4.0
+     */
+    default void applyAnimations(MolangEnvironment environment, List<? extends PlayingAnimation> animations, AnimationBinding[] bindings) {
+        if (animations.size() != bindings.length) {
+            throw new IllegalArgumentException("Expected " + animations.size() + " bindings, was " + bindings.length);
+        }
+
+        this.resetTransformation();
+
+        for (int i = 0; i < bindings.length; i++) {
+            PlayingAnimation animation = animations.get(i);
+            AnimationBinding binding = bindings[i];
+            AnimationData data = animation.getAnimation();
+            if (binding.animation() != data) {
+                throw new IllegalArgumentException("Binding for " + binding.animation().name() + " does not match animation " + data.name());
+            }
+
+            float blendWeight = animation.getWeight(environment);
+            if (Math.abs(blendWeight) <= 1E-6) {
+                continue;
+            }
+
+            float localAnimationTime = animation.getRenderAnimationTime();
+            KeyframeCursor cursor = animation.getCursor();
+            CompressedAnimation compressed = animation.getCompressedAnimation();
+            AnimationData.BoneAnimation[] boneAnimations = data.boneAnimations();
+            int[] boneIndices = binding.boneIndices();
+            for (int j = 0; j < boneAnimations.length; j++) {
+                int boneIndex = boneIndices[j];
+                if (boneIndex == -1) {
+                    continue;
+                }
+
+                if (compressed != null) {
+                    compressed.apply(j, localAnimationTime, blendWeight, environment, this.getBone(boneIndex).getAnimationPose(), cursor);
+                } else {
+                    GeometryModel.applyKeyframeAnimation(localAnimationTime, blendWeight, environment, this.getBone(boneIndex).getAnimationPose(), boneAnimations[j], cursor, j);
+                }
             }
         }
     }
@@ -155,4 +251,35 @@ public interface GeometryModel extends GeometryTree {
      * @param matrixStack The matrix transformations to apply
      */
     void render(GeometryRenderer renderer, MatrixStack matrixStack);
+
+    /**
+     * A set of animations to apply to a single model.
+     *
+     * @param model       The model to animate
+     * @param environment The environment to resolve animations in. This must not be used by any other job
+     * @param animations  The animations to play
+     * @author Ocelot
+     * @see GeometryModel#applyAnimationsParallel(List, ForkJoinPool)
+     * @since 1.4.0
+     */
+    record AnimationJob(GeometryModel model, MolangEnvironment environment, Collection<? extends PlayingAnimation> animations) {
+
+        /**
+         * Creates a job for the animations currently playing in the specified controller.
+         *
+         * @param model      The model to animate
+         * @param controller The controller to apply animations from
+         * @return A new job
+         */
+        public static AnimationJob of(GeometryModel model, AnimationController controller) {
+            return new AnimationJob(model, controller.getEnvironment(), controller.getPlayingAnimations());
+        }
+
+        /**
+         * Applies the animations to the model on the current thread.
+         */
+        public void apply() {
+            this.model.applyAnimations(this.environment, this.animations);
+        }
+    }
 }
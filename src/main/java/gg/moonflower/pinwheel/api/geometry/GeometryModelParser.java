@@ -5,9 +5,18 @@ import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 import com.google.gson.stream.JsonReader;
 import gg.moonflower.pinwheel.api.texture.TextureTable;
+import gg.moonflower.pinwheel.impl.geometry.GeometryBinaryFormat;
 import gg.moonflower.pinwheel.impl.geometry.GeometryModelParserImpl;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Helper to read {@link GeometryModelData} from JSON.
@@ -18,23 +27,23 @@ import java.io.Reader;
 public interface GeometryModelParser {
 
     /**
-     * Creates a new geometry model from the specified reader.
+     * Creates a new geometry model from the specified reader. The model is read as a stream of tokens without building a JSON tree.
      *
      * @param reader The reader to get data from
      * @return A new geometry model from the reader
      */
     static GeometryModelData[] parseModel(Reader reader) throws JsonParseException {
-        return parseModel(JsonParser.parseReader(reader));
+        return GeometryModelParserImpl.parseModel(reader);
     }
 
     /**
-     * Creates a new geometry model from the specified reader.
+     * Creates a new geometry model from the specified reader. The model is read as a stream of tokens without building a JSON tree.
      *
      * @param reader The reader to get data from
      * @return A new geometry model from the reader
      */
     static GeometryModelData[] parseModel(JsonReader reader) throws JsonParseException {
-        return parseModel(JsonParser.parseReader(reader));
+        return GeometryModelParserImpl.parseModel(reader);
     }
 
     /**
@@ -44,7 +53,7 @@ public interface GeometryModelParser {
      * @return A new geometry model from the json
      */
     static GeometryModelData[] parseModel(String json) throws JsonParseException {
-        return parseModel(JsonParser.parseString(json));
+        return parseModel(new StringReader(json));
     }
 
     /**
@@ -57,6 +66,46 @@ public interface GeometryModelParser {
         return GeometryModelParserImpl.parseModel(json);
     }
 
+    /**
+     * Creates new geometry models from the specified binary data written by {@link #writeBinary(GeometryModelData[], OutputStream)}.
+     * The buffer position is not modified.
+     *
+     * @param buffer The buffer to read from
+     * @return The geometry models in the buffer
+     * @throws IOException If the data is not a valid geometry file
+     * @since 1.4.0
+     */
+    static GeometryModelData[] parseBinary(ByteBuffer buffer) throws IOException {
+        return GeometryBinaryFormat.read(buffer);
+    }
+
+    /**
+     * Creates new geometry models from the specified binary geometry file. The file is memory-mapped instead of copied onto the heap.
+     *
+     * @param path The path to the file
+     * @return The geometry models in the file
+     * @throws IOException If the file could not be read or is not a valid geometry file
+     * @since 1.4.0
+     */
+    static GeometryModelData[] parseBinary(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return GeometryBinaryFormat.read(buffer);
+        }
+    }
+
+    /**
+     * Writes the specified geometry models in a compact binary format that can be read with {@link #parseBinary(ByteBuffer)}.
+     *
+     * @param models The models to write
+     * @param stream The stream to write into
+     * @throws IOException If an error occurs writing to the stream or a bone binding was not parsed from MoLang source and is not a constant number
+     * @since 1.4.0
+     */
+    static void writeBinary(GeometryModelData[] models, OutputStream stream) throws IOException {
+        GeometryBinaryFormat.write(models, stream);
+    }
+
     /**
      * Creates a new texture table from the specified reader.
      *
@@ -1,15 +1,26 @@
 package gg.moonflower.pinwheel.api.geometry;
 
 import gg.moonflower.pinwheel.api.geometry.bone.AnimatedBone;
+import gg.moonflower.pinwheel.api.geometry.bone.BoneBounds;
 import gg.moonflower.pinwheel.api.geometry.bone.ModelBone;
+import gg.moonflower.pinwheel.api.texture.TextureTable;
 import gg.moonflower.pinwheel.api.transform.MatrixStack;
+import gg.moonflower.pinwheel.impl.geometry.BoneIndex;
 import gg.moonflower.pinwheel.impl.geometry.EmptyGeometryTree;
 import gg.moonflower.pinwheel.impl.geometry.GeometryTreeImpl;
+import gg.moonflower.pinwheel.impl.geometry.VertexWriter;
 import org.jetbrains.annotations.Nullable;
+import org.joml.Matrix4f;
 
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 /**
  * Creates a tree of {@link AnimatedBone} that can be used to access all bones in a model.
@@ -69,26 +80,279 @@ public interface GeometryTree extends LocatorAccess {
         return Optional.ofNullable(this.getBone(name));
     }
 
+    /**
+     * <p>Retrieves the index of a bone by name. Bone indices are dense and follow a depth-first order of the hierarchy,
+     * so parents always have a lower index than their children and every subtree is a contiguous range of indices.</p>
+     * <p>The default implementation visits roots and children in the order of {@link #getBones()}, so indices match that order
+     * whenever it is already depth-first. The lookup table is built the first time it is needed, so the bones must not change afterwards.
+     * Implementations that override any index lookup must override all of them and keep the same ordering guarantees.</p>
+     *
+     * @param name The name of the bone
+     * @return The index of the bone or <code>-1</code> if there is no bone
+     * @since 1.4.0
+     */
+    default int getBoneIndex(String name) {
+        return BoneIndex.get(this).getIndex(name);
+    }
+
+    /**
+     * Retrieves a bone by index.
+     *
+     * @param index The index of the bone
+     * @return The bone at that index
+     * @throws IndexOutOfBoundsException If there is no bone at that index
+     * @throws IllegalStateException     If the parents of some bones form a cycle
+     * @see #getBoneIndex(String)
+     * @since 1.4.0
+     */
+    default AnimatedBone getBone(int index) {
+        return BoneIndex.get(this).getBone(index);
+    }
+
+    /**
+     * @return The number of bones in the tree
+     * @since 1.4.0
+     */
+    default int getBoneCount() {
+        return this.getBones().size();
+    }
+
+    /**
+     * Retrieves the bounds of the polygons in a bone before the bone is transformed.
+     *
+     * @param index The index of the bone
+     * @return The bounds of the bone at that index
+     * @throws IndexOutOfBoundsException If there is no bone at that index
+     * @since 1.4.0
+     */
+    default BoneBounds getBounds(int index) {
+        return BoneBounds.of(this.getBone(index).getPolygons());
+    }
+
+    /**
+     * Retrieves the index of the parent of a bone. Parents always have a lower index than their children.
+     *
+     * @param index The index of the bone
+     * @return The index of the parent bone or <code>-1</code> if the bone is a root bone
+     * @throws IndexOutOfBoundsException If there is no bone at that index
+     * @throws IllegalStateException     If the parents of some bones form a cycle
+     * @see #getBoneIndex(String)
+     * @since 1.4.0
+     */
+    default int getParentIndex(int index) {
+        return BoneIndex.get(this).getParentIndex(index);
+    }
+
+    /**
+     * <p>Computes the model space transformation of every bone in a single pass over the bones in index order.</p>
+     * <p>Each matrix is the transformation {@link AnimatedBone#render(GeometryRenderer, MatrixStack)} uses for the polygons of that bone
+     * when rendered with an identity matrix stack.</p>
+     *
+     * @param out The matrices to store the transformation of each bone into. Must have at least {@link #getBoneCount()} elements
+     * @throws IllegalArgumentException If there are fewer matrices than bones
+     * @since 1.4.0
+     */
+    default void computeWorldMatrices(Matrix4f[] out) {
+        int count = this.getBoneCount();
+        if (out.length < count) {
+            throw new IllegalArgumentException("Expected at least " + count + " matrices, was " + out.length);
+        }
+
+        for (int i = 0; i < count; i++) {
+            int parent = this.getParentIndex(i);
+            Matrix4f matrix = out[i];
+            if (parent == -1) {
+                matrix.identity();
+            } else {
+                matrix.set(out[parent]);
+            }
+            this.getBone(i).transform(matrix);
+        }
+    }
+
     /**
      * @return All bones in the tree
      */
     Collection<AnimatedBone> getBones();
 
+    /**
+     * Deduplicates the vertices of all bones and creates a triangle index buffer. Bones are indexed in the same order as {@link #getBoneIndex(String)}.
+     * The returned geometry is immutable and may be shared with other trees created from the same {@link CompiledGeometry}.
+     *
+     * @return Indexed geometry for this tree
+     * @since 1.4.0
+     */
+    default IndexedGeometry bakeIndexed() {
+        return IndexedGeometry.index(BoneIndex.get(this).getBones());
+    }
+
+    /**
+     * <p>Renders every bone and material span of {@link #bakeIndexed()} with a single call each.</p>
+     * <p>Bones are visited in index order without recursion. Bones that are not visible are skipped along with all their children.</p>
+     *
+     * @param renderer    The renderer to pass spans to
+     * @param matrixStack The matrix transformations to apply
+     * @since 1.4.0
+     */
+    default void renderBatched(GeometryBatchRenderer renderer, MatrixStack matrixStack) {
+        this.renderBatched(renderer, matrixStack, null);
+    }
+
+    /**
+     * <p>Renders every bone and material span of {@link #bakeIndexed()} with a single call each, skipping bones outside the view.</p>
+     * <p>Bones are visited in index order without recursion. Bones that are not visible or have no visible bones in their subtree
+     * according to the last {@link GeometryCuller#cull(org.joml.FrustumIntersection)} are skipped along with all their children.
+     * Spans of bones outside the view are skipped even if their children are rendered.</p>
+     *
+     * @param renderer    The renderer to pass spans to
+     * @param matrixStack The matrix transformations to apply
+     * @param culler      The culler created for this tree to skip bones with or <code>null</code> to render all visible bones
+     * @since 1.4.0
+     */
+    default void renderBatched(GeometryBatchRenderer renderer, MatrixStack matrixStack, @Nullable GeometryCuller culler) {
+        IndexedGeometry geometry = this.bakeIndexed();
+        int boneCount = this.getBoneCount();
+        int spanCount = geometry.getSpanCount();
+        int span = 0;
+        int top = -1;
+
+        int bone = 0;
+        while (bone < boneCount) {
+            AnimatedBone animatedBone = this.getBone(bone);
+            if (!animatedBone.isVisible() || (culler != null && !culler.isSubtreeVisible(bone))) {
+                // Children always directly follow their parent, so skip until a bone outside this subtree is found
+                int next = bone + 1;
+                while (next < boneCount && this.getParentIndex(next) >= bone) {
+                    next++;
+                }
+                while (span < spanCount && geometry.getSpanBone(span) < next) {
+                    span++;
+                }
+                bone = next;
+                continue;
+            }
+
+            // Restore the transformation of the parent
+            int parent = this.getParentIndex(bone);
+            while (top != parent) {
+                matrixStack.popMatrix();
+                top = this.getParentIndex(top);
+            }
+
+            matrixStack.pushMatrix();
+            animatedBone.transform(matrixStack.position());
+            top = bone;
+
+            boolean render = culler == null || culler.isBoneVisible(bone);
+            while (span < spanCount && geometry.getSpanBone(span) == bone) {
+                if (render) {
+                    renderer.render(matrixStack, animatedBone, geometry, span);
+                }
+                span++;
+            }
+            bone++;
+        }
+
+        while (top != -1) {
+            matrixStack.popMatrix();
+            top = this.getParentIndex(top);
+        }
+    }
+
+    /**
+     * <p>Skins every vertex of {@link #bakeIndexed()} on the CPU and writes it into the specified buffer using the current pose of each bone.</p>
+     * <p>Vertices are written in index order, so the indices of {@link #bakeIndexed()} can be used to draw the result directly.
+     * Vertices of bones that are not visible, including their children, are collapsed into degenerate triangles.
+     * Positions are in model space as if rendered with an identity matrix stack and normals are normalized after transforming.</p>
+     * <p>No memory is allocated, so this can be called every frame.</p>
+     *
+     * @param buffer   The buffer to write into starting at the current position. The position is moved to the end of the written vertices
+     * @param layout   The layout of each vertex. Attributes not in the layout are skipped
+     * @param matrices Scratch matrices to store the transformation of each bone into. Must have at least {@link #getBoneCount()} elements
+     * @throws IllegalArgumentException If there are fewer matrices than bones or the buffer does not have enough space for all vertices
+     * @since 1.4.0
+     */
+    default void writeVertices(ByteBuffer buffer, VertexLayout layout, Matrix4f[] matrices) {
+        VertexWriter.write(this, buffer, layout, matrices);
+    }
+
+    /**
+     * <p>Writes the model space transformation of every bone in index order for skinning on the GPU.</p>
+     * <p>Each matrix is the same transformation {@link #writeVertices(ByteBuffer, VertexLayout, Matrix4f[])} applies to the vertices of that bone,
+     * so bones that are not visible, including their children, have a zero matrix. Full matrices are written as 16 floats in column-major order.
+     * Affine matrices are written as 12 floats with each row of the upper 4x3 matrix stored as a 4 component vector.</p>
+     * <p>No memory is allocated, so this can be called every frame.</p>
+     *
+     * @param buffer   The buffer to write into starting at the current position. The position is moved to the end of the written matrices
+     * @param matrices Scratch matrices to store the transformation of each bone into. Must have at least {@link #getBoneCount()} elements
+     * @param affine   Whether to write 4x3 matrices instead of 4x4 matrices
+     * @throws IllegalArgumentException If there are fewer matrices than bones or the buffer does not have enough space for all matrices
+     * @see IndexedGeometry#writeVertices(ByteBuffer, VertexLayout)
+     * @since 1.4.0
+     */
+    default void writeBonePalette(FloatBuffer buffer, Matrix4f[] matrices, boolean affine) {
+        VertexWriter.writeBonePalette(this, buffer, matrices, affine);
+    }
+
+    /**
+     * Groups all spans of {@link #bakeIndexed()} by the texture their material resolves to.
+     * The draw list only depends on the geometry and textures, so it can be created once and reused every frame.
+     *
+     * @param textures The table to resolve span materials with
+     * @return A new draw list for this tree
+     * @since 1.4.0
+     */
+    default GeometryDrawList createDrawList(TextureTable textures) {
+        return GeometryDrawList.create(this.bakeIndexed(), textures);
+    }
+
+    /**
+     * <p>Renders every batch of the specified draw list with a single call each using the current pose of each bone.</p>
+     * <p>The bone matrices passed to the renderer are the same as {@link #writeBonePalette(FloatBuffer, Matrix4f[], boolean)}.</p>
+     *
+     * @param drawList The draw list created from this tree to render
+     * @param renderer The renderer to pass batches to
+     * @param matrices Scratch matrices to store the transformation of each bone into. Must have at least {@link #getBoneCount()} elements
+     * @throws IllegalArgumentException If there are fewer matrices than bones
+     * @since 1.4.0
+     */
+    default void renderDrawList(GeometryDrawList drawList, GeometryDrawListRenderer renderer, Matrix4f[] matrices) {
+        VertexWriter.computeSkinningMatrices(this, matrices);
+        List<GeometryDrawList.Batch> batches = drawList.getBatches();
+        for (int i = 0; i < batches.size(); i++) {
+            renderer.render(drawList, batches.get(i), matrices);
+        }
+    }
+
     /**
      * @return All bones that all other bones are children of
      */
     Collection<AnimatedBone> getRootBones();
 
     /**
-     * Creates a new geometry tree for the specified model.
+     * Creates a new geometry tree for the specified model. This compiles the model each time,
+     * so {@link CompiledGeometry#createTree()} should be used when creating many trees for the same model.
      *
      * @param model The model to create a tree for
      * @return A new tree to access all bones in the model
      * @throws GeometryCompileException If there is an issue linking bones to parents or compiling bones
      */
     static GeometryTree create(GeometryModelData model) throws GeometryCompileException {
+        return create(model, GeometryCompileOptions.DEFAULT);
+    }
+
+    /**
+     * Creates a new geometry tree for the specified model.
+     *
+     * @param model   The model to create a tree for
+     * @param options The optimizations to apply to the mesh
+     * @return A new tree to access all bones in the model
+     * @throws GeometryCompileException If there is an issue linking bones to parents or compiling bones
+     * @since 1.4.0
+     */
+    static GeometryTree create(GeometryModelData model, GeometryCompileOptions options) throws GeometryCompileException {
         GeometryModelData.Description desc = model.description();
-        return create(desc.textureWidth(), desc.textureHeight(), model.bones());
+        return create(desc.textureWidth(), desc.textureHeight(), model.bones(), options);
     }
 
     /**
@@ -101,7 +365,49 @@ public interface GeometryTree extends LocatorAccess {
      * @throws GeometryCompileException If there is an issue linking bones to parents or compiling bones
      */
     static GeometryTree create(int textureWidth, int textureHeight, GeometryModelData.Bone[] bones) throws GeometryCompileException {
-        return new GeometryTreeImpl(textureWidth, textureHeight, bones);
+        return create(textureWidth, textureHeight, bones, GeometryCompileOptions.DEFAULT);
+    }
+
+    /**
+     * Creates a new geometry tree for the specified bones.
+     *
+     * @param textureWidth  The width of the texture. Used for calculating bone UV
+     * @param textureHeight The height of the texture. Used for calculating bone UV
+     * @param bones         The bones to create a tree for
+     * @param options       The optimizations to apply to the mesh
+     * @return A new tree to access all bones
+     * @throws GeometryCompileException If there is an issue linking bones to parents or compiling bones
+     * @since 1.4.0
+     */
+    static GeometryTree create(int textureWidth, int textureHeight, GeometryModelData.Bone[] bones, GeometryCompileOptions options) throws GeometryCompileException {
+        return new GeometryTreeImpl(textureWidth, textureHeight, bones, options);
+    }
+
+    /**
+     * Creates new geometry trees for all specified models in parallel. Compiling geometry does not share any mutable state,
+     * so each model can be compiled on a different thread.
+     *
+     * @param models   The models to create trees for
+     * @param executor The executor to compile each model on
+     * @return A future that completes with a tree for each model in the same order as the models.
+     * If any model fails to compile, the future completes exceptionally with the {@link GeometryCompileException} as the cause
+     * @since 1.4.0
+     */
+    static CompletableFuture<GeometryTree[]> createAll(GeometryModelData[] models, Executor executor) {
+        GeometryTree[] trees = new GeometryTree[models.length];
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[models.length];
+        for (int i = 0; i < models.length; i++) {
+            GeometryModelData model = models[i];
+            int index = i;
+            futures[i] = CompletableFuture.runAsync(() -> {
+                try {
+                    trees[index] = create(model);
+                } catch (GeometryCompileException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor);
+        }
+        return CompletableFuture.allOf(futures).thenApply(unused -> trees);
     }
 
     /**
@@ -0,0 +1,376 @@
+package gg.moonflower.pinwheel.api.geometry;
+
+import gg.moonflower.pinwheel.api.geometry.bone.AnimatedBone;
+import gg.moonflower.pinwheel.api.geometry.bone.Polygon;
+import gg.moonflower.pinwheel.api.geometry.bone.Vertex;
+import gg.moonflower.pinwheel.impl.geometry.VertexWriter;
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Matrix4f;
+import org.joml.Vector3fc;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>All polygons of a {@link GeometryTree} as deduplicated vertices and a triangle index buffer.</p>
+ * <p>Polygons are grouped into spans of the same bone and material. Identical vertices are only stored once per span.
+ * Each span references a contiguous range of vertices and a contiguous range of indices. Indices are absolute and always
+ * point into the vertices of their own span.</p>
+ * <p>The arrays returned by this class are not copied and must not be modified.</p>
+ *
+ * @author Ocelot
+ * @since 1.4.0
+ */
+public final class IndexedGeometry {
+
+    /**
+     * The number of floats used for each vertex position.
+     */
+    public static final int POSITION_SIZE = 3;
+    /**
+     * The number of floats used for each vertex texture coordinate.
+     */
+    public static final int UV_SIZE = 2;
+    /**
+     * The number of floats used for each vertex normal.
+     */
+    public static final int NORMAL_SIZE = 3;
+    /**
+     * The maximum number of vertices that can be referenced by unsigned short indices.
+     */
+    public static final int MAX_SHORT_VERTICES = 0x10000;
+
+    private final String[] bones;
+    private final int[] spanBones;
+    private final String[] spanMaterials;
+    private final int[] vertexOffsets;
+    private final int[] indexOffsets;
+    private final float[] positions;
+    private final float[] uvs;
+    private final float[] normals;
+    private final int[] indices;
+
+    /**
+     * Creates new indexed geometry from existing arrays.
+     *
+     * @param bones         The name of each bone
+     * @param spanBones     The bone index of each span
+     * @param spanMaterials The material of each span
+     * @param vertexOffsets The first vertex of each span followed by the total number of vertices
+     * @param indexOffsets  The first index of each span followed by the total number of indices
+     * @param positions     The position of each vertex
+     * @param uvs           The texture coordinate of each vertex
+     * @param normals       The normal of each vertex
+     * @param indices       The vertex indices of each triangle
+     */
+    public IndexedGeometry(String[] bones, int[] spanBones, String[] spanMaterials, int[] vertexOffsets, int[] indexOffsets, float[] positions, float[] uvs, float[] normals, int[] indices) {
+        if (spanMaterials.length != spanBones.length) {
+            throw new IllegalArgumentException("Expected " + spanBones.length + " span materials, was " + spanMaterials.length);
+        }
+        if (vertexOffsets.length != spanBones.length + 1) {
+            throw new IllegalArgumentException("Expected " + (spanBones.length + 1) + " vertex offsets, was " + vertexOffsets.length);
+        }
+        if (indexOffsets.length != spanBones.length + 1) {
+            throw new IllegalArgumentException("Expected " + (spanBones.length + 1) + " index offsets, was " + indexOffsets.length);
+        }
+
+        int vertices = vertexOffsets[spanBones.length];
+        if (positions.length != vertices * POSITION_SIZE || uvs.length != vertices * UV_SIZE || normals.length != vertices * NORMAL_SIZE) {
+            throw new IllegalArgumentException("Vertex attributes must all have " + vertices + " vertices");
+        }
+        if (indices.length != indexOffsets[spanBones.length]) {
+            throw new IllegalArgumentException("Expected " + indexOffsets[spanBones.length] + " indices, was " + indices.length);
+        }
+
+        this.bones = bones;
+        this.spanBones = spanBones;
+        this.spanMaterials = spanMaterials;
+        this.vertexOffsets = vertexOffsets;
+        this.indexOffsets = indexOffsets;
+        this.positions = positions;
+        this.uvs = uvs;
+        this.normals = normals;
+        this.indices = indices;
+    }
+
+    /**
+     * Deduplicates and indexes all polygons of the specified bones. Bones are assigned indices in the order they are iterated.
+     * Polygons with more than three vertices are split into a triangle fan.
+     *
+     * @param bones The bones to index
+     * @return The new indexed geometry
+     */
+    public static IndexedGeometry index(Collection<AnimatedBone> bones) {
+        String[] boneNames = new String[bones.size()];
+        List<List<Polygon>> polygons = new ArrayList<>(bones.size());
+        for (AnimatedBone bone : bones) {
+            boneNames[polygons.size()] = bone.getBone().name();
+            polygons.add(bone.getPolygons());
+        }
+        return index(boneNames, polygons);
+    }
+
+    /**
+     * Deduplicates and indexes all polygons of the specified compiled geometry. Bones keep the same indices as in the compiled geometry.
+     * Polygons with more than three vertices are split into a triangle fan.
+     *
+     * @param geometry The geometry to index
+     * @return The new indexed geometry
+     */
+    public static IndexedGeometry index(CompiledGeometry geometry) {
+        String[] boneNames = new String[geometry.getBoneCount()];
+        List<List<Polygon>> polygons = new ArrayList<>(boneNames.length);
+        for (int i = 0; i < boneNames.length; i++) {
+            boneNames[i] = geometry.getBone(i).name();
+            polygons.add(geometry.getPolygons(i));
+        }
+        return index(boneNames, polygons);
+    }
+
+    private static IndexedGeometry index(String[] boneNames, List<List<Polygon>> bones) {
+        IntArrayList spanBones = new IntArrayList();
+        List<String> spanMaterials = new ArrayList<>();
+        IntArrayList vertexOffsets = new IntArrayList();
+        IntArrayList indexOffsets = new IntArrayList();
+        FloatArrayList positions = new FloatArrayList();
+        FloatArrayList uvs = new FloatArrayList();
+        FloatArrayList normals = new FloatArrayList();
+        IntArrayList indices = new IntArrayList();
+
+        Map<String, List<Polygon>> materials = new LinkedHashMap<>();
+        Object2IntMap<VertexKey> vertices = new Object2IntOpenHashMap<>();
+        vertices.defaultReturnValue(-1);
+
+        int vertexCount = 0;
+        for (int boneIndex = 0; boneIndex < bones.size(); boneIndex++) {
+            materials.clear();
+            for (Polygon polygon : bones.get(boneIndex)) {
+                materials.computeIfAbsent(polygon.material(), unused -> new ArrayList<>()).add(polygon);
+            }
+
+            for (Map.Entry<String, List<Polygon>> entry : materials.entrySet()) {
+                spanBones.add(boneIndex);
+                spanMaterials.add(entry.getKey());
+                vertexOffsets.add(vertexCount);
+                indexOffsets.add(indices.size());
+
+                vertices.clear();
+                for (Polygon polygon : entry.getValue()) {
+                    Vertex[] polygonVertices = polygon.vertices();
+                    Vector3fc[] polygonNormals = polygon.normals();
+                    int[] polygonIndices = new int[polygonVertices.length];
+                    for (int i = 0; i < polygonVertices.length; i++) {
+                        Vertex vertex = polygonVertices[i];
+                        Vector3fc normal = polygonNormals[i];
+                        VertexKey key = new VertexKey(vertex, normal.x(), normal.y(), normal.z());
+                        int index = vertices.getInt(key);
+                        if (index == -1) {
+                            index = vertexCount++;
+                            vertices.put(key, index);
+                            positions.add(vertex.x());
+                            positions.add(vertex.y());
+                            positions.add(vertex.z());
+                            uvs.add(vertex.u());
+                            uvs.add(vertex.v());
+                            normals.add(normal.x());
+                            normals.add(normal.y());
+                            normals.add(normal.z());
+                        }
+                        polygonIndices[i] = index;
+                    }
+
+                    for (int i = 1; i < polygonIndices.length - 1; i++) {
+                        indices.add(polygonIndices[0]);
+                        indices.add(polygonIndices[i]);
+                        indices.add(polygonIndices[i + 1]);
+                    }
+                }
+            }
+        }
+        vertexOffsets.add(vertexCount);
+        indexOffsets.add(indices.size());
+
+        return new IndexedGeometry(boneNames, spanBones.toIntArray(), spanMaterials.toArray(new String[0]), vertexOffsets.toIntArray(), indexOffsets.toIntArray(), positions.toFloatArray(), uvs.toFloatArray(), normals.toFloatArray(), indices.toIntArray());
+    }
+
+    /**
+     * @return The number of bones in this geometry
+     */
+    public int getBoneCount() {
+        return this.bones.length;
+    }
+
+    /**
+     * @param bone The index of the bone
+     * @return The name of the bone at that index
+     */
+    public String getBoneName(int bone) {
+        return this.bones[bone];
+    }
+
+    /**
+     * @return The number of bone and material spans
+     */
+    public int getSpanCount() {
+        return this.spanBones.length;
+    }
+
+    /**
+     * @param span The index of the span
+     * @return The index of the bone that span belongs to
+     */
+    public int getSpanBone(int span) {
+        return this.spanBones[span];
+    }
+
+    /**
+     * @param span The index of the span
+     * @return The material that span should use or <code>null</code> for the default
+     */
+    public @Nullable String getSpanMaterial(int span) {
+        return this.spanMaterials[span];
+    }
+
+    /**
+     * @param span The index of the span
+     * @return The index of the first vertex in that span
+     */
+    public int getFirstVertex(int span) {
+        return this.vertexOffsets[span];
+    }
+
+    /**
+     * @param span The index of the span
+     * @return The number of vertices in that span
+     */
+    public int getVertexCount(int span) {
+        return this.vertexOffsets[span + 1] - this.vertexOffsets[span];
+    }
+
+    /**
+     * @return The number of vertices in all spans
+     */
+    public int getVertexCount() {
+        return this.vertexOffsets[this.spanBones.length];
+    }
+
+    /**
+     * @param span The index of the span
+     * @return The index of the first index in that span
+     */
+    public int getFirstIndex(int span) {
+        return this.indexOffsets[span];
+    }
+
+    /**
+     * @param span The index of the span
+     * @return The number of indices in that span
+     */
+    public int getIndexCount(int span) {
+        return this.indexOffsets[span + 1] - this.indexOffsets[span];
+    }
+
+    /**
+     * @return The number of indices in all spans
+     */
+    public int getIndexCount() {
+        return this.indices.length;
+    }
+
+    /**
+     * @return The x, y, and z position of each vertex
+     */
+    public float[] getPositions() {
+        return this.positions;
+    }
+
+    /**
+     * @return The u and v texture coordinate of each vertex
+     */
+    public float[] getUVs() {
+        return this.uvs;
+    }
+
+    /**
+     * @return The x, y, and z normal of each vertex
+     */
+    public float[] getNormals() {
+        return this.normals;
+    }
+
+    /**
+     * @return The vertex indices of each triangle
+     */
+    public int[] getIndices() {
+        return this.indices;
+    }
+
+    /**
+     * @return Whether all indices fit into unsigned shorts
+     */
+    public boolean hasShortIndices() {
+        return this.getVertexCount() <= MAX_SHORT_VERTICES;
+    }
+
+    /**
+     * Writes all indices into the specified buffer as unsigned shorts.
+     *
+     * @param buffer The buffer to write into
+     * @throws IllegalStateException If there are too many vertices to use short indices
+     * @see #hasShortIndices()
+     */
+    public void writeIndices(ShortBuffer buffer) {
+        if (!this.hasShortIndices()) {
+            throw new IllegalStateException("Too many vertices for short indices: " + this.getVertexCount());
+        }
+        for (int index : this.indices) {
+            buffer.put((short) index);
+        }
+    }
+
+    /**
+     * Writes all indices into the specified buffer.
+     *
+     * @param buffer The buffer to write into
+     */
+    public void writeIndices(IntBuffer buffer) {
+        buffer.put(this.indices);
+    }
+
+    /**
+     * <p>Writes every vertex into the specified buffer without any transformation for skinning on the GPU.</p>
+     * <p>Use {@link VertexLayout.Attribute#BONE_INDEX} to store the bone of each vertex and
+     * {@link GeometryTree#writeBonePalette(FloatBuffer, Matrix4f[], boolean)} to upload the bone transformations each frame.</p>
+     *
+     * @param buffer The buffer to write into starting at the current position. The position is moved to the end of the written vertices
+     * @param layout The layout of each vertex. Attributes not in the layout are skipped
+     * @throws IllegalArgumentException If the buffer does not have enough space for all vertices
+     */
+    public void writeVertices(ByteBuffer buffer, VertexLayout layout) {
+        VertexWriter.write(this, buffer, layout);
+    }
+
+    @Override
+    public String toString() {
+        return "IndexedGeometry{" +
+                "bones=" + this.bones.length +
+                ", spans=" + this.spanBones.length +
+                ", vertices=" + this.getVertexCount() +
+                ", indices=" + this.indices.length +
+                '}';
+    }
+
+    private record VertexKey(Vertex vertex, float normalX, float normalY, float normalZ) {
+    }
+}
@@ -0,0 +1,381 @@
+package gg.moonflower.pinwheel.api.geometry;
+
+import org.jetbrains.annotations.Nullable;
+import org.joml.Vector3f;
+
+/**
+ * <p>A compact encoding of {@link IndexedGeometry} for keeping many meshes in memory.</p>
+ * <p>Positions are stored as 16-bit fixed point values relative to the bounds of their bone, texture coordinates as 16-bit fixed point
+ * values relative to the bounds of all texture coordinates, and normals as octahedral-encoded 16-bit pairs packed into a single int.
+ * Each vertex uses 14 bytes instead of 32.</p>
+ * <p>The largest position error is half of the bone extent divided by <code>65535</code> on each axis,
+ * the largest texture coordinate error is half of the texture coordinate extent divided by <code>65535</code>,
+ * and the largest normal error is below <code>0.0001</code> radians.</p>
+ * <p>The arrays returned by this class are not copied and must not be modified.</p>
+ *
+ * @author Ocelot
+ * @see #quantize(IndexedGeometry)
+ * @since 1.4.0
+ */
+public final class QuantizedGeometry {
+
+    private static final int MAX_VALUE = 0xFFFF;
+
+    private final String[] bones;
+    private final int[] spanBones;
+    private final String[] spanMaterials;
+    private final int[] vertexOffsets;
+    private final int[] indexOffsets;
+    private final float[] boneBounds;
+    private final float[] uvBounds;
+    private final short[] positions;
+    private final short[] uvs;
+    private final int[] normals;
+    private final int[] indices;
+
+    private QuantizedGeometry(String[] bones, int[] spanBones, String[] spanMaterials, int[] vertexOffsets, int[] indexOffsets, float[] boneBounds, float[] uvBounds, short[] positions, short[] uvs, int[] normals, int[] indices) {
+        this.bones = bones;
+        this.spanBones = spanBones;
+        this.spanMaterials = spanMaterials;
+        this.vertexOffsets = vertexOffsets;
+        this.indexOffsets = indexOffsets;
+        this.boneBounds = boneBounds;
+        this.uvBounds = uvBounds;
+        this.positions = positions;
+        this.uvs = uvs;
+        this.normals = normals;
+        this.indices = indices;
+    }
+
+    /**
+     * Quantizes all vertices of the specified geometry. Spans, materials, and indices are kept exactly.
+     *
+     * @param geometry The geometry to quantize
+     * @return The new quantized geometry
+     */
+    public static QuantizedGeometry quantize(IndexedGeometry geometry) {
+        int boneCount = geometry.getBoneCount();
+        int spanCount = geometry.getSpanCount();
+        int vertexCount = geometry.getVertexCount();
+        float[] sourcePositions = geometry.getPositions();
+        float[] sourceUVs = geometry.getUVs();
+        float[] sourceNormals = geometry.getNormals();
+
+        String[] bones = new String[boneCount];
+        for (int i = 0; i < boneCount; i++) {
+            bones[i] = geometry.getBoneName(i);
+        }
+
+        int[] spanBones = new int[spanCount];
+        String[] spanMaterials = new String[spanCount];
+        int[] vertexOffsets = new int[spanCount + 1];
+        int[] indexOffsets = new int[spanCount + 1];
+        for (int span = 0; span < spanCount; span++) {
+            spanBones[span] = geometry.getSpanBone(span);
+            spanMaterials[span] = geometry.getSpanMaterial(span);
+            vertexOffsets[span] = geometry.getFirstVertex(span);
+            indexOffsets[span] = geometry.getFirstIndex(span);
+        }
+        vertexOffsets[spanCount] = vertexCount;
+        indexOffsets[spanCount] = geometry.getIndexCount();
+
+        // Bones without vertices keep empty bounds
+        float[] boneBounds = new float[boneCount * 6];
+        boolean[] initialized = new boolean[boneCount];
+        for (int span = 0; span < spanCount; span++) {
+            int bone = spanBones[span];
+            int offset = bone * 6;
+            for (int vertex = vertexOffsets[span]; vertex < vertexOffsets[span + 1]; vertex++) {
+                for (int axis = 0; axis < 3; axis++) {
+                    float value = sourcePositions[vertex * 3 + axis];
+                    boneBounds[offset + axis] = initialized[bone] ? Math.min(boneBounds[offset + axis], value) : value;
+                    boneBounds[offset + 3 + axis] = initialized[bone] ? Math.max(boneBounds[offset + 3 + axis], value) : value;
+                }
+                initialized[bone] = true;
+            }
+        }
+
+        float[] uvBounds = new float[4];
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            for (int axis = 0; axis < 2; axis++) {
+                float value = sourceUVs[vertex * 2 + axis];
+                uvBounds[axis] = vertex == 0 ? value : Math.min(uvBounds[axis], value);
+                uvBounds[2 + axis] = vertex == 0 ? value : Math.max(uvBounds[2 + axis], value);
+            }
+        }
+
+        short[] positions = new short[vertexCount * 3];
+        short[] uvs = new short[vertexCount * 2];
+        int[] normals = new int[vertexCount];
+        for (int span = 0; span < spanCount; span++) {
+            int offset = spanBones[span] * 6;
+            for (int vertex = vertexOffsets[span]; vertex < vertexOffsets[span + 1]; vertex++) {
+                for (int axis = 0; axis < 3; axis++) {
+                    positions[vertex * 3 + axis] = encodeUnorm16(sourcePositions[vertex * 3 + axis], boneBounds[offset + axis], boneBounds[offset + 3 + axis]);
+                }
+                uvs[vertex * 2] = encodeUnorm16(sourceUVs[vertex * 2], uvBounds[0], uvBounds[2]);
+                uvs[vertex * 2 + 1] = encodeUnorm16(sourceUVs[vertex * 2 + 1], uvBounds[1], uvBounds[3]);
+                normals[vertex] = encodeNormal(sourceNormals[vertex * 3], sourceNormals[vertex * 3 + 1], sourceNormals[vertex * 3 + 2]);
+            }
+        }
+
+        return new QuantizedGeometry(bones, spanBones, spanMaterials, vertexOffsets, indexOffsets, boneBounds, uvBounds, positions, uvs, normals, geometry.getIndices());
+    }
+
+    /**
+     * Maps a value between two bounds onto the full range of an unsigned short.
+     *
+     * @param value The value to encode
+     * @param min   The smallest value that can be encoded
+     * @param max   The largest value that can be encoded
+     * @return The bits of the unsigned short
+     */
+    public static short encodeUnorm16(float value, float min, float max) {
+        if (max <= min) {
+            return 0;
+        }
+        float normalized = (value - min) / (max - min);
+        return (short) Math.round(Math.max(0.0F, Math.min(1.0F, normalized)) * MAX_VALUE);
+    }
+
+    /**
+     * Converts an unsigned short created with {@link #encodeUnorm16(float, float, float)} back to a value between two bounds.
+     *
+     * @param value The bits of the unsigned short
+     * @param min   The smallest value that can be encoded
+     * @param max   The largest value that can be encoded
+     * @return The decoded value
+     */
+    public static float decodeUnorm16(short value, float min, float max) {
+        return min + (value & MAX_VALUE) / (float) MAX_VALUE * (max - min);
+    }
+
+    /**
+     * Encodes a unit vector into two 16-bit values using an octahedral projection.
+     *
+     * @param x The x component of the normal
+     * @param y The y component of the normal
+     * @param z The z component of the normal
+     * @return The x component in the upper 16 bits and the y component in the lower 16 bits
+     */
+    public static int encodeNormal(float x, float y, float z) {
+        float length = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        if (length == 0) {
+            z = 1.0F;
+            length = 1.0F;
+        }
+        float u = x / length;
+        float v = y / length;
+        if (z < 0) {
+            float foldedU = (1.0F - Math.abs(v)) * (u >= 0 ? 1.0F : -1.0F);
+            float foldedV = (1.0F - Math.abs(u)) * (v >= 0 ? 1.0F : -1.0F);
+            u = foldedU;
+            v = foldedV;
+        }
+        int encodedU = Math.round((u * 0.5F + 0.5F) * MAX_VALUE);
+        int encodedV = Math.round((v * 0.5F + 0.5F) * MAX_VALUE);
+        return encodedU << 16 | encodedV;
+    }
+
+    /**
+     * Decodes a unit vector created with {@link #encodeNormal(float, float, float)}.
+     *
+     * @param normal The encoded normal
+     * @param dest   The vector to store the normal into
+     * @return The dest vector
+     */
+    public static Vector3f decodeNormal(int normal, Vector3f dest) {
+        float x = (normal >>> 16) / (float) MAX_VALUE * 2.0F - 1.0F;
+        float y = (normal & MAX_VALUE) / (float) MAX_VALUE * 2.0F - 1.0F;
+        float z = 1.0F - Math.abs(x) - Math.abs(y);
+        float t = Math.max(-z, 0.0F);
+        x += x >= 0 ? -t : t;
+        y += y >= 0 ? -t : t;
+        return dest.set(x, y, z).normalize();
+    }
+
+    /**
+     * @return The number of bones in this geometry
+     */
+    public int getBoneCount() {
+        return this.bones.length;
+    }
+
+    /**
+     * @param bone The index of the bone
+     * @return The name of the bone at that index
+     */
+    public String getBoneName(int bone) {
+        return this.bones[bone];
+    }
+
+    /**
+     * @return The number of bone and material spans
+     */
+    public int getSpanCount() {
+        return this.spanBones.length;
+    }
+
+    /**
+     * @param span The index of the span
+     * @return The index of the bone that span belongs to
+     */
+    public int getSpanBone(int span) {
+        return this.spanBones[span];
+    }
+
+    /**
+     * @param span The index of the span
+     * @return The material that span should use or <code>null</code> for the default
+     */
+    public @Nullable String getSpanMaterial(int span) {
+        return this.spanMaterials[span];
+    }
+
+    /**
+     * @param span The index of the span
+     * @return The index of the first vertex in that span
+     */
+    public int getFirstVertex(int span) {
+        return this.vertexOffsets[span];
+    }
+
+    /**
+     * @param span The index of the span
+     * @return The number of vertices in that span
+     */
+    public int getVertexCount(int span) {
+        return this.vertexOffsets[span + 1] - this.vertexOffsets[span];
+    }
+
+    /**
+     * @return The number of vertices in all spans
+     */
+    public int getVertexCount() {
+        return this.normals.length;
+    }
+
+    /**
+     * @return The minimum x, y, z followed by the maximum x, y, z of the vertices of each bone
+     */
+    public float[] getBoneBounds() {
+        return this.boneBounds;
+    }
+
+    /**
+     * @return The minimum u, v followed by the maximum u, v of all texture coordinates
+     */
+    public float[] getUVBounds() {
+        return this.uvBounds;
+    }
+
+    /**
+     * @return The quantized x, y, and z position of each vertex relative to the bounds of its bone
+     */
+    public short[] getPositions() {
+        return this.positions;
+    }
+
+    /**
+     * @return The quantized u and v texture coordinate of each vertex relative to the texture coordinate bounds
+     */
+    public short[] getUVs() {
+        return this.uvs;
+    }
+
+    /**
+     * @return The octahedral-encoded normal of each vertex
+     * @see #decodeNormal(int, Vector3f)
+     */
+    public int[] getNormals() {
+        return this.normals;
+    }
+
+    /**
+     * @return The vertex indices of each triangle
+     */
+    public int[] getIndices() {
+        return this.indices;
+    }
+
+    /**
+     * Decodes the position of a vertex in the specified span.
+     *
+     * @param span   The span the vertex is in
+     * @param vertex The index of the vertex
+     * @param dest   The vector to store the position into
+     * @return The dest vector
+     */
+    public Vector3f getPosition(int span, int vertex, Vector3f dest) {
+        int offset = this.spanBones[span] * 6;
+        return dest.set(
+                decodeUnorm16(this.positions[vertex * 3], this.boneBounds[offset], this.boneBounds[offset + 3]),
+                decodeUnorm16(this.positions[vertex * 3 + 1], this.boneBounds[offset + 1], this.boneBounds[offset + 4]),
+                decodeUnorm16(this.positions[vertex * 3 + 2], this.boneBounds[offset + 2], this.boneBounds[offset + 5]));
+    }
+
+    /**
+     * @param vertex The index of the vertex
+     * @return The decoded u texture coordinate of that vertex
+     */
+    public float getU(int vertex) {
+        return decodeUnorm16(this.uvs[vertex * 2], this.uvBounds[0], this.uvBounds[2]);
+    }
+
+    /**
+     * @param vertex The index of the vertex
+     * @return The decoded v texture coordinate of that vertex
+     */
+    public float getV(int vertex) {
+        return decodeUnorm16(this.uvs[vertex * 2 + 1], this.uvBounds[1], this.uvBounds[3]);
+    }
+
+    /**
+     * Decodes the normal of a vertex.
+     *
+     * @param vertex The index of the vertex
+     * @param dest   The vector to store the normal into
+     * @return The dest vector
+     */
+    public Vector3f getNormal(int vertex, Vector3f dest) {
+        return decodeNormal(this.normals[vertex], dest);
+    }
+
+    /**
+     * Decodes all vertices back into full precision geometry.
+     *
+     * @return New indexed geometry with the decoded vertices
+     */
+    public IndexedGeometry decode() {
+        int vertexCount = this.getVertexCount();
+        float[] positions = new float[vertexCount * 3];
+        float[] uvs = new float[vertexCount * 2];
+        float[] normals = new float[vertexCount * 3];
+        Vector3f vector = new Vector3f();
+        for (int span = 0; span < this.spanBones.length; span++) {
+            for (int vertex = this.vertexOffsets[span]; vertex < this.vertexOffsets[span + 1]; vertex++) {
+                this.getPosition(span, vertex, vector);
+                positions[vertex * 3] = vector.x;
+                positions[vertex * 3 + 1] = vector.y;
+                positions[vertex * 3 + 2] = vector.z;
+                uvs[vertex * 2] = this.getU(vertex);
+                uvs[vertex * 2 + 1] = this.getV(vertex);
+                this.getNormal(vertex, vector);
+                normals[vertex * 3] = vector.x;
+                normals[vertex * 3 + 1] = vector.y;
+                normals[vertex * 3 + 2] = vector.z;
+            }
+        }
+        return new IndexedGeometry(this.bones, this.spanBones, this.spanMaterials, this.vertexOffsets, this.indexOffsets, positions, uvs, normals, this.indices);
+    }
+
+    @Override
+    public String toString() {
+        return "QuantizedGeometry{" +
+                "bones=" + this.bones.length +
+                ", spans=" + this.spanBones.length +
+                ", vertices=" + this.getVertexCount() +
+                ", indices=" + this.indices.length +
+                '}';
+    }
+}
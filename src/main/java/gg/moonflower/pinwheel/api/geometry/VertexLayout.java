@@ -0,0 +1,239 @@
+package gg.moonflower.pinwheel.api.geometry;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>Describes how vertex attributes are packed into an interleaved vertex buffer.</p>
+ * <p>Elements are written in the order they are added with no implicit alignment. Use {@link Builder#pad(int)} to align elements.</p>
+ *
+ * @author Ocelot
+ * @see Builder
+ * @since 1.4.0
+ */
+public final class VertexLayout {
+
+    private final List<Element> elements;
+    private final Element[] attributes;
+    private final int stride;
+
+    private VertexLayout(List<Element> elements, int stride) {
+        this.elements = Collections.unmodifiableList(elements);
+        this.attributes = new Element[Attribute.values().length];
+        for (Element element : elements) {
+            this.attributes[element.attribute().ordinal()] = element;
+        }
+        this.stride = stride;
+    }
+
+    /**
+     * @return A new builder for vertex layouts
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return All elements in the order they appear in each vertex
+     */
+    public List<Element> getElements() {
+        return this.elements;
+    }
+
+    /**
+     * @param attribute The attribute to get the element for
+     * @return The element storing that attribute or <code>null</code> if the attribute is not part of this layout
+     */
+    public @Nullable Element getElement(Attribute attribute) {
+        return this.attributes[attribute.ordinal()];
+    }
+
+    /**
+     * @return The number of bytes in each vertex
+     */
+    public int getStride() {
+        return this.stride;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        VertexLayout that = (VertexLayout) o;
+        return this.stride == that.stride && this.elements.equals(that.elements);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.elements.hashCode() + this.stride;
+    }
+
+    @Override
+    public String toString() {
+        return "VertexLayout{" +
+                "elements=" + this.elements +
+                ", stride=" + this.stride +
+                '}';
+    }
+
+    /**
+     * A value stored for each vertex.
+     *
+     * @author Ocelot
+     * @since 1.4.0
+     */
+    public enum Attribute {
+        POSITION(3),
+        UV(2),
+        NORMAL(3),
+        /**
+         * The index of the bone the vertex belongs to. This is usually stored with {@link Format#UNSIGNED_BYTE} or {@link Format#UNSIGNED_SHORT}.
+         * Writing vertices fails if a bone index does not fit in the format, so models with more than 256 bones need {@link Format#UNSIGNED_SHORT}.
+         */
+        BONE_INDEX(1);
+
+        private final int components;
+
+        Attribute(int components) {
+            this.components = components;
+        }
+
+        /**
+         * @return The number of components in this attribute
+         */
+        public int getComponents() {
+            return this.components;
+        }
+    }
+
+    /**
+     * The binary format of each component of an attribute.
+     *
+     * @author Ocelot
+     * @since 1.4.0
+     */
+    public enum Format {
+        /**
+         * A 32-bit IEEE 754 float.
+         */
+        FLOAT(4),
+        /**
+         * A 16-bit IEEE 754 half precision float.
+         */
+        HALF(2),
+        /**
+         * A signed short mapping <code>-1</code> to <code>1</code> onto the full range.
+         */
+        NORMALIZED_SHORT(2),
+        /**
+         * A signed byte mapping <code>-1</code> to <code>1</code> onto the full range.
+         */
+        NORMALIZED_BYTE(1),
+        /**
+         * An unsigned short storing the value rounded to the nearest integer.
+         */
+        UNSIGNED_SHORT(2),
+        /**
+         * An unsigned byte storing the value rounded to the nearest integer.
+         */
+        UNSIGNED_BYTE(1);
+
+        private final int bytes;
+
+        Format(int bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * @return The number of bytes used for each component
+         */
+        public int getBytes() {
+            return this.bytes;
+        }
+    }
+
+    /**
+     * A single attribute in a vertex.
+     *
+     * @param attribute The attribute stored
+     * @param format    The format each component is stored in
+     * @param offset    The offset in bytes from the start of the vertex
+     * @author Ocelot
+     * @since 1.4.0
+     */
+    public record Element(Attribute attribute, Format format, int offset) {
+
+        /**
+         * @return The number of bytes used by this element
+         */
+        public int getSize() {
+            return this.attribute.getComponents() * this.format.getBytes();
+        }
+    }
+
+    /**
+     * Constructs new vertex layouts.
+     *
+     * @author Ocelot
+     * @since 1.4.0
+     */
+    public static class Builder {
+
+        private final List<Element> elements;
+        private int stride;
+
+        private Builder() {
+            this.elements = new ArrayList<>();
+            this.stride = 0;
+        }
+
+        /**
+         * Adds the specified attribute after all previous elements.
+         *
+         * @param attribute The attribute to add
+         * @param format    The format to store each component in
+         * @return This builder
+         * @throws IllegalArgumentException If the attribute was already added
+         */
+        public Builder add(Attribute attribute, Format format) {
+            for (Element element : this.elements) {
+                if (element.attribute() == attribute) {
+                    throw new IllegalArgumentException("Duplicate attribute: " + attribute);
+                }
+            }
+            Element element = new Element(attribute, format, this.stride);
+            this.elements.add(element);
+            this.stride += element.getSize();
+            return this;
+        }
+
+        /**
+         * Adds unused bytes after all previous elements.
+         *
+         * @param bytes The number of bytes to skip
+         * @return This builder
+         * @throws IllegalArgumentException If the number of bytes is negative
+         */
+        public Builder pad(int bytes) {
+            if (bytes < 0) {
+                throw new IllegalArgumentException("Padding must not be negative");
+            }
+            this.stride += bytes;
+            return this;
+        }
+
+        /**
+         * @return A new vertex layout with all the elements defined
+         */
+        public VertexLayout build() {
+            return new VertexLayout(new ArrayList<>(this.elements), this.stride);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import gg.moonflower.pinwheel.api.geometry.GeometryModelData;
 import gg.moonflower.pinwheel.api.geometry.LocatorAccess;
 import gg.moonflower.pinwheel.api.transform.MatrixStack;
 import gg.moonflower.pinwheel.impl.geometry.bone.AnimatedBoneImpl;
+import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
 import java.util.*;
@@ -23,6 +24,20 @@ public interface AnimatedBone extends ModelBone {
      */
     void resetTransform();
 
+    /**
+     * Applies the transformation this bone renders its polygons and children with to the specified matrix.
+     * Unlike {@link #translateAndRotate(MatrixStack)}, this does not compute a normal matrix.
+     *
+     * @param matrix The matrix to transform
+     * @since 1.4.0
+     */
+    default void transform(Matrix4f matrix) {
+        MatrixStack matrixStack = MatrixStack.create();
+        matrixStack.position().set(matrix);
+        this.translateAndRotate(matrixStack);
+        matrix.set(matrixStack.position());
+    }
+
     /**
      * @return The bone definition this bone references while rendering
      */
@@ -38,6 +53,14 @@ public interface AnimatedBone extends ModelBone {
      */
     Collection<AnimatedBone> getChildren();
 
+    /**
+     * @return An unmodifiable view of the polygons in this bone
+     * @since 1.4.0
+     */
+    default List<Polygon> getPolygons() {
+        return List.of();
+    }
+
     /**
      * @return All locators in this bone
      */
@@ -127,7 +150,7 @@ public interface AnimatedBone extends ModelBone {
          * @return Whether this pose is set to the identity transform
          */
         public boolean isIdentity() {
-            return this.position.lengthSquared() == 0 && this.rotation.lengthSquared() == 0 && this.scale.lengthSquared() == 1;
+            return this.position.lengthSquared() == 0 && this.rotation.lengthSquared() == 0 && this.scale.x() == 1 && this.scale.y() == 1 && this.scale.z() == 1;
         }
 
         /**
@@ -0,0 +1,65 @@
+package gg.moonflower.pinwheel.api.geometry.bone;
+
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+import java.util.List;
+
+/**
+ * The bounding volumes of all polygons in a bone before the bone is transformed.
+ *
+ * @param min    The minimum corner of the axis-aligned bounding box
+ * @param max    The maximum corner of the axis-aligned bounding box
+ * @param center The center of the bounding sphere
+ * @param radius The radius of the bounding sphere
+ * @author Ocelot
+ * @since 1.4.0
+ */
+public record BoneBounds(Vector3fc min, Vector3fc max, Vector3fc center, float radius) {
+
+    /**
+     * Creates bounds for bones without any polygons. A new instance is returned every time, so the vectors are never shared.
+     *
+     * @return New empty bounds
+     */
+    public static BoneBounds empty() {
+        return new BoneBounds(new Vector3f(Float.POSITIVE_INFINITY), new Vector3f(Float.NEGATIVE_INFINITY), new Vector3f(), -1.0F);
+    }
+
+    /**
+     * Computes the bounds of the specified polygons. The sphere is centered on the box and just large enough to contain every vertex.
+     *
+     * @param polygons The polygons to compute the bounds of
+     * @return The bounds of the polygons or {@link #empty()} bounds if there are no polygons
+     */
+    public static BoneBounds of(List<Polygon> polygons) {
+        if (polygons.isEmpty()) {
+            return empty();
+        }
+
+        Vector3f min = new Vector3f(Float.POSITIVE_INFINITY);
+        Vector3f max = new Vector3f(Float.NEGATIVE_INFINITY);
+        for (Polygon polygon : polygons) {
+            for (Vertex vertex : polygon.vertices()) {
+                min.set(Math.min(min.x, vertex.x()), Math.min(min.y, vertex.y()), Math.min(min.z, vertex.z()));
+                max.set(Math.max(max.x, vertex.x()), Math.max(max.y, vertex.y()), Math.max(max.z, vertex.z()));
+            }
+        }
+
+        Vector3f center = new Vector3f(min).add(max).mul(0.5F);
+        float radiusSq = 0;
+        for (Polygon polygon : polygons) {
+            for (Vertex vertex : polygon.vertices()) {
+                radiusSq = Math.max(radiusSq, center.distanceSquared(vertex.x(), vertex.y(), vertex.z()));
+            }
+        }
+        return new BoneBounds(min, max, center, (float) Math.sqrt(radiusSq));
+    }
+
+    /**
+     * @return Whether these bounds contain no polygons
+     */
+    public boolean isEmpty() {
+        return this.radius < 0;
+    }
+}
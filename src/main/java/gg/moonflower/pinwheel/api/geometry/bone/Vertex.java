@@ -1,7 +1,7 @@
 package gg.moonflower.pinwheel.api.geometry.bone;
 
+import org.joml.Math;
 import org.joml.Matrix4fc;
-import org.joml.Vector4f;
 
 /**
  * A single vertex in a definition of geometry.
@@ -16,8 +16,6 @@ import org.joml.Vector4f;
  */
 public record Vertex(float x, float y, float z, float u, float v) {
 
-    private static final Vector4f TRANSFORM_VECTOR = new Vector4f();
-
     /**
      * Creates a new vertex and transforms the position by the specified matrix.
      *
@@ -30,8 +28,9 @@ public record Vertex(float x, float y, float z, float u, float v) {
      * @return A new transformed vertex
      */
     public static Vertex create(Matrix4fc transform, float x, float y, float z, float u, float v) {
-        TRANSFORM_VECTOR.set(x, y, z, 1.0F);
-        TRANSFORM_VECTOR.mul(transform);
-        return new Vertex(TRANSFORM_VECTOR.x(), TRANSFORM_VECTOR.y(), TRANSFORM_VECTOR.z(), u, v);
+        float tx = Math.fma(transform.m00(), x, Math.fma(transform.m10(), y, Math.fma(transform.m20(), z, transform.m30())));
+        float ty = Math.fma(transform.m01(), x, Math.fma(transform.m11(), y, Math.fma(transform.m21(), z, transform.m31())));
+        float tz = Math.fma(transform.m02(), x, Math.fma(transform.m12(), y, Math.fma(transform.m22(), z, transform.m32())));
+        return new Vertex(tx, ty, tz, u, v);
     }
 }
@@ -0,0 +1,59 @@
+package gg.moonflower.pinwheel.impl;
+
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.regex.Pattern;
+
+/**
+ * <p>Detects MoLang expressions that are a single number.</p>
+ * <p>The compiler does not expose whether an expression is constant, so an expression is treated as constant when it prints as a plain number
+ * and evaluates to that number. This is the case for {@link MolangExpression#of(float)} and compiled number literals.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class MolangConstants {
+
+    private static final Pattern NUMBER = Pattern.compile("-?\\d+(\\.\\d+)?");
+
+    private MolangConstants() {
+    }
+
+    /**
+     * @param text The text to check
+     * @return Whether the text is a plain decimal number
+     */
+    public static boolean isNumber(@Nullable String text) {
+        return text != null && NUMBER.matcher(text).matches();
+    }
+
+    /**
+     * Retrieves the value of an expression that is a single number.
+     *
+     * @param expression The expression to check
+     * @return The value of the expression or {@link Float#NaN} if it is not a constant number
+     */
+    public static float getConstant(MolangExpression expression) {
+        return getConstant(MolangRuntime.runtime().create(), expression);
+    }
+
+    /**
+     * Retrieves the value of an expression that is a single number.
+     *
+     * @param environment The environment to evaluate the expression in
+     * @param expression  The expression to check
+     * @return The value of the expression or {@link Float#NaN} if it is not a constant number
+     */
+    public static float getConstant(MolangEnvironment environment, MolangExpression expression) {
+        String text = expression.toString();
+        if (!isNumber(text)) {
+            return Float.NaN;
+        }
+        float value = Float.parseFloat(text);
+        return Float.compare(environment.safeResolve(expression), value) == 0 ? value : Float.NaN;
+    }
+}
@@ -0,0 +1,27 @@
+package gg.moonflower.pinwheel.impl.animation;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonSyntaxException;
+import gg.moonflower.pinwheel.api.animation.AnimationControllerData;
+import gg.moonflower.pinwheel.impl.PinwheelGsonHelper;
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public class AnimationControllerParserImpl {
+
+    private static final Gson GSON = new GsonBuilder().registerTypeAdapter(AnimationControllerData[].class, new AnimationControllerData.Deserializer()).create();
+    private static final String VERSION = "1.10.0";
+
+    public static AnimationControllerData[] parse(JsonElement json) throws JsonSyntaxException {
+        String formatVersion = PinwheelGsonHelper.getAsString(json.getAsJsonObject(), "format_version");
+        if (!formatVersion.equals(VERSION)) {
+            throw new JsonSyntaxException("Unsupported animation controller version: " + formatVersion);
+        }
+        return GSON.fromJson(PinwheelGsonHelper.getAsJsonObject(json.getAsJsonObject(), "animation_controllers"), AnimationControllerData[].class);
+    }
+}
@@ -0,0 +1,141 @@
+package gg.moonflower.pinwheel.impl.animation;
+
+import gg.moonflower.pinwheel.api.animation.AnimationData;
+import gg.moonflower.pinwheel.api.animation.AnimationEffectDispatcher;
+import gg.moonflower.pinwheel.api.animation.AnimationEffectListener;
+import gg.moonflower.pinwheel.api.animation.PlayingAnimation;
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public class AnimationEffectDispatcherImpl implements AnimationEffectDispatcher {
+
+    private static final int SOUND_CHANNEL = 0;
+    private static final int PARTICLE_CHANNEL = 1;
+    private static final int TIMELINE_CHANNEL = 2;
+    private static final int CHANNELS = 3;
+
+    private final PlayingAnimation animation;
+    private final AnimationEffectListener listener;
+    private final int[] cursors;
+    private float time;
+
+    public AnimationEffectDispatcherImpl(PlayingAnimation animation, AnimationEffectListener listener) {
+        this.animation = animation;
+        this.listener = listener;
+        this.cursors = new int[CHANNELS];
+        this.seek(animation.getAnimationTime());
+    }
+
+    private static int getCount(AnimationData data, int channel) {
+        return switch (channel) {
+            case SOUND_CHANNEL -> data.soundEffects().length;
+            case PARTICLE_CHANNEL -> data.particleEffects().length;
+            case TIMELINE_CHANNEL -> data.timelineEffects().length;
+            default -> throw new IllegalArgumentException("Invalid channel: " + channel);
+        };
+    }
+
+    private static float getTime(AnimationData data, int channel, int index) {
+        return switch (channel) {
+            case SOUND_CHANNEL -> data.soundEffects()[index].time();
+            case PARTICLE_CHANNEL -> data.particleEffects()[index].time();
+            case TIMELINE_CHANNEL -> data.timelineEffects()[index].time();
+            default -> throw new IllegalArgumentException("Invalid channel: " + channel);
+        };
+    }
+
+    private void fire(AnimationData data, int channel, int index) {
+        switch (channel) {
+            case SOUND_CHANNEL -> this.listener.onSoundEffect(this.animation, data.soundEffects()[index]);
+            case PARTICLE_CHANNEL -> this.listener.onParticleEffect(this.animation, data.particleEffects()[index]);
+            case TIMELINE_CHANNEL -> this.listener.onTimelineEffect(this.animation, data.timelineEffects()[index]);
+            default -> throw new IllegalArgumentException("Invalid channel: " + channel);
+        }
+    }
+
+    private void fireUntil(AnimationData data, float end) {
+        // Merge all channels so effects are always fired in the order they appear in the timeline.
+        // Effects at exactly the end are included, since the cursors already skip everything up to the previous time
+        while (true) {
+            int next = -1;
+            float nextTime = end;
+            for (int channel = 0; channel < CHANNELS; channel++) {
+                int i = this.cursors[channel];
+                if (i < getCount(data, channel)) {
+                    float time = getTime(data, channel, i);
+                    if (time <= end && (next == -1 || time < nextTime)) {
+                        next = channel;
+                        nextTime = time;
+                    }
+                }
+            }
+            if (next == -1) {
+                return;
+            }
+            this.fire(data, next, this.cursors[next]++);
+        }
+    }
+
+    private static boolean isLooping(AnimationData data) {
+        return data.loop() == AnimationData.Loop.LOOP && data.animationLength() > 0;
+    }
+
+    @Override
+    public void update() {
+        float time = this.animation.getAnimationTime();
+        if (time < this.time) {
+            this.seek(time);
+            return;
+        }
+
+        AnimationData data = this.animation.getAnimation();
+        if (isLooping(data)) {
+            float length = data.animationLength();
+            float loop = (float) Math.floor(time / length);
+            if (loop != (float) Math.floor(this.time / length)) {
+                this.fireUntil(data, Float.POSITIVE_INFINITY);
+                for (int channel = 0; channel < CHANNELS; channel++) {
+                    this.cursors[channel] = 0;
+                }
+            }
+            this.fireUntil(data, time - loop * length);
+        } else {
+            this.fireUntil(data, time);
+        }
+        this.time = time;
+    }
+
+    @Override
+    public void seek(float time) {
+        AnimationData data = this.animation.getAnimation();
+        float localTime = isLooping(data) ? time - (float) Math.floor(time / data.animationLength()) * data.animationLength() : time;
+        for (int channel = 0; channel < CHANNELS; channel++) {
+            // Find the first effect at or after the time
+            int low = 0;
+            int high = getCount(data, channel);
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (getTime(data, channel, middle) < localTime) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            this.cursors[channel] = low;
+        }
+        this.time = time;
+    }
+
+    @Override
+    public PlayingAnimation getAnimation() {
+        return this.animation;
+    }
+
+    @Override
+    public float getTime() {
+        return this.time;
+    }
+}
@@ -0,0 +1,42 @@
+package gg.moonflower.pinwheel.impl.animation;
+
+import gg.moonflower.pinwheel.api.geometry.GeometryModel;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits a list of animation jobs in half until each task only has a few jobs left to apply.
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public class AnimationJobTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+    private static final int THRESHOLD = 8;
+
+    private final List<GeometryModel.AnimationJob> jobs;
+    private final int start;
+    private final int end;
+
+    public AnimationJobTask(List<GeometryModel.AnimationJob> jobs, int start, int end) {
+        this.jobs = jobs;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+        if (this.end - this.start <= THRESHOLD) {
+            for (int i = this.start; i < this.end; i++) {
+                this.jobs.get(i).apply();
+            }
+            return;
+        }
+
+        int middle = (this.start + this.end) >>> 1;
+        invokeAll(new AnimationJobTask(this.jobs, this.start, middle), new AnimationJobTask(this.jobs, middle, this.end));
+    }
+}
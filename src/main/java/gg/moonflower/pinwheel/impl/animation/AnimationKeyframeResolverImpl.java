@@ -2,6 +2,7 @@ package gg.moonflower.pinwheel.impl.animation;
 
 import gg.moonflower.molangcompiler.api.MolangEnvironment;
 import gg.moonflower.pinwheel.api.animation.AnimationData;
+import gg.moonflower.pinwheel.api.animation.KeyframeCursor;
 import gg.moonflower.pinwheel.api.geometry.bone.AnimatedBone;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
@@ -10,25 +11,51 @@ import org.joml.Vector3f;
 @ApiStatus.Internal
 public class AnimationKeyframeResolverImpl {
 
-    private static final Vector3f POSITION = new Vector3f();
-    private static final Vector3f ROTATION = new Vector3f();
-    private static final Vector3f SCALE = new Vector3f();
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private static final int POSITION_CHANNEL = 0;
+    private static final int ROTATION_CHANNEL = 1;
+    private static final int SCALE_CHANNEL = 2;
+
+    private static final FrameTimes<AnimationData.KeyFrame[]> KEY_FRAME_TIMES = (frames, index) -> frames[index].time();
+    private static final FrameTimes<float[]> CONSTANT_TIMES = (times, index) -> times[index];
 
     public static void apply(float animationTime, float weight, MolangEnvironment environment, AnimatedBone.AnimationPose pose, AnimationData.BoneAnimation boneAnimation) {
-        POSITION.set(0);
-        ROTATION.set(0);
-        SCALE.set(1);
-        get(animationTime, environment, 0, boneAnimation.positionFrames(), POSITION);
-        get(animationTime, environment, 0, boneAnimation.rotationFrames(), ROTATION);
-        get(animationTime, environment, 1, boneAnimation.scaleFrames(), SCALE);
-        POSITION.mul(weight);
-        ROTATION.mul(weight);
-        SCALE.sub(1, 1, 1);
-        SCALE.mul(weight);
-        pose.add(POSITION.x(), POSITION.y(), POSITION.z(), ROTATION.x(), ROTATION.y(), ROTATION.z(), SCALE.x(), SCALE.y(), SCALE.z());
+        apply(animationTime, weight, environment, pose, boneAnimation, null, 0);
     }
 
-    private static void get(float animationTime, MolangEnvironment environment, float startValue, AnimationData.KeyFrame[] frames, Vector3f result) {
+    public static void apply(float animationTime, float weight, MolangEnvironment environment, AnimatedBone.AnimationPose pose, AnimationData.BoneAnimation boneAnimation, @Nullable KeyframeCursor cursor, int boneAnimationIndex) {
+        Scratch scratch = SCRATCH.get();
+        Vector3f position = scratch.position.set(0);
+        Vector3f rotation = scratch.rotation.set(0);
+        Vector3f scale = scratch.scale.set(1);
+        // Constant channels don't store key frames, so they are only requested for channels that use expressions
+        AnimationData.ConstantChannel constantPosition = boneAnimation.constantPosition();
+        if (constantPosition != null) {
+            getConstant(animationTime, 0, constantPosition, position, cursor, boneAnimationIndex, POSITION_CHANNEL);
+        } else {
+            get(animationTime, environment, 0, boneAnimation.positionFrames(), position, cursor, boneAnimationIndex, POSITION_CHANNEL);
+        }
+        AnimationData.ConstantChannel constantRotation = boneAnimation.constantRotation();
+        if (constantRotation != null) {
+            getConstant(animationTime, 0, constantRotation, rotation, cursor, boneAnimationIndex, ROTATION_CHANNEL);
+        } else {
+            get(animationTime, environment, 0, boneAnimation.rotationFrames(), rotation, cursor, boneAnimationIndex, ROTATION_CHANNEL);
+        }
+        AnimationData.ConstantChannel constantScale = boneAnimation.constantScale();
+        if (constantScale != null) {
+            getConstant(animationTime, 1, constantScale, scale, cursor, boneAnimationIndex, SCALE_CHANNEL);
+        } else {
+            get(animationTime, environment, 1, boneAnimation.scaleFrames(), scale, cursor, boneAnimationIndex, SCALE_CHANNEL);
+        }
+        position.mul(weight);
+        rotation.mul(weight);
+        scale.sub(1, 1, 1);
+        scale.mul(weight);
+        pose.add(position.x(), position.y(), position.z(), rotation.x(), rotation.y(), rotation.z(), scale.x(), scale.y(), scale.z());
+    }
+
+    private static void get(float animationTime, MolangEnvironment environment, float startValue, AnimationData.KeyFrame[] frames, Vector3f result, @Nullable KeyframeCursor cursor, int boneAnimationIndex, int channel) {
         environment.setThisValue(startValue);
         if (frames.length == 1) {
             AnimationData.KeyFrame keyFrame = frames[0];
@@ -39,25 +66,113 @@ public class AnimationKeyframeResolverImpl {
             return;
         }
 
-        for (int i = 0; i < frames.length; i++) {
-            AnimationData.KeyFrame to = frames[i];
-            if ((to.time() < animationTime && i < frames.length - 1) || to.time() == 0) {
-                continue;
-            }
+        int i = findFrame(animationTime, frames, frames.length, KEY_FRAME_TIMES, cursor, boneAnimationIndex, channel);
+        if (i == -1) {
+            return;
+        }
 
-            AnimationData.KeyFrame from = i == 0 ? null : frames[i - 1];
-            float timeOffset = from != null ? from.time() : 0;
-            float progress = Math.min(1.0F, (animationTime - timeOffset) / (to.time() - timeOffset));
+        AnimationData.KeyFrame to = frames[i];
+        AnimationData.KeyFrame from = i == 0 ? null : frames[i - 1];
+        float timeOffset = from != null ? from.time() : 0;
+        float progress = Math.min(1.0F, (animationTime - timeOffset) / (to.time() - timeOffset));
+
+        if (to.lerpMode() == AnimationData.LerpMode.CATMULLROM) {
+            AnimationData.KeyFrame before = i >= 2 ? frames[i - 2] : null;
+            AnimationData.KeyFrame after = i < frames.length - 1 ? frames[i + 1] : null;
+            catmullRom(progress, environment, startValue, before, from, to, after, result);
+        } else {
+            lerp(to.lerpMode().ease(progress), environment, startValue, from, to, result);
+        }
+    }
+
+    private static void getConstant(float animationTime, float startValue, AnimationData.ConstantChannel constant, Vector3f result, @Nullable KeyframeCursor cursor, int boneAnimationIndex, int channel) {
+        float[] times = constant.times();
+        float[] pre = constant.pre();
+        float[] post = constant.post();
+        if (times.length == 1) {
+            result.set(post[0], post[1], post[2]);
+            return;
+        }
+
+        int i = findFrame(animationTime, times, times.length, CONSTANT_TIMES, cursor, boneAnimationIndex, channel);
+        if (i == -1) {
+            return;
+        }
+
+        float timeOffset = i == 0 ? 0 : times[i - 1];
+        float progress = Math.min(1.0F, (animationTime - timeOffset) / (times[i] - timeOffset));
+
+        AnimationData.LerpMode lerpMode = constant.lerpModes()[i];
+        if (lerpMode == AnimationData.LerpMode.CATMULLROM) {
+            result.set(catmullRom(progress, startValue, times.length, i, pre, post, 0), catmullRom(progress, startValue, times.length, i, pre, post, 1), catmullRom(progress, startValue, times.length, i, pre, post, 2));
+        } else {
+            float pct = lerpMode.ease(progress);
+            float fromX = i == 0 ? startValue : post[(i - 1) * 3];
+            float fromY = i == 0 ? startValue : post[(i - 1) * 3 + 1];
+            float fromZ = i == 0 ? startValue : post[(i - 1) * 3 + 2];
+            result.set(lerp(pct, fromX, pre[i * 3]), lerp(pct, fromY, pre[i * 3 + 1]), lerp(pct, fromZ, pre[i * 3 + 2]));
+        }
+    }
 
-            if (to.lerpMode() == AnimationData.LerpMode.CATMULLROM) {
-                AnimationData.KeyFrame before = i >= 2 ? frames[i - 2] : null;
-                AnimationData.KeyFrame after = i < frames.length - 1 ? frames[i + 1] : null;
-                catmullRom(progress, environment, startValue, before, from, to, after, result);
+    private static float catmullRom(float progress, float startValue, int frames, int i, float[] pre, float[] post, int axis) {
+        float from = i == 0 ? startValue : post[(i - 1) * 3 + axis];
+        float before = i >= 2 ? post[(i - 2) * 3 + axis] : from;
+        float to = pre[i * 3 + axis];
+        float after = i < frames - 1 ? pre[(i + 1) * 3 + axis] : to;
+        return catmullRom(before, from, to, after, progress);
+    }
+
+    /**
+     * Finds the frame to interpolate towards. This is the first frame at or after the animation time, or the last frame if the time is past the end.
+     * Frames at time <code>0</code> are never interpolated towards. Frames must be sorted by time.
+     */
+    private static <T> int findFrame(float animationTime, T frames, int length, FrameTimes<T> times, @Nullable KeyframeCursor cursor, int boneAnimationIndex, int channel) {
+        if (length == 0) {
+            return -1;
+        }
+
+        if (cursor != null) {
+            // Playback is usually monotonic, so check the last segment and the one after it before searching
+            int last = cursor.getSegment(boneAnimationIndex, channel);
+            if (last < length) {
+                if (isFrame(animationTime, frames, length, times, last)) {
+                    return last;
+                }
+                if (last + 1 < length && isFrame(animationTime, frames, length, times, last + 1)) {
+                    cursor.setSegment(boneAnimationIndex, channel, last + 1);
+                    return last + 1;
+                }
+            }
+        }
+
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times.get(frames, mid) < animationTime) {
+                low = mid + 1;
             } else {
-                lerp(to.lerpMode().apply(progress), environment, startValue, from, to, result);
+                high = mid;
             }
-            break;
         }
+
+        int i = low == length ? length - 1 : low;
+        while (i < length && times.get(frames, i) == 0) {
+            i++;
+        }
+        if (i == length) {
+            return -1;
+        }
+
+        if (cursor != null) {
+            cursor.setSegment(boneAnimationIndex, channel, i);
+        }
+        return i;
+    }
+
+    private static <T> boolean isFrame(float animationTime, T frames, int length, FrameTimes<T> times, int i) {
+        float time = times.get(frames, i);
+        return time != 0 && (time >= animationTime || i == length - 1) && (i == 0 || times.get(frames, i - 1) < animationTime);
     }
 
     private static void lerp(float progress, MolangEnvironment environment, float startValue, @Nullable AnimationData.KeyFrame from, AnimationData.KeyFrame to, Vector3f result) {
@@ -91,11 +206,30 @@ public class AnimationKeyframeResolverImpl {
         result.set(catmullRom(beforeX, fromX, toX, afterX, progress), catmullRom(beforeY, fromY, toY, afterY, progress), catmullRom(beforeZ, fromZ, toZ, afterZ, progress));
     }
 
-    private static float lerp(float pct, float pre, float post) {
+    public static float lerp(float pct, float pre, float post) {
         return pre + pct * (post - pre);
     }
 
-    private static float catmullRom(float p0, float p1, float p2, float p3, float t) {
+    public static float catmullRom(float p0, float p1, float p2, float p3, float t) {
         return 0.5F * ((2 * p1) + (-p0 + p2) * t + (2 * p0 - 5 * p1 + 4 * p2 - p3) * t * t + (-p0 + 3 * p1 - 3 * p2 + p3) * t * t * t);
     }
+
+    /**
+     * Per-thread storage for the channels of a single bone animation, so animations can be resolved on multiple threads at once.
+     */
+    private static class Scratch {
+
+        private final Vector3f position = new Vector3f();
+        private final Vector3f rotation = new Vector3f();
+        private final Vector3f scale = new Vector3f();
+    }
+
+    /**
+     * Reads the time of a frame, so the same search works for both key frames and the times of constant channels.
+     */
+    @FunctionalInterface
+    private interface FrameTimes<T> {
+
+        float get(T frames, int index);
+    }
 }
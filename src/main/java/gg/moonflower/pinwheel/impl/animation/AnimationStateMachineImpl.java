@@ -0,0 +1,206 @@
+package gg.moonflower.pinwheel.impl.animation;
+
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.pinwheel.api.animation.AnimationControllerData;
+import gg.moonflower.pinwheel.api.animation.AnimationData;
+import gg.moonflower.pinwheel.api.animation.AnimationStateMachine;
+import gg.moonflower.pinwheel.api.animation.PlayingAnimation;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public class AnimationStateMachineImpl implements AnimationStateMachine {
+
+    private final AnimationControllerData controller;
+    private final MolangEnvironment environment;
+    private final PlayingAnimation[][] stateAnimations;
+    private final MolangExpression[][] stateWeights;
+    private final List<PlayingAnimation> playingAnimations;
+    private final Collection<PlayingAnimation> playingAnimationsView;
+    private int state;
+    private int previousState;
+    private float stateTime;
+    private float blendTime;
+    private float blendLength;
+
+    public AnimationStateMachineImpl(AnimationControllerData controller, MolangEnvironment environment, Function<String, @Nullable AnimationData> animations) {
+        this.controller = controller;
+        this.environment = environment;
+
+        AnimationControllerData.State[] states = controller.states();
+        this.stateAnimations = new PlayingAnimation[states.length][];
+        this.stateWeights = new MolangExpression[states.length][];
+        for (int i = 0; i < states.length; i++) {
+            List<PlayingAnimation> playing = new ArrayList<>();
+            List<MolangExpression> weights = new ArrayList<>();
+            for (AnimationControllerData.StateAnimation stateAnimation : states[i].animations()) {
+                AnimationData animation = animations.apply(stateAnimation.animation());
+                if (animation != null) {
+                    playing.add(PlayingAnimation.of(animation));
+                    weights.add(stateAnimation.weight());
+                }
+            }
+            this.stateAnimations[i] = playing.toArray(new PlayingAnimation[0]);
+            this.stateWeights[i] = weights.toArray(new MolangExpression[0]);
+        }
+
+        this.playingAnimations = new ArrayList<>();
+        this.playingAnimationsView = Collections.unmodifiableList(this.playingAnimations);
+        this.clearAnimations();
+    }
+
+    private void execute(MolangExpression[] expressions) {
+        for (MolangExpression expression : expressions) {
+            this.environment.safeResolve(expression);
+        }
+    }
+
+    private void enter(int state) {
+        for (PlayingAnimation animation : this.stateAnimations[state]) {
+            animation.setAnimationTime(0);
+        }
+        this.state = state;
+        this.stateTime = 0;
+        this.execute(this.controller.states()[state].onEntry());
+    }
+
+    private void updatePlayingAnimations() {
+        this.playingAnimations.clear();
+        if (this.previousState != -1) {
+            Collections.addAll(this.playingAnimations, this.stateAnimations[this.previousState]);
+        }
+        Collections.addAll(this.playingAnimations, this.stateAnimations[this.state]);
+    }
+
+    private void updateWeights() {
+        if (this.previousState != -1) {
+            float fade = this.blendTime / this.blendLength;
+            this.updateWeights(this.previousState, 1.0F - fade);
+            this.updateWeights(this.state, fade);
+        } else {
+            this.updateWeights(this.state, 1.0F);
+        }
+    }
+
+    private void updateWeights(int state, float fade) {
+        PlayingAnimation[] animations = this.stateAnimations[state];
+        MolangExpression[] weights = this.stateWeights[state];
+        for (int i = 0; i < animations.length; i++) {
+            animations[i].setWeight(fade * this.environment.safeResolve(weights[i]));
+        }
+    }
+
+    private static void advance(PlayingAnimation[] animations, float deltaTime) {
+        for (PlayingAnimation animation : animations) {
+            animation.setAnimationTime(animation.getAnimationTime() + deltaTime);
+        }
+    }
+
+    @Override
+    public void clearAnimations() {
+        this.previousState = -1;
+        this.blendTime = 0;
+        this.blendLength = 0;
+        this.enter(this.controller.initialState());
+        this.updatePlayingAnimations();
+        this.updateWeights();
+    }
+
+    @Override
+    public void update(float deltaTime) {
+        advance(this.stateAnimations[this.state], deltaTime);
+        this.stateTime += deltaTime;
+        if (this.previousState != -1) {
+            this.blendTime += deltaTime;
+            if (this.blendTime >= this.blendLength) {
+                this.previousState = -1;
+                this.updatePlayingAnimations();
+            } else {
+                advance(this.stateAnimations[this.previousState], deltaTime);
+            }
+        }
+
+        for (AnimationControllerData.Transition transition : this.getState().transitions()) {
+            if (this.environment.safeResolve(transition.condition()) != 0) {
+                this.setState(transition.target());
+                return;
+            }
+        }
+
+        this.updateWeights();
+    }
+
+    @Override
+    public void setState(int state) {
+        Objects.checkIndex(state, this.stateAnimations.length);
+
+        AnimationControllerData.State exiting = this.getState();
+        this.execute(exiting.onExit());
+
+        if (state != this.state && state == this.previousState) {
+            // Reverse the transition that is still blending, so the previous state fades back in from its current weight
+            this.previousState = this.state;
+            this.blendTime = this.blendLength - this.blendTime;
+            this.state = state;
+            this.stateTime = 0;
+            this.execute(this.controller.states()[state].onEntry());
+            this.updatePlayingAnimations();
+            this.updateWeights();
+            return;
+        }
+
+        // A state can't be blended with itself since both would share the same animations
+        if (state != this.state && exiting.blendTransition() > 0) {
+            this.previousState = this.state;
+            this.blendTime = 0;
+            this.blendLength = exiting.blendTransition();
+        } else {
+            this.previousState = -1;
+        }
+
+        this.enter(state);
+        this.updatePlayingAnimations();
+        this.updateWeights();
+    }
+
+    @Override
+    public AnimationControllerData getController() {
+        return this.controller;
+    }
+
+    @Override
+    public int getStateIndex() {
+        return this.state;
+    }
+
+    @Override
+    public int getPreviousStateIndex() {
+        return this.previousState;
+    }
+
+    @Override
+    public float getStateTime() {
+        return this.stateTime;
+    }
+
+    @Override
+    public MolangEnvironment getEnvironment() {
+        return this.environment;
+    }
+
+    @Override
+    public Collection<? extends PlayingAnimation> getPlayingAnimations() {
+        return this.playingAnimationsView;
+    }
+}
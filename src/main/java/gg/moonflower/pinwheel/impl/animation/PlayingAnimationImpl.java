@@ -2,18 +2,29 @@ package gg.moonflower.pinwheel.impl.animation;
 
 import gg.moonflower.molangcompiler.api.MolangEnvironment;
 import gg.moonflower.pinwheel.api.animation.AnimationData;
+import gg.moonflower.pinwheel.api.animation.CompressedAnimation;
+import gg.moonflower.pinwheel.api.animation.KeyframeCursor;
 import gg.moonflower.pinwheel.api.animation.PlayingAnimation;
 import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
 
 @ApiStatus.Internal
 public class PlayingAnimationImpl implements PlayingAnimation {
 
     private final AnimationData animation;
+    private final KeyframeCursor cursor;
+    private final CompressedAnimation compressedAnimation;
     private float time;
     private float weight;
 
     public PlayingAnimationImpl(AnimationData animation) {
+        this(animation, null);
+    }
+
+    public PlayingAnimationImpl(AnimationData animation, @Nullable CompressedAnimation compressedAnimation) {
         this.animation = animation;
+        this.cursor = KeyframeCursor.create(animation);
+        this.compressedAnimation = compressedAnimation;
         this.time = 0;
         this.weight = 1.0F;
     }
@@ -28,6 +39,16 @@ public class PlayingAnimationImpl implements PlayingAnimation {
         return this.time;
     }
 
+    @Override
+    public KeyframeCursor getCursor() {
+        return this.cursor;
+    }
+
+    @Override
+    public @Nullable CompressedAnimation getCompressedAnimation() {
+        return this.compressedAnimation;
+    }
+
     @Override
     public float getWeightFactor() {
         return this.weight;
@@ -0,0 +1,27 @@
+package gg.moonflower.pinwheel.impl.geometry;
+
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.exception.MolangRuntimeException;
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * A bone binding that keeps the MoLang source it was compiled from, so it can be written again exactly as it was parsed.
+ *
+ * @param expression The compiled expression
+ * @param source     The MoLang source of the expression
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public record BindingExpression(MolangExpression expression, String source) implements MolangExpression {
+
+    @Override
+    public float get(MolangEnvironment environment) throws MolangRuntimeException {
+        return this.expression.get(environment);
+    }
+
+    @Override
+    public String toString() {
+        return this.source;
+    }
+}
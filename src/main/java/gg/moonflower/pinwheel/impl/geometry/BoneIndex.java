@@ -0,0 +1,127 @@
+package gg.moonflower.pinwheel.impl.geometry;
+
+import com.google.common.collect.MapMaker;
+import gg.moonflower.pinwheel.api.geometry.GeometryTree;
+import gg.moonflower.pinwheel.api.geometry.bone.AnimatedBone;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * <p>Bone indices for geometry trees that don't provide their own lookup. Indices are computed the first time a tree is used
+ * and cached until the tree is no longer referenced, so the bones of a tree must not change after that.</p>
+ * <p>Bones are indexed in depth-first order, visiting roots and children in the order of {@link GeometryTree#getBones()}.
+ * This means parents always have a lower index than their children and every subtree is a contiguous range of indices.
+ * Bones that reference a parent that doesn't exist are treated as root bones.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class BoneIndex {
+
+    // Weak keys are compared by identity, so trees that are equal by value still get their own bones
+    private static final Map<GeometryTree, BoneIndex> CACHE = new MapMaker().weakKeys().makeMap();
+
+    private final AnimatedBone[] bones;
+    private final int[] parents;
+    private final Object2IntMap<String> indices;
+
+    private BoneIndex(GeometryTree tree) {
+        AnimatedBone[] source = tree.getBones().toArray(new AnimatedBone[0]);
+        Object2IntMap<String> sourceIndices = new Object2IntOpenHashMap<>(source.length);
+        sourceIndices.defaultReturnValue(-1);
+        for (int i = 0; i < source.length; i++) {
+            sourceIndices.putIfAbsent(source[i].getBone().name(), i);
+        }
+
+        int[] sourceParents = new int[source.length];
+        for (int i = 0; i < source.length; i++) {
+            String parent = source[i].getBone().parent();
+            sourceParents[i] = parent != null ? sourceIndices.getInt(parent) : -1;
+        }
+
+        this.bones = new AnimatedBone[source.length];
+        this.parents = new int[source.length];
+        this.indices = new Object2IntOpenHashMap<>(source.length);
+        this.indices.defaultReturnValue(-1);
+
+        int[] order = new int[source.length];
+        int count = this.visit(source, sourceParents, order, -1, 0);
+        if (count != source.length) {
+            throw new IllegalStateException(source.length - count + " bones are part of a parent cycle");
+        }
+    }
+
+    private int visit(AnimatedBone[] source, int[] sourceParents, int[] order, int parent, int count) {
+        int parentIndex = parent != -1 ? order[parent] : -1;
+        for (int i = 0; i < source.length; i++) {
+            if (sourceParents[i] != parent) {
+                continue;
+            }
+
+            int index = count++;
+            order[i] = index;
+            this.bones[index] = source[i];
+            this.parents[index] = parentIndex;
+            this.indices.putIfAbsent(source[i].getBone().name(), index);
+            count = this.visit(source, sourceParents, order, i, count);
+        }
+        return count;
+    }
+
+    /**
+     * @param tree The tree to get indices for
+     * @return The cached indices of the bones in the tree
+     */
+    public static BoneIndex get(GeometryTree tree) {
+        return CACHE.computeIfAbsent(tree, BoneIndex::new);
+    }
+
+    /**
+     * @param name The name of the bone
+     * @return The index of the bone or <code>-1</code> if there is no bone
+     */
+    public int getIndex(String name) {
+        return this.indices.getInt(name);
+    }
+
+    /**
+     * @param index The index of the bone
+     * @return The bone at that index
+     * @throws IndexOutOfBoundsException If there is no bone at that index
+     */
+    public AnimatedBone getBone(int index) {
+        Objects.checkIndex(index, this.bones.length);
+        return this.bones[index];
+    }
+
+    /**
+     * @param index The index of the bone
+     * @return The index of the parent bone or <code>-1</code> if the bone is a root bone
+     * @throws IndexOutOfBoundsException If there is no bone at that index
+     */
+    public int getParentIndex(int index) {
+        Objects.checkIndex(index, this.parents.length);
+        return this.parents[index];
+    }
+
+    /**
+     * @return All bones in index order
+     */
+    public List<AnimatedBone> getBones() {
+        return Collections.unmodifiableList(Arrays.asList(this.bones));
+    }
+
+    /**
+     * @return The number of bones
+     */
+    public int getCount() {
+        return this.bones.length;
+    }
+}
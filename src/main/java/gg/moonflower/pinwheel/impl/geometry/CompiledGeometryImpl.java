@@ -0,0 +1,233 @@
+package gg.moonflower.pinwheel.impl.geometry;
+
+import gg.moonflower.pinwheel.api.geometry.CompiledGeometry;
+import gg.moonflower.pinwheel.api.geometry.GeometryCompileException;
+import gg.moonflower.pinwheel.api.geometry.GeometryCompileOptions;
+import gg.moonflower.pinwheel.api.geometry.GeometryModelData;
+import gg.moonflower.pinwheel.api.geometry.GeometryTree;
+import gg.moonflower.pinwheel.api.geometry.IndexedGeometry;
+import gg.moonflower.pinwheel.api.geometry.bone.BoneBounds;
+import gg.moonflower.pinwheel.api.geometry.bone.Polygon;
+import gg.moonflower.pinwheel.impl.geometry.bone.CompiledBone;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public class CompiledGeometryImpl implements CompiledGeometry {
+
+    private static final String PARENT = "parent.";
+    private static final int[] NO_CHILDREN = new int[0];
+
+    private final CompiledBone[] bones;
+    private final int[] parents;
+    private final int[][] children;
+    private final int[] roots;
+    private final Object2IntMap<String> boneIndices;
+    private final GeometryModelData.Locator[] locators;
+    private final Object2IntMap<String> locatorIndices;
+    private final int culledPolygons;
+    private final int mergedPolygons;
+    private volatile IndexedGeometry indexedGeometry;
+
+    public CompiledGeometryImpl(int textureWidth, int textureHeight, GeometryModelData.Bone[] bones, GeometryCompileOptions options) throws GeometryCompileException {
+        this.locators = Arrays.stream(bones).flatMap(bone -> Arrays.stream(bone.locators())).toArray(GeometryModelData.Locator[]::new);
+        this.locatorIndices = new Object2IntOpenHashMap<>(this.locators.length);
+        this.locatorIndices.defaultReturnValue(-1);
+        for (int i = 0; i < this.locators.length; i++) {
+            if (this.locatorIndices.put(this.locators[i].identifier(), i) != -1) {
+                throw new GeometryCompileException("Duplicate locator: " + this.locators[i].identifier());
+            }
+        }
+
+        Object2IntMap<String> sourceIndices = new Object2IntOpenHashMap<>(bones.length);
+        sourceIndices.defaultReturnValue(-1);
+        for (int i = 0; i < bones.length; i++) {
+            if (sourceIndices.put(bones[i].name(), i) != -1) {
+                throw new GeometryCompileException("Duplicate bone: " + bones[i].name());
+            }
+        }
+
+        // Figure out what bones are the children of what other bones
+        IntList rootBones = new IntArrayList();
+        List<IntList> sourceChildren = new ArrayList<>(bones.length);
+        for (int i = 0; i < bones.length; i++) {
+            sourceChildren.add(new IntArrayList());
+        }
+        for (int i = 0; i < bones.length; i++) {
+            String parent = bones[i].parent();
+            if (parent == null || parent.startsWith(PARENT)) {
+                // There is no parent, so it must be a root node
+                rootBones.add(i);
+                continue;
+            }
+
+            int parentIndex = sourceIndices.getInt(parent);
+            if (parentIndex == -1) {
+                throw new GeometryCompileException("Unknown bone: " + parent);
+            }
+            sourceChildren.get(parentIndex).add(i);
+        }
+
+        // Order bones depth-first so parents always come before their children
+        IntList order = new IntArrayList(bones.length);
+        for (int i = 0; i < rootBones.size(); i++) {
+            listBones(rootBones.getInt(i), sourceChildren, order);
+        }
+
+        int[] sourceToIndex = new int[bones.length];
+        Arrays.fill(sourceToIndex, -1);
+        for (int i = 0; i < order.size(); i++) {
+            sourceToIndex[order.getInt(i)] = i;
+        }
+
+        this.bones = new CompiledBone[order.size()];
+        this.parents = new int[order.size()];
+        Arrays.fill(this.parents, -1);
+        this.children = new int[order.size()][];
+        this.boneIndices = new Object2IntOpenHashMap<>(order.size());
+        this.boneIndices.defaultReturnValue(-1);
+        int culledPolygons = 0;
+        int mergedPolygons = 0;
+        for (int i = 0; i < order.size(); i++) {
+            int source = order.getInt(i);
+            GeometryModelData.Bone bone = bones[source];
+            this.bones[i] = CompiledBone.compile(bone, textureWidth, textureHeight, options);
+            culledPolygons += this.bones[i].culledPolygons();
+            mergedPolygons += this.bones[i].mergedPolygons();
+
+            IntList boneChildren = sourceChildren.get(source);
+            if (boneChildren.isEmpty()) {
+                this.children[i] = NO_CHILDREN;
+            } else {
+                this.children[i] = new int[boneChildren.size()];
+                for (int j = 0; j < boneChildren.size(); j++) {
+                    this.children[i][j] = sourceToIndex[boneChildren.getInt(j)];
+                    this.parents[this.children[i][j]] = i;
+                }
+            }
+            this.boneIndices.put(bone.name(), i);
+        }
+
+        this.culledPolygons = culledPolygons;
+        this.mergedPolygons = mergedPolygons;
+
+        this.roots = new int[rootBones.size()];
+        for (int i = 0; i < this.roots.length; i++) {
+            this.roots[i] = sourceToIndex[rootBones.getInt(i)];
+        }
+    }
+
+    private static void listBones(int bone, List<IntList> children, IntList order) {
+        order.add(bone);
+        IntList boneChildren = children.get(bone);
+        for (int i = 0; i < boneChildren.size(); i++) {
+            listBones(boneChildren.getInt(i), children, order);
+        }
+    }
+
+    @Override
+    public GeometryTree createTree() {
+        return new GeometryTreeImpl(this);
+    }
+
+    @Override
+    public int getBoneCount() {
+        return this.bones.length;
+    }
+
+    @Override
+    public int getBoneIndex(String name) {
+        return this.boneIndices.getInt(name);
+    }
+
+    @Override
+    public int getParentIndex(int index) {
+        return this.parents[index];
+    }
+
+    @Override
+    public GeometryModelData.Bone getBone(int index) {
+        return this.bones[index].bone();
+    }
+
+    @Override
+    public List<Polygon> getPolygons(int index) {
+        return this.bones[index].polygons();
+    }
+
+    @Override
+    public BoneBounds getBounds(int index) {
+        return this.bones[index].bounds();
+    }
+
+    @Override
+    public int getCulledPolygonCount() {
+        return this.culledPolygons;
+    }
+
+    @Override
+    public int getMergedPolygonCount() {
+        return this.mergedPolygons;
+    }
+
+    @Override
+    public IndexedGeometry getIndexedGeometry() {
+        IndexedGeometry indexedGeometry = this.indexedGeometry;
+        if (indexedGeometry == null) {
+            // Indexing is deterministic, so racing threads produce equivalent results
+            indexedGeometry = this.indexedGeometry = IndexedGeometry.index(this);
+        }
+        return indexedGeometry;
+    }
+
+    @Override
+    public GeometryModelData.Locator[] getLocators() {
+        return this.locators;
+    }
+
+    /**
+     * @param index The index of the bone
+     * @return The compiled bone at that index
+     */
+    public CompiledBone getCompiledBone(int index) {
+        return this.bones[index];
+    }
+
+    /**
+     * @param index The index of the bone
+     * @return The indices of all direct children of the bone at that index. Children always have a higher index than their parent
+     */
+    public int[] getChildren(int index) {
+        return this.children[index];
+    }
+
+    /**
+     * @return The indices of all bones without a parent
+     */
+    public int[] getRoots() {
+        return this.roots;
+    }
+
+    /**
+     * @param name The name of the locator
+     * @return The index of the locator in {@link #getLocators()} or <code>-1</code> if there is no locator with that name
+     */
+    public int getLocatorIndex(String name) {
+        return this.locatorIndices.getInt(name);
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledGeometryImpl{bones=" + this.bones.length + ", locators=" + this.locators.length + "}";
+    }
+}
@@ -133,8 +133,11 @@ public final class Geometry110Parser {
             return new GeometryModelData.CubeUV[6];
         }
 
+        return createBoxUV(JsonTupleParser.getFloat(cubeJson, "uv", 2, () -> new float[2]), size);
+    }
+
+    static GeometryModelData.CubeUV[] createBoxUV(float[] uv, float[] size) {
         GeometryModelData.CubeUV[] uvs = new GeometryModelData.CubeUV[6];
-        float[] uv = JsonTupleParser.getFloat(cubeJson, "uv", 2, () -> new float[2]);
         uvs[FaceDirection.NORTH.get3DDataValue()] = new GeometryModelData.CubeUV(uv[0] + size[2], uv[1] + size[2], size[0], size[1], GeometryModelData.CubeUVRotation.ROT_0, "texture");
         uvs[FaceDirection.EAST.get3DDataValue()] = new GeometryModelData.CubeUV(uv[0], uv[1] + size[2], size[2], size[1], GeometryModelData.CubeUVRotation.ROT_0, "texture");
         uvs[FaceDirection.SOUTH.get3DDataValue()] = new GeometryModelData.CubeUV(uv[0] + size[0] + size[2] * 2, uv[1] + size[2], size[0], size[1], GeometryModelData.CubeUVRotation.ROT_0, "texture");
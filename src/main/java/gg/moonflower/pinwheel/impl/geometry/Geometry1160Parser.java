@@ -6,6 +6,7 @@ import gg.moonflower.pinwheel.api.JsonTupleParser;
 import gg.moonflower.pinwheel.api.geometry.GeometryModelData;
 import gg.moonflower.pinwheel.impl.PinwheelGsonHelper;
 import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
 import org.joml.Vector3f;
 
 import java.util.HashSet;
@@ -68,7 +69,7 @@ public final class Geometry1160Parser {
 
         GeometryModelData.Cube[] cubes = json.has("cubes") ? Geometry180Parser.parseCubes(json) : new GeometryModelData.Cube[0];
         GeometryModelData.Locator[] locators = json.has("locators") ? Geometry110Parser.parseLocators(json) : new GeometryModelData.Locator[0];
-        MolangExpression binding = JsonTupleParser.getExpression(json, "binding", () -> null);
+        MolangExpression binding = parseBinding(boneJson.get("binding"));
 
         GeometryModelData.PolyMesh polyMesh = boneJson.has("poly_mesh") ? Geometry180Parser.GSON.fromJson(boneJson.get("poly_mesh"), GeometryModelData.PolyMesh.class) : null;
 
@@ -76,4 +77,14 @@ public final class Geometry1160Parser {
 
         return new GeometryModelData.Bone(name, reset2588, neverRender2588, parent, new Vector3f(pivot[0], pivot[1], pivot[2]), new Vector3f(rotation[0], rotation[1], rotation[2]), new Vector3f(bindPoseRotation2588[0], bindPoseRotation2588[1], bindPoseRotation2588[2]), mirror, inflate, debug, cubes, locators, binding, polyMesh);
     }
+
+    static @Nullable MolangExpression parseBinding(@Nullable JsonElement json) throws JsonParseException {
+        if (json == null) {
+            return null;
+        }
+
+        // Keep the source, so the binding can be written to other formats without relying on the compiled expression
+        MolangExpression expression = JsonTupleParser.parseExpression(json, "binding");
+        return new BindingExpression(expression, json.getAsString());
+    }
 }
@@ -133,7 +133,10 @@ public final class Geometry1210Parser {
     }
 
     static GeometryModelData.CubeUVRotation parseUVRotation(JsonObject uvJson) {
-        int rotation = PinwheelGsonHelper.getAsInt(uvJson, "uv_rotation", 0);
+        return parseUVRotation(PinwheelGsonHelper.getAsInt(uvJson, "uv_rotation", 0));
+    }
+
+    static GeometryModelData.CubeUVRotation parseUVRotation(int rotation) {
         return switch (rotation) {
             case 0 -> GeometryModelData.CubeUVRotation.ROT_0;
             case 90 -> GeometryModelData.CubeUVRotation.ROT_90;
@@ -0,0 +1,409 @@
+package gg.moonflower.pinwheel.impl.geometry;
+
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.pinwheel.api.PinwheelMolangCompiler;
+import gg.moonflower.pinwheel.api.geometry.GeometryModelData;
+import gg.moonflower.pinwheel.impl.MolangConstants;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Reads and writes geometry in the compact binary <code>.pgeo</code> format.</p>
+ * <p>The file starts with a magic number, the format version, and a table of every string used.
+ * All strings in the model data are stored as indices into that table. Values are big-endian.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class GeometryBinaryFormat {
+
+    public static final int MAGIC = 0x5047454F; // PGEO
+    public static final int VERSION = 1;
+
+    private static final int NULL_STRING = -1;
+
+    private GeometryBinaryFormat() {
+    }
+
+    public static void write(GeometryModelData[] models, OutputStream stream) throws IOException {
+        Writer writer = new Writer();
+        writer.writeModels(models);
+
+        DataOutputStream output = new DataOutputStream(stream);
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(writer.strings.size());
+        for (String string : writer.strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+        writer.body.writeTo(output);
+        output.flush();
+    }
+
+    public static GeometryModelData[] read(ByteBuffer buffer) throws IOException {
+        ByteBuffer data = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+        try {
+            if (data.getInt() != MAGIC) {
+                throw new IOException("Not a geometry file");
+            }
+            int version = data.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported geometry file version: " + version + ", expected " + VERSION);
+            }
+
+            String[] strings = new String[readCount(data)];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[readCount(data)];
+                data.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            return new Reader(data, strings).readModels();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Unexpected end of geometry file", e);
+        }
+    }
+
+    private static int readCount(ByteBuffer data) throws IOException {
+        int count = data.getInt();
+        if (count < 0 || count > data.remaining()) {
+            throw new IOException("Invalid length: " + count);
+        }
+        return count;
+    }
+
+    private static @Nullable String getBindingSource(GeometryModelData.Bone bone) throws IOException {
+        MolangExpression binding = bone.binding();
+        if (binding == null) {
+            return null;
+        }
+        if (binding instanceof BindingExpression expression) {
+            return expression.source();
+        }
+
+        // Expressions created in code only have source text if they are a single number
+        float value = MolangConstants.getConstant(binding);
+        if (!Float.isNaN(value)) {
+            return Float.toString(value);
+        }
+        throw new IOException("Binding for bone " + bone.name() + " has no MoLang source to write");
+    }
+
+    private static class Writer {
+
+        private final ByteArrayOutputStream body;
+        private final DataOutputStream output;
+        private final List<String> strings;
+        private final Object2IntMap<String> stringIndices;
+
+        private Writer() {
+            this.body = new ByteArrayOutputStream();
+            this.output = new DataOutputStream(this.body);
+            this.strings = new ArrayList<>();
+            this.stringIndices = new Object2IntOpenHashMap<>();
+            this.stringIndices.defaultReturnValue(NULL_STRING);
+        }
+
+        private void writeString(@Nullable String string) throws IOException {
+            if (string == null) {
+                this.output.writeInt(NULL_STRING);
+                return;
+            }
+
+            int index = this.stringIndices.getInt(string);
+            if (index == NULL_STRING) {
+                index = this.strings.size();
+                this.strings.add(string);
+                this.stringIndices.put(string, index);
+            }
+            this.output.writeInt(index);
+        }
+
+        private void writeVector(Vector3f vector) throws IOException {
+            this.output.writeFloat(vector.x());
+            this.output.writeFloat(vector.y());
+            this.output.writeFloat(vector.z());
+        }
+
+        private void writeModels(GeometryModelData[] models) throws IOException {
+            this.output.writeInt(models.length);
+            for (GeometryModelData model : models) {
+                GeometryModelData.Description description = model.description();
+                this.writeString(description.identifier());
+                this.output.writeFloat(description.visibleBoundsWidth());
+                this.output.writeFloat(description.visibleBoundsHeight());
+                this.writeVector(description.visibleBoundsOffset());
+                this.output.writeInt(description.textureWidth());
+                this.output.writeInt(description.textureHeight());
+                this.output.writeBoolean(description.preserveModelPose2588());
+                this.writeString(model.cape());
+
+                this.output.writeInt(model.bones().length);
+                for (GeometryModelData.Bone bone : model.bones()) {
+                    this.writeBone(bone);
+                }
+            }
+        }
+
+        private void writeBone(GeometryModelData.Bone bone) throws IOException {
+            this.writeString(bone.name());
+            this.output.writeBoolean(bone.reset2588());
+            this.output.writeBoolean(bone.neverRender2588());
+            this.writeString(bone.parent());
+            this.writeVector(bone.pivot());
+            this.writeVector(bone.rotation());
+            this.writeVector(bone.bindPoseRotation2588());
+            this.output.writeBoolean(bone.mirror());
+            this.output.writeFloat(bone.inflate());
+            this.output.writeBoolean(bone.debug());
+
+            this.output.writeInt(bone.cubes().length);
+            for (GeometryModelData.Cube cube : bone.cubes()) {
+                this.writeCube(cube);
+            }
+
+            this.output.writeInt(bone.locators().length);
+            for (GeometryModelData.Locator locator : bone.locators()) {
+                this.writeString(locator.identifier());
+                this.writeVector(locator.position());
+            }
+
+            this.writeString(getBindingSource(bone));
+
+            GeometryModelData.PolyMesh polyMesh = bone.polyMesh();
+            this.output.writeBoolean(polyMesh != null);
+            if (polyMesh != null) {
+                this.writePolyMesh(polyMesh);
+            }
+        }
+
+        private void writeCube(GeometryModelData.Cube cube) throws IOException {
+            this.writeVector(cube.origin());
+            this.writeVector(cube.size());
+            this.writeVector(cube.rotation());
+            this.writeVector(cube.pivot());
+            this.output.writeBoolean(cube.overrideInflate());
+            this.output.writeFloat(cube.inflate());
+            this.output.writeBoolean(cube.overrideMirror());
+            this.output.writeBoolean(cube.mirror());
+
+            GeometryModelData.CubeUV[] uvs = cube.uv();
+            this.output.writeByte(uvs.length);
+            for (GeometryModelData.CubeUV uv : uvs) {
+                this.output.writeBoolean(uv != null);
+                if (uv != null) {
+                    this.output.writeFloat(uv.u());
+                    this.output.writeFloat(uv.v());
+                    this.output.writeFloat(uv.uSize());
+                    this.output.writeFloat(uv.vSize());
+                    this.output.writeByte(uv.rotation().ordinal());
+                    this.writeString(uv.materialInstance());
+                }
+            }
+        }
+
+        private void writePolyMesh(GeometryModelData.PolyMesh polyMesh) throws IOException {
+            this.output.writeBoolean(polyMesh.normalizedUvs());
+            this.output.writeByte(polyMesh.polyType().ordinal());
+
+            this.output.writeInt(polyMesh.positions().length);
+            for (Vector3f position : polyMesh.positions()) {
+                this.writeVector(position);
+            }
+            this.output.writeInt(polyMesh.normals().length);
+            for (Vector3f normal : polyMesh.normals()) {
+                this.writeVector(normal);
+            }
+            this.output.writeInt(polyMesh.uvs().length);
+            for (Vector2f uv : polyMesh.uvs()) {
+                this.output.writeFloat(uv.x());
+                this.output.writeFloat(uv.y());
+            }
+
+            this.output.writeInt(polyMesh.polys().length);
+            for (GeometryModelData.Polygon poly : polyMesh.polys()) {
+                this.output.writeByte(poly.positions().length);
+                for (int i = 0; i < poly.positions().length; i++) {
+                    this.output.writeInt(poly.positions()[i]);
+                    this.output.writeInt(poly.normals()[i]);
+                    this.output.writeInt(poly.uvs()[i]);
+                }
+            }
+        }
+    }
+
+    private record Reader(ByteBuffer data, String[] strings) {
+
+        private @Nullable String readString() throws IOException {
+            int index = this.data.getInt();
+            if (index == NULL_STRING) {
+                return null;
+            }
+            if (index < 0 || index >= this.strings.length) {
+                throw new IOException("Invalid string index: " + index);
+            }
+            return this.strings[index];
+        }
+
+        private String readRequiredString() throws IOException {
+            String string = this.readString();
+            if (string == null) {
+                throw new IOException("Expected a string");
+            }
+            return string;
+        }
+
+        private Vector3f readVector() {
+            return new Vector3f(this.data.getFloat(), this.data.getFloat(), this.data.getFloat());
+        }
+
+        private boolean readBoolean() {
+            return this.data.get() != 0;
+        }
+
+        private <T extends Enum<T>> T readEnum(T[] values) throws IOException {
+            int ordinal = this.data.get();
+            if (ordinal < 0 || ordinal >= values.length) {
+                throw new IOException("Invalid " + values.getClass().getComponentType().getSimpleName() + ": " + ordinal);
+            }
+            return values[ordinal];
+        }
+
+        private GeometryModelData[] readModels() throws IOException {
+            GeometryModelData[] models = new GeometryModelData[readCount(this.data)];
+            for (int i = 0; i < models.length; i++) {
+                String identifier = this.readRequiredString();
+                float visibleBoundsWidth = this.data.getFloat();
+                float visibleBoundsHeight = this.data.getFloat();
+                Vector3f visibleBoundsOffset = this.readVector();
+                int textureWidth = this.data.getInt();
+                int textureHeight = this.data.getInt();
+                boolean preserveModelPose2588 = this.readBoolean();
+                GeometryModelData.Description description = new GeometryModelData.Description(identifier, visibleBoundsWidth, visibleBoundsHeight, visibleBoundsOffset, textureWidth, textureHeight, preserveModelPose2588);
+                String cape = this.readString();
+
+                GeometryModelData.Bone[] bones = new GeometryModelData.Bone[readCount(this.data)];
+                for (int j = 0; j < bones.length; j++) {
+                    bones[j] = this.readBone();
+                }
+                models[i] = new GeometryModelData(description, cape, bones);
+            }
+            return models;
+        }
+
+        private GeometryModelData.Bone readBone() throws IOException {
+            String name = this.readRequiredString();
+            boolean reset2588 = this.readBoolean();
+            boolean neverRender2588 = this.readBoolean();
+            String parent = this.readString();
+            Vector3f pivot = this.readVector();
+            Vector3f rotation = this.readVector();
+            Vector3f bindPoseRotation2588 = this.readVector();
+            boolean mirror = this.readBoolean();
+            float inflate = this.data.getFloat();
+            boolean debug = this.readBoolean();
+
+            GeometryModelData.Cube[] cubes = new GeometryModelData.Cube[readCount(this.data)];
+            for (int i = 0; i < cubes.length; i++) {
+                cubes[i] = this.readCube();
+            }
+
+            GeometryModelData.Locator[] locators = new GeometryModelData.Locator[readCount(this.data)];
+            for (int i = 0; i < locators.length; i++) {
+                locators[i] = new GeometryModelData.Locator(this.readRequiredString(), this.readVector());
+            }
+
+            String bindingSource = this.readString();
+            MolangExpression binding = null;
+            if (bindingSource != null) {
+                try {
+                    binding = new BindingExpression(PinwheelMolangCompiler.get().compile(bindingSource), bindingSource);
+                } catch (MolangException e) {
+                    throw new IOException("Failed to compile binding for bone " + name, e);
+                }
+            }
+
+            GeometryModelData.PolyMesh polyMesh = this.readBoolean() ? this.readPolyMesh() : null;
+            return new GeometryModelData.Bone(name, reset2588, neverRender2588, parent, pivot, rotation, bindPoseRotation2588, mirror, inflate, debug, cubes, locators, binding, polyMesh);
+        }
+
+        private GeometryModelData.Cube readCube() throws IOException {
+            Vector3f origin = this.readVector();
+            Vector3f size = this.readVector();
+            Vector3f rotation = this.readVector();
+            Vector3f pivot = this.readVector();
+            boolean overrideInflate = this.readBoolean();
+            float inflate = this.data.getFloat();
+            boolean overrideMirror = this.readBoolean();
+            boolean mirror = this.readBoolean();
+
+            GeometryModelData.CubeUV[] uvs = new GeometryModelData.CubeUV[this.data.get()];
+            for (int i = 0; i < uvs.length; i++) {
+                if (this.readBoolean()) {
+                    float u = this.data.getFloat();
+                    float v = this.data.getFloat();
+                    float uSize = this.data.getFloat();
+                    float vSize = this.data.getFloat();
+                    GeometryModelData.CubeUVRotation uvRotation = this.readEnum(GeometryModelData.CubeUVRotation.values());
+                    uvs[i] = new GeometryModelData.CubeUV(u, v, uSize, vSize, uvRotation, this.readRequiredString());
+                }
+            }
+            return new GeometryModelData.Cube(origin, size, rotation, pivot, overrideInflate, inflate, overrideMirror, mirror, uvs);
+        }
+
+        private GeometryModelData.PolyMesh readPolyMesh() throws IOException {
+            boolean normalizedUvs = this.readBoolean();
+            GeometryModelData.PolyType polyType = this.readEnum(GeometryModelData.PolyType.values());
+
+            Vector3f[] positions = new Vector3f[readCount(this.data)];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = this.readVector();
+            }
+            Vector3f[] normals = new Vector3f[readCount(this.data)];
+            for (int i = 0; i < normals.length; i++) {
+                normals[i] = this.readVector();
+            }
+            Vector2f[] uvs = new Vector2f[readCount(this.data)];
+            for (int i = 0; i < uvs.length; i++) {
+                uvs[i] = new Vector2f(this.data.getFloat(), this.data.getFloat());
+            }
+
+            GeometryModelData.Polygon[] polys = new GeometryModelData.Polygon[readCount(this.data)];
+            for (int i = 0; i < polys.length; i++) {
+                int vertices = this.data.get();
+                if (vertices != polyType.getVertices()) {
+                    throw new IOException("Expected " + polyType.getVertices() + " vertices, was " + vertices);
+                }
+
+                int[] polyPositions = new int[vertices];
+                int[] polyNormals = new int[vertices];
+                int[] polyUvs = new int[vertices];
+                for (int j = 0; j < vertices; j++) {
+                    polyPositions[j] = this.data.getInt();
+                    polyNormals[j] = this.data.getInt();
+                    polyUvs[j] = this.data.getInt();
+                }
+                polys[i] = new GeometryModelData.Polygon(polyPositions, polyNormals, polyUvs);
+            }
+            return new GeometryModelData.PolyMesh(normalizedUvs, positions, normals, uvs, polys, polyType);
+        }
+    }
+}
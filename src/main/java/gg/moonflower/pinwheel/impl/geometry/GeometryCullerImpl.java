@@ -0,0 +1,129 @@
+package gg.moonflower.pinwheel.impl.geometry;
+
+import gg.moonflower.pinwheel.api.geometry.GeometryCuller;
+import gg.moonflower.pinwheel.api.geometry.GeometryTree;
+import gg.moonflower.pinwheel.api.geometry.bone.BoneBounds;
+import org.jetbrains.annotations.ApiStatus;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+import java.util.Arrays;
+
+/**
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public class GeometryCullerImpl implements GeometryCuller {
+
+    private final GeometryTree tree;
+    private final BoneBounds[] bounds;
+    private final Matrix4f[] matrices;
+    private final boolean[] hidden;
+    private final boolean[] boneVisible;
+    private final boolean[] subtreeVisible;
+    private final Vector3f min;
+    private final Vector3f max;
+    private final Vector3f center;
+    private boolean modelVisible;
+
+    public GeometryCullerImpl(GeometryTree tree) {
+        int boneCount = tree.getBoneCount();
+        this.tree = tree;
+        this.bounds = new BoneBounds[boneCount];
+        this.matrices = new Matrix4f[boneCount];
+        for (int i = 0; i < boneCount; i++) {
+            this.bounds[i] = tree.getBounds(i);
+            this.matrices[i] = new Matrix4f();
+        }
+        this.hidden = new boolean[boneCount];
+        this.boneVisible = new boolean[boneCount];
+        this.subtreeVisible = new boolean[boneCount];
+        this.min = new Vector3f();
+        this.max = new Vector3f();
+        this.center = new Vector3f();
+        Arrays.fill(this.boneVisible, true);
+        Arrays.fill(this.subtreeVisible, true);
+        this.modelVisible = true;
+    }
+
+    @Override
+    public boolean cull(FrustumIntersection frustum) {
+        GeometryTree tree = this.tree;
+        int boneCount = this.bounds.length;
+        tree.computeWorldMatrices(this.matrices);
+
+        for (int i = 0; i < boneCount; i++) {
+            int parent = tree.getParentIndex(i);
+            this.hidden[i] = !tree.getBone(i).isVisible() || (parent != -1 && this.hidden[parent]);
+            this.subtreeVisible[i] = false;
+        }
+
+        // Children always come after their parents, so every child has been tested once the loop reaches its parent
+        boolean modelVisible = false;
+        for (int i = boneCount - 1; i >= 0; i--) {
+            boolean visible = !this.hidden[i] && this.test(frustum, this.bounds[i], this.matrices[i]);
+            this.boneVisible[i] = visible;
+            this.subtreeVisible[i] |= visible;
+
+            int parent = tree.getParentIndex(i);
+            if (parent != -1) {
+                this.subtreeVisible[parent] |= this.subtreeVisible[i];
+            } else {
+                modelVisible |= this.subtreeVisible[i];
+            }
+        }
+
+        this.modelVisible = modelVisible;
+        return modelVisible;
+    }
+
+    private boolean test(FrustumIntersection frustum, BoneBounds bounds, Matrix4f matrix) {
+        if (bounds.isEmpty()) {
+            return false;
+        }
+
+        // The sphere is cheaper to test, so only test the box when the sphere is partially inside
+        matrix.transformPosition(bounds.center(), this.center);
+        int result = frustum.intersectSphere(this.center.x(), this.center.y(), this.center.z(), bounds.radius() * getMaxScale(matrix));
+        if (result == FrustumIntersection.INSIDE) {
+            return true;
+        }
+        if (result != FrustumIntersection.INTERSECT) {
+            return false;
+        }
+
+        Vector3fc min = bounds.min();
+        Vector3fc max = bounds.max();
+        matrix.transformAab(min.x(), min.y(), min.z(), max.x(), max.y(), max.z(), this.min, this.max);
+        return frustum.testAab(this.min.x(), this.min.y(), this.min.z(), this.max.x(), this.max.y(), this.max.z());
+    }
+
+    private static float getMaxScale(Matrix4f matrix) {
+        float x = matrix.m00() * matrix.m00() + matrix.m01() * matrix.m01() + matrix.m02() * matrix.m02();
+        float y = matrix.m10() * matrix.m10() + matrix.m11() * matrix.m11() + matrix.m12() * matrix.m12();
+        float z = matrix.m20() * matrix.m20() + matrix.m21() * matrix.m21() + matrix.m22() * matrix.m22();
+        return (float) Math.sqrt(Math.max(x, Math.max(y, z)));
+    }
+
+    @Override
+    public boolean isModelVisible() {
+        return this.modelVisible;
+    }
+
+    @Override
+    public boolean isBoneVisible(int index) {
+        return this.boneVisible[index];
+    }
+
+    @Override
+    public boolean isSubtreeVisible(int index) {
+        return this.subtreeVisible[index];
+    }
+
+    @Override
+    public GeometryTree getTree() {
+        return this.tree;
+    }
+}
@@ -1,8 +1,12 @@
 package gg.moonflower.pinwheel.impl.geometry;
 
 import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
 import com.mojang.serialization.DataResult;
 import com.mojang.serialization.JsonOps;
 import gg.moonflower.pinwheel.api.geometry.GeometryModelData;
@@ -10,12 +14,41 @@ import gg.moonflower.pinwheel.api.texture.TextureTable;
 import gg.moonflower.pinwheel.impl.PinwheelGsonHelper;
 import org.jetbrains.annotations.ApiStatus;
 
+import java.io.IOException;
+import java.io.Reader;
+
 /**
  * @author Ocelot
  */
 @ApiStatus.Internal
 public final class GeometryModelParserImpl {
 
+    public static GeometryModelData[] parseModel(Reader reader) throws JsonParseException {
+        try {
+            JsonReader jsonReader = new JsonReader(reader);
+            GeometryModelData[] data = parseModel(jsonReader);
+            if (jsonReader.peek() != JsonToken.END_DOCUMENT) {
+                throw new JsonSyntaxException("Did not consume the entire document.");
+            }
+            return data;
+        } catch (MalformedJsonException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    public static GeometryModelData[] parseModel(JsonReader reader) throws JsonParseException {
+        // Match the leniency of JsonParser so both paths accept the same files
+        boolean lenient = reader.isLenient();
+        reader.setLenient(true);
+        try {
+            return GeometryStreamParser.parseModel(reader);
+        } finally {
+            reader.setLenient(lenient);
+        }
+    }
+
     public static GeometryModelData[] parseModel(JsonElement json) throws JsonParseException {
         String formatVersion = PinwheelGsonHelper.getAsString(json.getAsJsonObject(), "format_version");
         return switch (formatVersion) {
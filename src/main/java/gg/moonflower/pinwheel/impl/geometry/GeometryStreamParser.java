@@ -0,0 +1,756 @@
+package gg.moonflower.pinwheel.impl.geometry;
+
+import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.pinwheel.api.FaceDirection;
+import gg.moonflower.pinwheel.api.JsonTupleParser;
+import gg.moonflower.pinwheel.api.geometry.GeometryModelData;
+import gg.moonflower.pinwheel.impl.PinwheelGsonHelper;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Reads geometry directly from JSON tokens without creating a {@link JsonElement} tree.
+ * Produces the same data as the tree parsers for every supported format version.
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class GeometryStreamParser {
+
+    private GeometryStreamParser() {
+    }
+
+    public static GeometryModelData[] parseModel(JsonReader reader) throws JsonParseException {
+        try {
+            return read(reader);
+        } catch (MalformedJsonException | NumberFormatException | IllegalStateException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    private static GeometryModelData[] read(JsonReader reader) throws IOException {
+        reader.beginObject();
+        if (!reader.hasNext()) {
+            throw new JsonSyntaxException("Missing format_version, expected to find a string");
+        }
+
+        String name = reader.nextName();
+        if (!"format_version".equals(name)) {
+            // The version decides how everything else is read, so buffer the rest of the file if it isn't first
+            JsonObject json = new JsonObject();
+            json.add(name, JsonParser.parseReader(reader));
+            while (reader.hasNext()) {
+                json.add(reader.nextName(), JsonParser.parseReader(reader));
+            }
+            reader.endObject();
+            return GeometryModelParserImpl.parseModel(json);
+        }
+
+        String formatVersion = readString(reader, "format_version");
+        Version version = switch (formatVersion) {
+            case "1.21.0" -> Version.V1_21_0;
+            case "1.16.0" -> Version.V1_16_0;
+            case "1.14.0", "1.19.30" -> Version.V1_14_0;
+            case "1.12.0" -> Version.V1_12_0;
+            case "1.8.0" -> Version.V1_8_0;
+            case "1.1.0" -> Version.V1_1_0;
+            default -> throw new JsonSyntaxException("Unsupported geometry version: " + formatVersion);
+        };
+
+        GeometryModelData[] data = version.isLegacy() ? readLegacy(reader, version) : readModels(reader, version);
+        reader.endObject();
+        return data;
+    }
+
+    private static GeometryModelData[] readModels(JsonReader reader, Version version) throws IOException {
+        GeometryModelData[] data = null;
+        while (reader.hasNext()) {
+            if (!"minecraft:geometry".equals(reader.nextName())) {
+                reader.skipValue();
+                continue;
+            }
+
+            List<GeometryModelData> models = new ArrayList<>();
+            beginArray(reader, "minecraft:geometry");
+            while (reader.hasNext()) {
+                models.add(readModel(reader, "minecraft:geometry[" + models.size() + "]", version));
+            }
+            reader.endArray();
+            data = models.toArray(new GeometryModelData[0]);
+        }
+
+        if (data == null) {
+            throw new JsonSyntaxException("Missing minecraft:geometry, expected to find a JsonArray");
+        }
+        return data;
+    }
+
+    private static GeometryModelData readModel(JsonReader reader, String name, Version version) throws IOException {
+        GeometryModelData.Description description = null;
+        String cape = null;
+        GeometryModelData.Bone[] bones = new GeometryModelData.Bone[0];
+
+        beginObject(reader, name);
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            switch (key) {
+                case "description" -> description = readDescription(reader);
+                case "cape" -> cape = readString(reader, key);
+                case "bones" -> bones = readBones(reader, version);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (description == null) {
+            throw new JsonSyntaxException("Missing description, expected to find a JsonObject");
+        }
+        return new GeometryModelData(description, cape, bones);
+    }
+
+    private static GeometryModelData.Description readDescription(JsonReader reader) throws IOException {
+        String identifier = null;
+        float visibleBoundsWidth = 0;
+        float visibleBoundsHeight = 0;
+        float[] visibleBoundsOffset = new float[3];
+        int textureWidth = 256;
+        int textureHeight = 256;
+        boolean preserveModelPose2588 = false;
+
+        beginObject(reader, "description");
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            switch (key) {
+                case "identifier" -> identifier = readString(reader, key);
+                case "visible_bounds_width" -> visibleBoundsWidth = readFloat(reader, key);
+                case "visible_bounds_height" -> visibleBoundsHeight = readFloat(reader, key);
+                case "visible_bounds_offset" -> visibleBoundsOffset = readFloats(reader, key, 3);
+                case "texture_width" -> textureWidth = readInt(reader, key);
+                case "texture_height" -> textureHeight = readInt(reader, key);
+                case "preserve_model_pose2588" -> preserveModelPose2588 = readBoolean(reader, key);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (identifier == null) {
+            throw new JsonSyntaxException("Missing identifier, expected to find a string");
+        }
+        return createDescription(identifier, visibleBoundsWidth, visibleBoundsHeight, visibleBoundsOffset, textureWidth, textureHeight, preserveModelPose2588);
+    }
+
+    private static GeometryModelData[] readLegacy(JsonReader reader, Version version) throws IOException {
+        GeometryModelData data = null;
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (!name.startsWith("geometry.")) {
+                reader.skipValue();
+                continue;
+            }
+            if (data != null) {
+                throw new JsonSyntaxException("1.8.0 does not allow multiple geometry definitions per file.");
+            }
+
+            data = readLegacyModel(reader, name, version);
+        }
+        return data != null ? new GeometryModelData[]{data} : new GeometryModelData[0];
+    }
+
+    private static GeometryModelData readLegacyModel(JsonReader reader, String name, Version version) throws IOException {
+        float visibleBoundsWidth = 0;
+        float visibleBoundsHeight = 0;
+        float[] visibleBoundsOffset = new float[3];
+        int textureWidth = 256;
+        int textureHeight = 256;
+        boolean preserveModelPose2588 = false;
+        String cape = null;
+        GeometryModelData.Bone[] bones = new GeometryModelData.Bone[0];
+
+        String preserveModelPoseKey = version == Version.V1_1_0 ? "preserve_model_pose" : "preserve_model_pose2588";
+        beginObject(reader, name);
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            switch (key) {
+                case "visible_bounds_width" -> visibleBoundsWidth = readFloat(reader, key);
+                case "visible_bounds_height" -> visibleBoundsHeight = readFloat(reader, key);
+                case "visible_bounds_offset" -> visibleBoundsOffset = readFloats(reader, key, 3);
+                case "texturewidth" -> textureWidth = readInt(reader, key);
+                case "textureheight" -> textureHeight = readInt(reader, key);
+                case "cape" -> {
+                    if (version == Version.V1_1_0) {
+                        reader.skipValue();
+                    } else {
+                        cape = readString(reader, key);
+                    }
+                }
+                case "bones" -> bones = readBones(reader, version);
+                default -> {
+                    if (key.equals(preserveModelPoseKey)) {
+                        preserveModelPose2588 = readBoolean(reader, key);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+            }
+        }
+        reader.endObject();
+
+        GeometryModelData.Description description = createDescription(name.substring(9), visibleBoundsWidth, visibleBoundsHeight, visibleBoundsOffset, textureWidth, textureHeight, preserveModelPose2588);
+        return new GeometryModelData(description, cape, bones);
+    }
+
+    private static GeometryModelData.Description createDescription(String identifier, float visibleBoundsWidth, float visibleBoundsHeight, float[] visibleBoundsOffset, int textureWidth, int textureHeight, boolean preserveModelPose2588) {
+        if (textureWidth == 0) {
+            throw new JsonSyntaxException("Texture width must not be zero");
+        }
+        if (textureHeight == 0) {
+            throw new JsonSyntaxException("Texture height must not be zero");
+        }
+        return new GeometryModelData.Description(identifier, visibleBoundsWidth, visibleBoundsHeight, new Vector3f(visibleBoundsOffset[0], visibleBoundsOffset[1], visibleBoundsOffset[2]), textureWidth, textureHeight, preserveModelPose2588);
+    }
+
+    private static GeometryModelData.Bone[] readBones(JsonReader reader, Version version) throws IOException {
+        Set<String> usedNames = new HashSet<>();
+        List<GeometryModelData.Bone> bones = new ArrayList<>();
+        beginArray(reader, "bones");
+        while (reader.hasNext()) {
+            GeometryModelData.Bone bone = readBone(reader, "bones[" + bones.size() + "]", version);
+            if (!usedNames.add(bone.name())) {
+                throw new JsonSyntaxException("Duplicate bone: " + bone.name());
+            }
+            bones.add(bone);
+        }
+        reader.endArray();
+        return bones.toArray(new GeometryModelData.Bone[0]);
+    }
+
+    private static GeometryModelData.Bone readBone(JsonReader reader, String name, Version version) throws IOException {
+        String boneName = null;
+        boolean reset2588 = false;
+        boolean neverRender2588 = false;
+        String parent = null;
+        float[] pivot = new float[3];
+        float[] rotation = new float[3];
+        float[] bindPoseRotation2588 = new float[3];
+        boolean mirror = false;
+        float inflate = 0;
+        boolean debug = false;
+        GeometryModelData.Cube[] cubes = new GeometryModelData.Cube[0];
+        GeometryModelData.Locator[] locators = new GeometryModelData.Locator[0];
+        MolangExpression binding = null;
+        GeometryModelData.PolyMesh polyMesh = null;
+
+        String resetKey = version.isLegacy() ? "reset" : "reset2588";
+        String neverRenderKey = version.isLegacy() ? "neverrender" : "neverrender2588";
+        beginObject(reader, name);
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            switch (key) {
+                case "name" -> boneName = readString(reader, key);
+                case "parent" -> parent = readString(reader, key);
+                case "pivot" -> pivot = readFloats(reader, key, 3);
+                case "rotation" -> rotation = readFloats(reader, key, 3);
+                case "mirror" -> mirror = readBoolean(reader, key);
+                case "inflate" -> inflate = readFloat(reader, key);
+                case "debug" -> debug = readBoolean(reader, key);
+                case "cubes" -> cubes = readCubes(reader, version);
+                case "locators" -> locators = readLocators(reader);
+                case "bind_pose_rotation2588" -> {
+                    if (version == Version.V1_1_0) {
+                        reader.skipValue();
+                    } else {
+                        bindPoseRotation2588 = readFloats(reader, key, 3);
+                    }
+                }
+                case "binding" -> {
+                    if (version == Version.V1_16_0) {
+                        binding = Geometry1160Parser.parseBinding(JsonParser.parseReader(reader));
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                case "poly_mesh" -> {
+                    if (version == Version.V1_1_0) {
+                        reader.skipValue();
+                    } else {
+                        polyMesh = readPolyMesh(reader);
+                    }
+                }
+                default -> {
+                    if (key.equals(resetKey)) {
+                        reset2588 = readBoolean(reader, key);
+                    } else if (key.equals(neverRenderKey)) {
+                        neverRender2588 = readBoolean(reader, key);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+            }
+        }
+        reader.endObject();
+
+        if (boneName == null) {
+            throw new JsonSyntaxException("Missing name, expected to find a string");
+        }
+        return new GeometryModelData.Bone(boneName, reset2588, neverRender2588, parent, new Vector3f(pivot[0], pivot[1], pivot[2]), new Vector3f(rotation[0], rotation[1], rotation[2]), new Vector3f(bindPoseRotation2588[0], bindPoseRotation2588[1], bindPoseRotation2588[2]), mirror, inflate, debug, cubes, locators, binding, polyMesh);
+    }
+
+    private static GeometryModelData.Locator[] readLocators(JsonReader reader) throws IOException {
+        List<GeometryModelData.Locator> locators = new ArrayList<>();
+        beginObject(reader, "locators");
+        while (reader.hasNext()) {
+            String identifier = reader.nextName();
+            float[] position = readFloats(reader, identifier, 3);
+            locators.add(new GeometryModelData.Locator(identifier, new Vector3f(position[0], position[1], position[2])));
+        }
+        reader.endObject();
+        return locators.toArray(new GeometryModelData.Locator[0]);
+    }
+
+    private static GeometryModelData.Cube[] readCubes(JsonReader reader, Version version) throws IOException {
+        List<GeometryModelData.Cube> cubes = new ArrayList<>();
+        beginArray(reader, "cubes");
+        while (reader.hasNext()) {
+            cubes.add(readCube(reader, "cubes[" + cubes.size() + "]", version));
+        }
+        reader.endArray();
+        return cubes.toArray(new GeometryModelData.Cube[0]);
+    }
+
+    private static GeometryModelData.Cube readCube(JsonReader reader, String name, Version version) throws IOException {
+        float[] origin = new float[3];
+        float[] size = new float[3];
+        float[] rotation = new float[3];
+        float[] pivot = null;
+        boolean overrideInflate = false;
+        float inflate = 0;
+        boolean overrideMirror = false;
+        boolean mirror = false;
+        float[] boxUV = null;
+        float[] faceUVOffset = null;
+        FaceUV[] faceUVs = null;
+
+        beginObject(reader, name);
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            switch (key) {
+                case "origin" -> origin = readFloats(reader, key, 3);
+                case "size" -> size = readFloats(reader, key, 3);
+                case "rotation" -> rotation = readFloats(reader, key, 3);
+                case "pivot" -> pivot = readFloats(reader, key, 3);
+                case "inflate" -> {
+                    overrideInflate = true;
+                    inflate = readFloat(reader, key);
+                }
+                case "mirror" -> {
+                    overrideMirror = true;
+                    mirror = readBoolean(reader, key);
+                }
+                case "uv" -> {
+                    boxUV = null;
+                    faceUVOffset = null;
+                    faceUVs = null;
+
+                    JsonToken token = reader.peek();
+                    if (version == Version.V1_1_0 || (token == JsonToken.BEGIN_ARRAY && version != Version.V1_14_0)) {
+                        boxUV = readFloats(reader, key, 2);
+                    } else if (token == JsonToken.BEGIN_OBJECT) {
+                        faceUVOffset = new float[2];
+                        faceUVs = new FaceUV[6];
+                        readFaceUVs(reader, version, faceUVOffset, faceUVs);
+                    } else {
+                        boolean allowArray = version == Version.V1_8_0 || version == Version.V1_12_0 || version == Version.V1_16_0;
+                        throw unexpected(reader, "Expected uv to be a " + (allowArray ? "JsonArray or JsonObject" : "JsonObject") + ", was ");
+                    }
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (pivot == null) {
+            pivot = new float[]{origin[0] + size[0] / 2F, origin[1] + size[1] / 2F, origin[2] + size[2] / 2F};
+        }
+
+        GeometryModelData.CubeUV[] uv;
+        if (boxUV != null) {
+            uv = Geometry110Parser.createBoxUV(boxUV, size);
+        } else if (faceUVs != null) {
+            boolean offset = version == Version.V1_14_0 || version == Version.V1_21_0;
+            uv = new GeometryModelData.CubeUV[6];
+            for (int i = 0; i < faceUVs.length; i++) {
+                FaceUV face = faceUVs[i];
+                if (face == null) {
+                    continue;
+                }
+
+                float u = offset ? faceUVOffset[0] / size[0] + face.uv[0] : face.uv[0];
+                float v = offset ? faceUVOffset[1] / size[1] + face.uv[1] : face.uv[1];
+                uv[i] = new GeometryModelData.CubeUV(u, v, face.uvSize[0], face.uvSize[1], face.rotation, face.material);
+            }
+        } else {
+            uv = new GeometryModelData.CubeUV[6];
+        }
+
+        return new GeometryModelData.Cube(new Vector3f(origin[0], origin[1], origin[2]), new Vector3f(size[0], size[1], size[2]), new Vector3f(rotation[0], rotation[1], rotation[2]), new Vector3f(pivot[0], pivot[1], pivot[2]), overrideInflate, inflate, overrideMirror, mirror, uv);
+    }
+
+    private static void readFaceUVs(JsonReader reader, Version version, float[] offset, FaceUV[] faces) throws IOException {
+        boolean readOffset = version == Version.V1_14_0 || version == Version.V1_21_0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (readOffset && "uv".equals(key)) {
+                float[] uv = readFloats(reader, key, 2);
+                offset[0] = uv[0];
+                offset[1] = uv[1];
+                continue;
+            }
+
+            FaceDirection direction = null;
+            for (FaceDirection value : FaceDirection.values()) {
+                if (value.getName().equals(key)) {
+                    direction = value;
+                    break;
+                }
+            }
+
+            if (direction == null) {
+                reader.skipValue();
+                continue;
+            }
+
+            faces[direction.get3DDataValue()] = readFaceUV(reader, key, version);
+        }
+        reader.endObject();
+    }
+
+    private static FaceUV readFaceUV(JsonReader reader, String name, Version version) throws IOException {
+        float[] uv = null;
+        float[] uvSize = new float[2];
+        String material = "texture";
+        int rotation = 0;
+
+        beginObject(reader, name);
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            switch (key) {
+                case "uv" -> uv = readFloats(reader, key, 2);
+                case "uv_size" -> uvSize = readFloats(reader, key, 2);
+                case "material_instance" -> material = readString(reader, key);
+                case "uv_rotation" -> {
+                    if (version == Version.V1_21_0) {
+                        rotation = readInt(reader, key);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (uv == null) {
+            throw new JsonSyntaxException("Missing uv, expected to find a JsonArray or JsonPrimitive");
+        }
+        return new FaceUV(uv, uvSize, material, Geometry1210Parser.parseUVRotation(rotation));
+    }
+
+    private static @Nullable GeometryModelData.PolyMesh readPolyMesh(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+
+        boolean normalizedUvs = false;
+        Vector3f[] positions = new Vector3f[0];
+        Vector3f[] normals = new Vector3f[0];
+        Vector2f[] uvs = new Vector2f[0];
+        GeometryModelData.Polygon[] polys = null;
+        GeometryModelData.PolyType polyType = null;
+
+        beginObject(reader, "poly_mesh");
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            switch (key) {
+                case "normalized_uvs" -> normalizedUvs = readBoolean(reader, key);
+                case "positions" -> positions = readVectors(reader, key);
+                case "normals" -> normals = readVectors(reader, key);
+                case "uvs" -> {
+                    float[] values = readPackedFloats(reader, key, 2);
+                    uvs = new Vector2f[values.length / 2];
+                    for (int i = 0; i < uvs.length; i++) {
+                        uvs[i] = new Vector2f(values[i * 2], values[i * 2 + 1]);
+                    }
+                }
+                case "polys" -> {
+                    JsonToken token = reader.peek();
+                    if (token == JsonToken.BEGIN_ARRAY) {
+                        polys = readPolygons(reader);
+                        polyType = null;
+                    } else if (token == JsonToken.STRING) {
+                        polys = new GeometryModelData.Polygon[0];
+                        polyType = readPolyType(reader.nextString());
+                    } else {
+                        throw unexpected(reader, "Expected polys to be a JsonArray or String, was ");
+                    }
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (polys == null) {
+            throw new JsonSyntaxException("Missing polys, expected to find a JsonArray or String");
+        }
+        if (polyType == null) {
+            polyType = polys.length == 0 || polys[0].positions().length == 3 ? GeometryModelData.PolyType.TRIANGLES : GeometryModelData.PolyType.QUADS;
+        }
+
+        for (GeometryModelData.Polygon poly : polys) {
+            if (poly.positions().length != polyType.getVertices()) {
+                throw new JsonSyntaxException("Expected positions to be of length " + polyType.getVertices() + ". Was " + poly.positions().length);
+            }
+        }
+
+        return new GeometryModelData.PolyMesh(normalizedUvs, positions, normals, uvs, polys, polyType);
+    }
+
+    private static GeometryModelData.PolyType readPolyType(String name) {
+        for (GeometryModelData.PolyType polyType : GeometryModelData.PolyType.values()) {
+            if (polyType.getName().equalsIgnoreCase(name)) {
+                return polyType;
+            }
+        }
+        throw new JsonSyntaxException("Unsupported poly type: " + name + ". Supported poly types: " + Arrays.toString(Arrays.stream(GeometryModelData.PolyType.values()).map(GeometryModelData.PolyType::getName).toArray(String[]::new)));
+    }
+
+    private static Vector3f[] readVectors(JsonReader reader, String name) throws IOException {
+        float[] values = readPackedFloats(reader, name, 3);
+        Vector3f[] vectors = new Vector3f[values.length / 3];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = new Vector3f(values[i * 3], values[i * 3 + 1], values[i * 3 + 2]);
+        }
+        return vectors;
+    }
+
+    /**
+     * Reads an array of fixed size float arrays into a single packed array.
+     */
+    private static float[] readPackedFloats(JsonReader reader, String name, int size) throws IOException {
+        float[] values = new float[size * 16];
+        int count = 0;
+
+        beginArray(reader, name);
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+                throw unexpected(reader, "Expected " + name + " to be a JsonArray, was ");
+            }
+            if (count + size > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+
+            int elements = 0;
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (elements < size) {
+                    values[count + elements] = Float.parseFloat(reader.nextString());
+                } else {
+                    reader.skipValue();
+                }
+                elements++;
+            }
+            reader.endArray();
+
+            if (elements != size) {
+                throw new JsonParseException("Expected " + size + " " + name + " values, was " + elements);
+            }
+            count += size;
+        }
+        reader.endArray();
+        return Arrays.copyOf(values, count);
+    }
+
+    private static GeometryModelData.Polygon[] readPolygons(JsonReader reader) throws IOException {
+        List<GeometryModelData.Polygon> polygons = new ArrayList<>();
+        int[] vertex = new int[3];
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            int[] positions = new int[4];
+            int[] normals = new int[4];
+            int[] uvs = new int[4];
+            int vertices = 0;
+
+            reader.beginArray();
+            while (reader.hasNext()) {
+                readVertex(reader, vertex);
+                if (vertices < 4) {
+                    positions[vertices] = vertex[0];
+                    normals[vertices] = vertex[1];
+                    uvs[vertices] = vertex[2];
+                }
+                vertices++;
+            }
+            reader.endArray();
+
+            if (vertices != 3 && vertices != 4) {
+                throw new JsonSyntaxException("Expected 3 or 4 index values, was " + vertices);
+            }
+            if (vertices == 3) {
+                positions = Arrays.copyOf(positions, 3);
+                normals = Arrays.copyOf(normals, 3);
+                uvs = Arrays.copyOf(uvs, 3);
+            }
+            polygons.add(new GeometryModelData.Polygon(positions, normals, uvs));
+        }
+        reader.endArray();
+        return polygons.toArray(new GeometryModelData.Polygon[0]);
+    }
+
+    private static void readVertex(JsonReader reader, int[] vertex) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            throw unexpected(reader, "Expected vertex to be a JsonArray, was ");
+        }
+
+        int count = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (count < vertex.length) {
+                JsonToken token = reader.peek();
+                vertex[count] = token == JsonToken.NUMBER ? parseInt(reader.nextString()) : Integer.parseInt(reader.nextString());
+            } else {
+                reader.skipValue();
+            }
+            count++;
+        }
+        reader.endArray();
+
+        if (count != 3) {
+            throw new JsonParseException("Expected 3 vertex values, was " + count);
+        }
+    }
+
+    private static void beginObject(JsonReader reader, String name) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            throw unexpected(reader, "Expected " + name + " to be a JsonObject, was ");
+        }
+        reader.beginObject();
+    }
+
+    private static void beginArray(JsonReader reader, String name) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            throw unexpected(reader, "Expected " + name + " to be a JsonArray, was ");
+        }
+        reader.beginArray();
+    }
+
+    private static String readString(JsonReader reader, String name) throws IOException {
+        return switch (reader.peek()) {
+            case STRING, NUMBER -> reader.nextString();
+            case BOOLEAN -> Boolean.toString(reader.nextBoolean());
+            default -> throw unexpected(reader, "Expected " + name + " to be a string, was ");
+        };
+    }
+
+    private static boolean readBoolean(JsonReader reader, String name) throws IOException {
+        return switch (reader.peek()) {
+            case BOOLEAN -> reader.nextBoolean();
+            case STRING, NUMBER -> Boolean.parseBoolean(reader.nextString());
+            default -> throw unexpected(reader, "Expected " + name + " to be a Boolean, was ");
+        };
+    }
+
+    private static float readFloat(JsonReader reader, String name) throws IOException {
+        if (reader.peek() != JsonToken.NUMBER) {
+            throw unexpected(reader, "Expected " + name + " to be a Float, was ");
+        }
+        return Float.parseFloat(reader.nextString());
+    }
+
+    private static int readInt(JsonReader reader, String name) throws IOException {
+        if (reader.peek() != JsonToken.NUMBER) {
+            throw unexpected(reader, "Expected " + name + " to be a Int, was ");
+        }
+        return parseInt(reader.nextString());
+    }
+
+    /**
+     * Reads a tuple the same way as {@link JsonTupleParser#getFloat(JsonObject, String, int, java.util.function.Supplier)}.
+     */
+    private static float[] readFloats(JsonReader reader, String name, int length) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING) {
+            throw new JsonSyntaxException("Molang expressions are not supported");
+        }
+        if (token == JsonToken.NUMBER) {
+            float[] values = new float[length];
+            Arrays.fill(values, Float.parseFloat(reader.nextString()));
+            return values;
+        }
+        if (token != JsonToken.BEGIN_ARRAY) {
+            throw unexpected(reader, "Expected " + name + " to be a JsonArray or JsonPrimitive, was ");
+        }
+
+        float[] values = new float[length];
+        int count = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (count < length) {
+                values[count] = readFloat(reader, name + "[" + count + "]");
+            } else {
+                reader.skipValue();
+            }
+            count++;
+        }
+        reader.endArray();
+
+        if (count != 1 && count != length) {
+            throw new JsonParseException("Expected 1 or " + length + " " + name + " values, was " + count);
+        }
+        if (count == 1) {
+            Arrays.fill(values, values[0]);
+        }
+        return values;
+    }
+
+    // Matches how Gson converts lazily parsed numbers to integers
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            try {
+                return (int) Long.parseLong(value);
+            } catch (NumberFormatException e1) {
+                return new BigDecimal(value).intValue();
+            }
+        }
+    }
+
+    private static JsonSyntaxException unexpected(JsonReader reader, String message) throws IOException {
+        return new JsonSyntaxException(message + PinwheelGsonHelper.getType(JsonParser.parseReader(reader)));
+    }
+
+    private record FaceUV(float[] uv, float[] uvSize, String material, GeometryModelData.CubeUVRotation rotation) {
+    }
+
+    private enum Version {
+        V1_1_0, V1_8_0, V1_12_0, V1_14_0, V1_16_0, V1_21_0;
+
+        boolean isLegacy() {
+            return this == V1_1_0 || this == V1_8_0;
+        }
+    }
+}
@@ -1,15 +1,22 @@
 package gg.moonflower.pinwheel.impl.geometry;
 
 import gg.moonflower.pinwheel.api.geometry.GeometryCompileException;
+import gg.moonflower.pinwheel.api.geometry.GeometryCompileOptions;
 import gg.moonflower.pinwheel.api.geometry.GeometryModelData;
 import gg.moonflower.pinwheel.api.geometry.GeometryTree;
+import gg.moonflower.pinwheel.api.geometry.IndexedGeometry;
 import gg.moonflower.pinwheel.api.geometry.bone.AnimatedBone;
+import gg.moonflower.pinwheel.api.geometry.bone.BoneBounds;
 import gg.moonflower.pinwheel.api.transform.LocatorTransformation;
+import gg.moonflower.pinwheel.impl.geometry.bone.AnimatedBoneImpl;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
 
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 
 /**
  * @author Ocelot
@@ -17,68 +24,132 @@ import java.util.stream.Collectors;
 @ApiStatus.Internal
 public class GeometryTreeImpl implements GeometryTree {
 
-    private static final String PARENT = "parent.";
+    private final CompiledGeometryImpl geometry;
+    private final AnimatedBoneImpl[] boneArray;
+    private final Matrix4f[] worldMatrices;
+    private final boolean[] worldDirty;
+    private final int[] worldVersions;
+    private boolean worldValid;
+    private final Collection<AnimatedBone> bones;
+    private final Collection<AnimatedBone> rootBones;
+    private final LocatorTransformation[] locatorTransformations;
+
+    public GeometryTreeImpl(int textureWidth, int textureHeight, GeometryModelData.Bone[] bones, GeometryCompileOptions options) throws GeometryCompileException {
+        this(new CompiledGeometryImpl(textureWidth, textureHeight, bones, options));
+    }
 
-    private final Map<String, LocatorTransformation> locatorTransformations;
-    private final GeometryModelData.Locator[] locators;
-    private final Map<String, AnimatedBone> bones;
-    private final Set<AnimatedBone> rootBones;
+    public GeometryTreeImpl(CompiledGeometryImpl geometry) {
+        this.geometry = geometry;
 
-    public GeometryTreeImpl(int textureWidth, int textureHeight, GeometryModelData.Bone[] bones) throws GeometryCompileException {
-        this.locatorTransformations = Arrays.stream(bones).flatMap(bone -> Arrays.stream(bone.locators()))
-                .map(LocatorTransformation::new)
-                .collect(Collectors.toMap(t -> t.locator().identifier(), t -> t));
-        this.locators = Arrays.stream(bones).flatMap(bone -> Arrays.stream(bone.locators())).toArray(GeometryModelData.Locator[]::new);
+        GeometryModelData.Locator[] locators = geometry.getLocators();
+        this.locatorTransformations = new LocatorTransformation[locators.length];
+        for (int i = 0; i < locators.length; i++) {
+            this.locatorTransformations[i] = new LocatorTransformation(locators[i]);
+        }
 
-        if (bones.length == 0) {
-            this.bones = Collections.emptyMap();
-            this.rootBones = Collections.emptySet();
-            return;
+        // Children always come after their parents, so create bones in reverse to have all children ready
+        this.boneArray = new AnimatedBoneImpl[geometry.getBoneCount()];
+        for (int i = this.boneArray.length - 1; i >= 0; i--) {
+            int[] children = geometry.getChildren(i);
+            AnimatedBone[] childBones = new AnimatedBone[children.length];
+            for (int j = 0; j < children.length; j++) {
+                childBones[j] = this.boneArray[children[j]];
+            }
+            this.boneArray[i] = new AnimatedBoneImpl(geometry.getCompiledBone(i), Arrays.asList(childBones));
         }
 
-        Map<String, AnimatedBone.Builder> boneBuilders = Arrays.stream(bones).collect(Collectors.toMap(GeometryModelData.Bone::name, AnimatedBone::bone));
-        Set<String> rootBones = new HashSet<>();
+        int[] roots = geometry.getRoots();
+        AnimatedBone[] rootBones = new AnimatedBone[roots.length];
+        for (int i = 0; i < roots.length; i++) {
+            rootBones[i] = this.boneArray[roots[i]];
+        }
+        this.bones = Collections.unmodifiableList(Arrays.asList(this.boneArray));
+        this.worldMatrices = new Matrix4f[this.boneArray.length];
+        for (int i = 0; i < this.worldMatrices.length; i++) {
+            this.worldMatrices[i] = new Matrix4f();
+        }
+        this.worldDirty = new boolean[this.boneArray.length];
+        this.worldVersions = new int[this.boneArray.length];
+        this.worldValid = false;
+        this.rootBones = Collections.unmodifiableList(Arrays.asList(rootBones));
+    }
 
-        // Figure out what bones are the children of what other bones
-        List<GeometryModelData.Bone> unprocessedBones = new ArrayList<>(Arrays.asList(bones));
-        while (!unprocessedBones.isEmpty()) {
-            GeometryModelData.Bone bone = unprocessedBones.remove(0);
-            String name = bone.name();
-            String parent = bone.parent();
+    /**
+     * @return The compiled geometry this tree shares polygons with
+     */
+    public CompiledGeometryImpl getGeometry() {
+        return this.geometry;
+    }
 
-            if (parent == null || parent.startsWith(PARENT)) {
-                // There is no parent, so it must be a root node
-                rootBones.add(name);
-                continue;
-            }
+    @Override
+    public @Nullable AnimatedBone getBone(String name) {
+        int index = this.geometry.getBoneIndex(name);
+        return index != -1 ? this.boneArray[index] : null;
+    }
 
-            if (!boneBuilders.containsKey(parent)) {
-                throw new GeometryCompileException("Unknown bone: " + parent);
-            }
+    @Override
+    public int getBoneIndex(String name) {
+        return this.geometry.getBoneIndex(name);
+    }
 
-            boneBuilders.get(parent).addChild(boneBuilders.get(name));
+    @Override
+    public AnimatedBone getBone(int index) {
+        return this.boneArray[index];
+    }
+
+    @Override
+    public int getBoneCount() {
+        return this.boneArray.length;
+    }
+
+    @Override
+    public int getParentIndex(int index) {
+        return this.geometry.getParentIndex(index);
+    }
+
+    @Override
+    public void computeWorldMatrices(Matrix4f[] out) {
+        int count = this.boneArray.length;
+        if (out.length < count) {
+            throw new IllegalArgumentException("Expected at least " + count + " matrices, was " + out.length);
         }
 
-        // Compile and list all bones
-        Set<AnimatedBone> compiledBones = new HashSet<>();
-        List<AnimatedBone> listBones = new ArrayList<>(boneBuilders.size());
-        for (String name : rootBones) {
-            AnimatedBone bone = boneBuilders.get(name).create(textureWidth, textureHeight);
-            compiledBones.add(bone);
-            bone.listBones(listBones);
+        // Only bones with a changed local matrix or a changed parent are multiplied again.
+        // Rendering can also update the local matrix, so compare versions instead of relying on the result of the update
+        boolean all = !this.worldValid;
+        for (int i = 0; i < count; i++) {
+            AnimatedBoneImpl bone = this.boneArray[i];
+            int parent = this.geometry.getParentIndex(i);
+            Matrix4fc local = bone.getLocalMatrix();
+            int version = bone.getLocalVersion();
+            boolean dirty = all || version != this.worldVersions[i] || (parent != -1 && this.worldDirty[parent]);
+            this.worldVersions[i] = version;
+            this.worldDirty[i] = dirty;
+            if (dirty) {
+                if (parent == -1) {
+                    this.worldMatrices[i].set(local);
+                } else {
+                    this.worldMatrices[parent].mul(local, this.worldMatrices[i]);
+                }
+            }
+            out[i].set(this.worldMatrices[i]);
         }
-        this.bones = listBones.stream().collect(Collectors.toUnmodifiableMap(bone -> bone.getBone().name(), bone -> bone));
-        this.rootBones = Collections.unmodifiableSet(compiledBones);
+        this.worldValid = true;
     }
 
     @Override
-    public @Nullable AnimatedBone getBone(String name) {
-        return this.bones.get(name);
+    public BoneBounds getBounds(int index) {
+        return this.geometry.getBounds(index);
     }
 
     @Override
     public Collection<AnimatedBone> getBones() {
-        return this.bones.values();
+        return this.bones;
+    }
+
+    @Override
+    public IndexedGeometry bakeIndexed() {
+        return this.geometry.getIndexedGeometry();
     }
 
     @Override
@@ -88,12 +159,13 @@ public class GeometryTreeImpl implements GeometryTree {
 
     @Override
     public @Nullable LocatorTransformation getLocatorTransformation(String name) {
-        return this.locatorTransformations.get(name);
+        int index = this.geometry.getLocatorIndex(name);
+        return index != -1 ? this.locatorTransformations[index] : null;
     }
 
     @Override
     public GeometryModelData.Locator[] getLocators() {
-        return this.locators;
+        return this.geometry.getLocators();
     }
 
     @Override
@@ -0,0 +1,334 @@
+package gg.moonflower.pinwheel.impl.geometry;
+
+import gg.moonflower.pinwheel.api.geometry.GeometryTree;
+import gg.moonflower.pinwheel.api.geometry.IndexedGeometry;
+import gg.moonflower.pinwheel.api.geometry.VertexLayout;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Matrix3f;
+import org.joml.Matrix4f;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Transforms vertices on the CPU and packs them into buffers according to a {@link VertexLayout}.
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class VertexWriter {
+
+    private static final ThreadLocal<Matrix3f> NORMAL_MATRIX = ThreadLocal.withInitial(Matrix3f::new);
+
+    private VertexWriter() {
+    }
+
+    /**
+     * Computes the model space transformation of every bone for skinning. Bones that are not visible and their children
+     * use a zero matrix, so their vertices collapse into a single point.
+     *
+     * @param tree     The tree to compute transformations for
+     * @param matrices The matrices to store the transformation of each bone into
+     */
+    public static void computeSkinningMatrices(GeometryTree tree, Matrix4f[] matrices) {
+        int boneCount = tree.getBoneCount();
+        if (matrices.length < boneCount) {
+            throw new IllegalArgumentException("Expected at least " + boneCount + " matrices, was " + matrices.length);
+        }
+
+        tree.computeWorldMatrices(matrices);
+        for (int i = 0; i < boneCount; i++) {
+            // Bone transformations are affine, so only matrices zeroed here have a zero in the last element
+            int parent = tree.getParentIndex(i);
+            if (!tree.getBone(i).isVisible() || (parent != -1 && matrices[parent].m33() == 0)) {
+                // Collapses the bone and all children into a single point, so they produce no visible triangles
+                matrices[i].zero();
+            }
+        }
+    }
+
+    /**
+     * Writes every vertex of {@link GeometryTree#bakeIndexed()} transformed by the current pose of its bone.
+     *
+     * @param tree     The tree to write vertices for
+     * @param buffer   The buffer to write into starting at the current position
+     * @param layout   The layout of each vertex
+     * @param matrices Scratch matrices to store the transformation of each bone into
+     */
+    public static void write(GeometryTree tree, ByteBuffer buffer, VertexLayout layout, Matrix4f[] matrices) {
+        IndexedGeometry geometry = tree.bakeIndexed();
+        int start = checkSpace(geometry, buffer, layout);
+        computeSkinningMatrices(tree, matrices);
+
+        Matrix3f normalMatrix = NORMAL_MATRIX.get();
+        boolean normals = layout.getElement(VertexLayout.Attribute.NORMAL) != null;
+        for (int span = 0; span < geometry.getSpanCount(); span++) {
+            Matrix4f matrix = matrices[geometry.getSpanBone(span)];
+            if (normals) {
+                // Zeroed matrices can't be inverted, so hidden bones get a zero normal the same way positions collapse
+                if (matrix.m33() == 0) {
+                    normalMatrix.zero();
+                } else {
+                    matrix.normal(normalMatrix);
+                }
+            }
+            writeSpan(geometry, span, buffer, start, layout, matrix, normalMatrix);
+        }
+
+        buffer.position(start + geometry.getVertexCount() * layout.getStride());
+    }
+
+    /**
+     * Writes every vertex of the specified geometry without any transformation.
+     *
+     * @param geometry The geometry to write vertices for
+     * @param buffer   The buffer to write into starting at the current position
+     * @param layout   The layout of each vertex
+     */
+    public static void write(IndexedGeometry geometry, ByteBuffer buffer, VertexLayout layout) {
+        int start = checkSpace(geometry, buffer, layout);
+        for (int span = 0; span < geometry.getSpanCount(); span++) {
+            writeSpan(geometry, span, buffer, start, layout, null, null);
+        }
+        buffer.position(start + geometry.getVertexCount() * layout.getStride());
+    }
+
+    private static int checkSpace(IndexedGeometry geometry, ByteBuffer buffer, VertexLayout layout) {
+        VertexLayout.Element boneIndex = layout.getElement(VertexLayout.Attribute.BONE_INDEX);
+        if (boneIndex != null) {
+            int maxBone = -1;
+            for (int span = 0; span < geometry.getSpanCount(); span++) {
+                maxBone = Math.max(maxBone, geometry.getSpanBone(span));
+            }
+            int maxIndex = getMaxIndex(boneIndex.format());
+            if (maxBone > maxIndex) {
+                throw new IllegalArgumentException("Bone index " + maxBone + " does not fit in " + boneIndex.format() + ", max is " + maxIndex);
+            }
+        }
+
+        int size = geometry.getVertexCount() * layout.getStride();
+        if (buffer.remaining() < size) {
+            throw new IllegalArgumentException("Expected at least " + size + " bytes remaining, was " + buffer.remaining());
+        }
+        return buffer.position();
+    }
+
+    private static void writeSpan(IndexedGeometry geometry, int span, ByteBuffer buffer, int start, VertexLayout layout, @Nullable Matrix4f matrix, @Nullable Matrix3f normalMatrix) {
+        VertexLayout.Element position = layout.getElement(VertexLayout.Attribute.POSITION);
+        VertexLayout.Element uv = layout.getElement(VertexLayout.Attribute.UV);
+        VertexLayout.Element normal = layout.getElement(VertexLayout.Attribute.NORMAL);
+        VertexLayout.Element boneIndex = layout.getElement(VertexLayout.Attribute.BONE_INDEX);
+        float[] positions = geometry.getPositions();
+        float[] uvs = geometry.getUVs();
+        float[] normals = geometry.getNormals();
+        int stride = layout.getStride();
+        int bone = geometry.getSpanBone(span);
+
+        int first = geometry.getFirstVertex(span);
+        int last = first + geometry.getVertexCount(span);
+        for (int vertex = first; vertex < last; vertex++) {
+            int offset = start + vertex * stride;
+            if (position != null) {
+                float x = positions[vertex * 3];
+                float y = positions[vertex * 3 + 1];
+                float z = positions[vertex * 3 + 2];
+                if (matrix != null) {
+                    writeVector(buffer, offset, position,
+                            matrix.m00() * x + matrix.m10() * y + matrix.m20() * z + matrix.m30(),
+                            matrix.m01() * x + matrix.m11() * y + matrix.m21() * z + matrix.m31(),
+                            matrix.m02() * x + matrix.m12() * y + matrix.m22() * z + matrix.m32());
+                } else {
+                    writeVector(buffer, offset, position, x, y, z);
+                }
+            }
+            if (uv != null) {
+                writeComponent(buffer, offset + uv.offset(), uv.format(), uvs[vertex * 2]);
+                writeComponent(buffer, offset + uv.offset() + uv.format().getBytes(), uv.format(), uvs[vertex * 2 + 1]);
+            }
+            if (normal != null) {
+                float x = normals[vertex * 3];
+                float y = normals[vertex * 3 + 1];
+                float z = normals[vertex * 3 + 2];
+                if (normalMatrix != null) {
+                    float nx = normalMatrix.m00() * x + normalMatrix.m10() * y + normalMatrix.m20() * z;
+                    float ny = normalMatrix.m01() * x + normalMatrix.m11() * y + normalMatrix.m21() * z;
+                    float nz = normalMatrix.m02() * x + normalMatrix.m12() * y + normalMatrix.m22() * z;
+                    float lengthSq = nx * nx + ny * ny + nz * nz;
+                    if (lengthSq > 0) {
+                        float scale = 1.0F / (float) Math.sqrt(lengthSq);
+                        nx *= scale;
+                        ny *= scale;
+                        nz *= scale;
+                    }
+                    writeVector(buffer, offset, normal, nx, ny, nz);
+                } else {
+                    writeVector(buffer, offset, normal, x, y, z);
+                }
+            }
+            if (boneIndex != null) {
+                writeComponent(buffer, offset + boneIndex.offset(), boneIndex.format(), bone);
+            }
+        }
+    }
+
+    /**
+     * Writes the transformation of every bone into the specified buffer for skinning on the GPU.
+     *
+     * @param tree     The tree to write the bone transformations of
+     * @param buffer   The buffer to write into starting at the current position
+     * @param matrices Scratch matrices to store the transformation of each bone into
+     * @param affine   Whether to write 4x3 matrices instead of 4x4 matrices
+     */
+    public static void writeBonePalette(GeometryTree tree, FloatBuffer buffer, Matrix4f[] matrices, boolean affine) {
+        int boneCount = tree.getBoneCount();
+        int matrixSize = affine ? 12 : 16;
+        if (buffer.remaining() < boneCount * matrixSize) {
+            throw new IllegalArgumentException("Expected at least " + boneCount * matrixSize + " floats remaining, was " + buffer.remaining());
+        }
+
+        computeSkinningMatrices(tree, matrices);
+        int start = buffer.position();
+        // JOML writes buffers through their native address, which does not work with heap buffers
+        for (int i = 0; i < boneCount; i++) {
+            Matrix4f matrix = matrices[i];
+            int offset = start + i * matrixSize;
+            if (affine) {
+                putRow(buffer, offset, matrix.m00(), matrix.m10(), matrix.m20(), matrix.m30());
+                putRow(buffer, offset + 4, matrix.m01(), matrix.m11(), matrix.m21(), matrix.m31());
+                putRow(buffer, offset + 8, matrix.m02(), matrix.m12(), matrix.m22(), matrix.m32());
+            } else {
+                putRow(buffer, offset, matrix.m00(), matrix.m01(), matrix.m02(), matrix.m03());
+                putRow(buffer, offset + 4, matrix.m10(), matrix.m11(), matrix.m12(), matrix.m13());
+                putRow(buffer, offset + 8, matrix.m20(), matrix.m21(), matrix.m22(), matrix.m23());
+                putRow(buffer, offset + 12, matrix.m30(), matrix.m31(), matrix.m32(), matrix.m33());
+            }
+        }
+        buffer.position(start + boneCount * matrixSize);
+    }
+
+    private static void putRow(FloatBuffer buffer, int offset, float x, float y, float z, float w) {
+        buffer.put(offset, x);
+        buffer.put(offset + 1, y);
+        buffer.put(offset + 2, z);
+        buffer.put(offset + 3, w);
+    }
+
+    private static void writeVector(ByteBuffer buffer, int vertexOffset, @Nullable VertexLayout.Element element, float x, float y, float z) {
+        if (element == null) {
+            return;
+        }
+        VertexLayout.Format format = element.format();
+        int offset = vertexOffset + element.offset();
+        writeComponent(buffer, offset, format, x);
+        writeComponent(buffer, offset + format.getBytes(), format, y);
+        writeComponent(buffer, offset + format.getBytes() * 2, format, z);
+    }
+
+    /**
+     * Writes a single component at an absolute position without changing the position of the buffer.
+     *
+     * @param buffer The buffer to write into
+     * @param offset The byte offset to write at
+     * @param format The format to store the value in
+     * @param value  The value to write
+     */
+    public static void writeComponent(ByteBuffer buffer, int offset, VertexLayout.Format format, float value) {
+        switch (format) {
+            case FLOAT -> buffer.putFloat(offset, value);
+            case HALF -> buffer.putShort(offset, toHalf(value));
+            case NORMALIZED_SHORT -> buffer.putShort(offset, (short) Math.round(clampNormalized(value) * Short.MAX_VALUE));
+            case NORMALIZED_BYTE -> buffer.put(offset, (byte) Math.round(clampNormalized(value) * Byte.MAX_VALUE));
+            case UNSIGNED_SHORT -> buffer.putShort(offset, (short) Math.round(value));
+            case UNSIGNED_BYTE -> buffer.put(offset, (byte) Math.round(value));
+        }
+    }
+
+    private static int getMaxIndex(VertexLayout.Format format) {
+        return switch (format) {
+            // Largest integers that can be stored without skipping any values
+            case FLOAT -> 1 << 24;
+            case HALF -> 1 << 11;
+            case NORMALIZED_SHORT, NORMALIZED_BYTE -> 1;
+            case UNSIGNED_SHORT -> 0xFFFF;
+            case UNSIGNED_BYTE -> 0xFF;
+        };
+    }
+
+    private static float clampNormalized(float value) {
+        return Math.max(-1.0F, Math.min(1.0F, value));
+    }
+
+    /**
+     * Converts a float to the nearest IEEE 754 half precision float.
+     *
+     * @param value The value to convert
+     * @return The bits of the half precision float
+     */
+    public static short toHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xFF;
+        int mantissa = bits & 0x7FFFFF;
+
+        // NaN and infinity
+        if (exponent == 0xFF) {
+            return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+        }
+
+        int halfExponent = exponent - 127 + 15;
+        // Too large, so round to infinity
+        if (halfExponent >= 0x1F) {
+            return (short) (sign | 0x7C00);
+        }
+
+        // Subnormal half or zero
+        if (halfExponent <= 0) {
+            if (halfExponent < -10) {
+                return (short) sign;
+            }
+            mantissa |= 0x800000;
+            int shift = 14 - halfExponent;
+            int half = mantissa >> shift;
+            int remainder = mantissa & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if (remainder > halfway || (remainder == halfway && (half & 1) != 0)) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+
+        // Round to nearest even. Overflowing the mantissa correctly carries into the exponent
+        int half = (halfExponent << 10) | (mantissa >> 13);
+        int remainder = mantissa & 0x1FFF;
+        if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)) {
+            half++;
+        }
+        return (short) (sign | half);
+    }
+
+    /**
+     * Converts the bits of an IEEE 754 half precision float to a float.
+     *
+     * @param half The bits of the half precision float
+     * @return The float value
+     */
+    public static float fromHalf(short half) {
+        int sign = (half & 0x8000) << 16;
+        int exponent = (half >>> 10) & 0x1F;
+        int mantissa = half & 0x3FF;
+
+        if (exponent == 0x1F) {
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        }
+        if (exponent == 0) {
+            if (mantissa == 0) {
+                return Float.intBitsToFloat(sign);
+            }
+            // Subnormal values have no implicit leading bit
+            float value = mantissa / 16777216.0F;
+            return sign != 0 ? -value : value;
+        }
+        return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+    }
+}
@@ -0,0 +1,275 @@
+package gg.moonflower.pinwheel.impl.geometry.bone;
+
+import gg.moonflower.pinwheel.api.FaceDirection;
+import gg.moonflower.pinwheel.api.geometry.GeometryCompileOptions;
+import gg.moonflower.pinwheel.api.geometry.GeometryModelData;
+import gg.moonflower.pinwheel.api.geometry.bone.BoneBounds;
+import gg.moonflower.pinwheel.api.geometry.bone.Polygon;
+import gg.moonflower.pinwheel.api.geometry.bone.Vertex;
+import gg.moonflower.pinwheel.api.transform.MatrixStack;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.jetbrains.annotations.ApiStatus;
+import org.joml.*;
+
+import java.lang.Math;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The immutable parts of an animated bone. A single compiled bone can be shared between any number of {@link AnimatedBoneImpl}.
+ *
+ * @param bone     The bone definition
+ * @param polygons An unmodifiable list of all polygons in the bone
+ * @param pivot    The pivot of the bone in model space
+ * @param rotation The rest rotation of the bone in radians
+ * @param culledPolygons The number of cube faces removed because they were hidden by other cubes
+ * @param mergedPolygons The number of polygons removed by merging quads together
+ * @param bounds   The bounds of all polygons before the bone is transformed
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public record CompiledBone(GeometryModelData.Bone bone, List<Polygon> polygons, Vector3fc pivot, Vector3fc rotation,
+                           int culledPolygons, int mergedPolygons, BoneBounds bounds) {
+
+    /**
+     * Compiles all cubes and the poly mesh of the specified bone into polygons.
+     *
+     * @param bone          The bone to compile
+     * @param textureWidth  The width of the texture for dividing bone UV
+     * @param textureHeight The height of the texture for dividing bone UV
+     * @return A new compiled bone
+     */
+    public static CompiledBone compile(GeometryModelData.Bone bone, float textureWidth, float textureHeight) {
+        return compile(bone, textureWidth, textureHeight, GeometryCompileOptions.DEFAULT);
+    }
+
+    /**
+     * Compiles all cubes and the poly mesh of the specified bone into polygons.
+     *
+     * @param bone          The bone to compile
+     * @param textureWidth  The width of the texture for dividing bone UV
+     * @param textureHeight The height of the texture for dividing bone UV
+     * @param options       The optimizations to apply
+     * @return A new compiled bone
+     */
+    public static CompiledBone compile(GeometryModelData.Bone bone, float textureWidth, float textureHeight, GeometryCompileOptions options) {
+        GeometryModelData.Cube[] cubes = bone.cubes();
+        int[] hiddenFaces = options.cullHiddenFaces() ? findHiddenFaces(bone) : null;
+        int culledPolygons = 0;
+
+        ObjectArrayList<Polygon> polygons = new ObjectArrayList<>();
+        for (int i = 0; i < cubes.length; i++) {
+            culledPolygons += addCube(polygons, bone, cubes[i], textureWidth, textureHeight, hiddenFaces != null ? hiddenFaces[i] : 0);
+        }
+        GeometryModelData.PolyMesh polyMesh = bone.polyMesh();
+        if (polyMesh != null) {
+            addPolyMesh(polygons, polyMesh, textureWidth, textureHeight);
+        }
+        int mergedPolygons = options.mergeQuads() ? QuadMerger.merge(polygons) : 0;
+        polygons.trim();
+
+        Vector3f pivot = bone.pivot();
+        Vector3f rotation = new Vector3f(bone.rotation()).mul((float) (Math.PI / 180.0));
+        return new CompiledBone(bone, Collections.unmodifiableList(polygons), new Vector3f(pivot.x(), -pivot.y(), pivot.z()), rotation, culledPolygons, mergedPolygons, BoneBounds.of(polygons));
+    }
+
+    /**
+     * Finds all faces of each cube that are completely covered by a single other solid cube with the same rotation.
+     *
+     * @param bone The bone to check the cubes of
+     * @return A mask of hidden {@link FaceDirection} ordinals for each cube
+     */
+    private static int[] findHiddenFaces(GeometryModelData.Bone bone) {
+        GeometryModelData.Cube[] cubes = bone.cubes();
+        float[][] bounds = new float[cubes.length][];
+        boolean[] solid = new boolean[cubes.length];
+        for (int i = 0; i < cubes.length; i++) {
+            GeometryModelData.Cube cube = cubes[i];
+            Vector3f origin = cube.origin();
+            Vector3f size = cube.size();
+            float inflate = cube.overrideInflate() ? cube.inflate() : bone.inflate();
+            bounds[i] = new float[]{
+                    Math.min(origin.x(), origin.x() + size.x()) - inflate,
+                    Math.min(origin.y(), origin.y() + size.y()) - inflate,
+                    Math.min(origin.z(), origin.z() + size.z()) - inflate,
+                    Math.max(origin.x(), origin.x() + size.x()) + inflate,
+                    Math.max(origin.y(), origin.y() + size.y()) + inflate,
+                    Math.max(origin.z(), origin.z() + size.z()) + inflate
+            };
+
+            solid[i] = true;
+            for (GeometryModelData.CubeUV uv : cube.uv()) {
+                if (uv == null) {
+                    solid[i] = false;
+                    break;
+                }
+            }
+        }
+
+        int[] hiddenFaces = new int[cubes.length];
+        for (int i = 0; i < cubes.length; i++) {
+            GeometryModelData.Cube cube = cubes[i];
+            boolean mirror = cube.overrideMirror() ? cube.mirror() : bone.mirror();
+            for (int j = 0; j < cubes.length; j++) {
+                if (i == j || !solid[j] || !isSameTransform(cube, cubes[j])) {
+                    continue;
+                }
+
+                for (FaceDirection face : FaceDirection.values()) {
+                    // East and west faces are swapped when mirrored
+                    int axis = switch (face) {
+                        case DOWN, UP -> 1;
+                        case NORTH, SOUTH -> 2;
+                        case EAST, WEST -> 0;
+                    };
+                    boolean positive = switch (face) {
+                        case DOWN, NORTH -> false;
+                        case UP, SOUTH -> true;
+                        case EAST -> mirror;
+                        case WEST -> !mirror;
+                    };
+                    if (isCovered(bounds[i], bounds[j], axis, positive)) {
+                        hiddenFaces[i] |= 1 << face.ordinal();
+                    }
+                }
+            }
+        }
+        return hiddenFaces;
+    }
+
+    private static boolean isSameTransform(GeometryModelData.Cube first, GeometryModelData.Cube second) {
+        return first.rotation().equals(second.rotation()) && (first.rotation().lengthSquared() == 0 || first.pivot().equals(second.pivot()));
+    }
+
+    private static boolean isCovered(float[] face, float[] cover, int axis, boolean positive) {
+        // The covering cube must fill the space directly in front of the face
+        float plane = positive ? face[axis + 3] : face[axis];
+        if (positive ? cover[axis] > plane || plane >= cover[axis + 3] : cover[axis] >= plane || plane > cover[axis + 3]) {
+            return false;
+        }
+
+        for (int i = 0; i < 3; i++) {
+            if (i != axis && (cover[i] > face[i] || face[i + 3] > cover[i + 3])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int addCube(List<Polygon> polygons, GeometryModelData.Bone bone, GeometryModelData.Cube cube, float textureWidth, float textureHeight, int hiddenFaces) {
+        boolean empty = true;
+        for (FaceDirection direction : FaceDirection.values()) {
+            if (cube.uv(direction) != null) {
+                empty = false;
+                break;
+            }
+        }
+
+        if (empty) {
+            return 0;
+        }
+
+        Vector3f origin = cube.origin();
+        Vector3f size = cube.size();
+        float x = origin.x() / 16f;
+        float y = origin.y() / 16f;
+        float z = origin.z() / 16f;
+        float sizeX = size.x() / 16f;
+        float sizeY = size.y() / 16f;
+        float sizeZ = size.z() / 16f;
+        float inflate = (cube.overrideInflate() ? cube.inflate() : bone.inflate()) / 16f;
+
+        float x1 = x + sizeX;
+        float y1 = y + sizeY;
+        float z1 = z + sizeZ;
+        x = x - inflate;
+        y = y - inflate;
+        z = z - inflate;
+        x1 = x1 + inflate;
+        y1 = y1 + inflate;
+        z1 = z1 + inflate;
+
+        if (x == x1 && y == y1 && z == z1) {
+            return 0;
+        }
+
+        boolean mirror = cube.overrideMirror() ? cube.mirror() : bone.mirror();
+        if (mirror) {
+            float f3 = x1;
+            x1 = x;
+            x = f3;
+        }
+
+        Vector3f rotation = cube.rotation();
+        Vector3f pivot = cube.pivot();
+        float rotationX = rotation.x();
+        float rotationY = rotation.y();
+        float rotationZ = rotation.z();
+        float pivotX = pivot.x() / 16f;
+        float pivotY = -pivot.y() / 16f;
+        float pivotZ = pivot.z() / 16f;
+
+        MatrixStack matrixStack = MatrixStack.create();
+        matrixStack.translate(pivotX, pivotY, pivotZ);
+        matrixStack.rotateZYX(rotationZ, rotationY, rotationX);
+        matrixStack.translate(-pivotX, -pivotY, -pivotZ);
+        Matrix4fc matrix4f = matrixStack.position();
+        Matrix3fc matrix3f = matrixStack.normal();
+
+        int culled = 0;
+        if (y != y1) {
+            if (x != x1) {
+                culled += addFace(polygons, bone, cube, textureWidth, textureHeight, hiddenFaces, matrix4f, matrix3f, x1, y1, z, x, y1, z, x, y, z, x1, y, z, FaceDirection.NORTH);
+                culled += addFace(polygons, bone, cube, textureWidth, textureHeight, hiddenFaces, matrix4f, matrix3f, x, y1, z1, x1, y1, z1, x1, y, z1, x, y, z1, FaceDirection.SOUTH);
+            }
+            if (z != z1) {
+                culled += addFace(polygons, bone, cube, textureWidth, textureHeight, hiddenFaces, matrix4f, matrix3f, x, y1, z, x, y1, z1, x, y, z1, x, y, z, FaceDirection.EAST);
+                culled += addFace(polygons, bone, cube, textureWidth, textureHeight, hiddenFaces, matrix4f, matrix3f, x1, y1, z1, x1, y1, z, x1, y, z, x1, y, z1, FaceDirection.WEST);
+            }
+        }
+
+        if (x != x1 && z != z1) {
+            culled += addFace(polygons, bone, cube, textureWidth, textureHeight, hiddenFaces, matrix4f, matrix3f, x, y, z1, x1, y, z1, x1, y, z, x, y, z, FaceDirection.DOWN);
+            culled += addFace(polygons, bone, cube, textureWidth, textureHeight, hiddenFaces, matrix4f, matrix3f, x1, y1, z1, x, y1, z1, x, y1, z, x1, y1, z, FaceDirection.UP);
+        }
+        return culled;
+    }
+
+    private static void addPolyMesh(List<Polygon> polygons, GeometryModelData.PolyMesh polyMesh, float textureWidth, float textureHeight) {
+        Matrix4f matrix4f = new Matrix4f();
+        for (GeometryModelData.Polygon poly : polyMesh.polys()) {
+            Vertex[] vertices = new Vertex[polyMesh.polyType().getVertices()];
+            Vector3f[] normals = new Vector3f[polyMesh.polyType().getVertices()];
+            for (int i = 0; i < vertices.length; i++) {
+                vertices[i] = getVertex(polyMesh, poly, matrix4f, i, textureWidth, textureHeight);
+                normals[i] = polyMesh.normals()[poly.normals()[i]].get(new Vector3f());
+                normals[i].mul(1, -1, 1);
+            }
+            polygons.add(new Polygon("poly_mesh.texture", vertices, normals));
+        }
+    }
+
+    private static Vertex getVertex(GeometryModelData.PolyMesh polyMesh, GeometryModelData.Polygon poly, Matrix4fc matrix4f, int index, float textureWidth, float textureHeight) {
+        Vector3fc position = polyMesh.positions()[poly.positions()[index]];
+        Vector2fc uv = polyMesh.uvs()[poly.uvs()[index]];
+        return Vertex.create(matrix4f, position.x(), -position.y(), position.z(), polyMesh.normalizedUvs() ? uv.x() : uv.x() / textureWidth, 1 - (polyMesh.normalizedUvs() ? uv.y() : uv.y() / textureHeight));
+    }
+
+    private static int addFace(List<Polygon> polygons, GeometryModelData.Bone bone, GeometryModelData.Cube cube, float textureWidth, float textureHeight, int hiddenFaces, Matrix4fc matrix4f, Matrix3fc matrix3f, float x0, float y0, float z0, float x1, float y1, float z1, float x2, float y2, float z2, float x3, float y3, float z3, FaceDirection face) {
+        GeometryModelData.CubeUV uv = cube.uv(face);
+        if (uv == null) {
+            return 0;
+        }
+        if ((hiddenFaces & 1 << face.ordinal()) != 0) {
+            return 1;
+        }
+
+        polygons.add(Polygon.quad(uv.materialInstance(), new Vertex[]{
+                Vertex.create(matrix4f, x0, -y0, z0, (uv.u() + uv.uSize()) / textureWidth, uv.v() / textureHeight),
+                Vertex.create(matrix4f, x1, -y1, z1, uv.u() / textureWidth, uv.v() / textureHeight),
+                Vertex.create(matrix4f, x2, -y2, z2, uv.u() / textureWidth, (uv.v() + uv.vSize()) / textureHeight),
+                Vertex.create(matrix4f, x3, -y3, z3, (uv.u() + uv.uSize()) / textureWidth, (uv.v() + uv.vSize()) / textureHeight)
+        }, matrix3f, cube.overrideMirror() ? cube.mirror() : bone.mirror(), face.opposite()));
+        return 0;
+    }
+}
@@ -0,0 +1,173 @@
+package gg.moonflower.pinwheel.impl.geometry.bone;
+
+import gg.moonflower.pinwheel.api.geometry.bone.Polygon;
+import gg.moonflower.pinwheel.api.geometry.bone.Vertex;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Vector3fc;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Greedily merges adjacent coplanar quads that share an edge and have continuous texture coordinates into larger quads.
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class QuadMerger {
+
+    private static final float EPSILON = 1.0E-5F;
+
+    private QuadMerger() {
+    }
+
+    /**
+     * Merges all quads in the specified list. Polygons that are not quads are left unchanged.
+     *
+     * @param polygons The polygons to merge. Merged quads are replaced in place
+     * @return The number of polygons removed
+     */
+    public static int merge(List<Polygon> polygons) {
+        Polygon[] quads = polygons.toArray(new Polygon[0]);
+        Map<Edge, Integer> edges = new HashMap<>();
+        boolean[] changed = new boolean[quads.length];
+        int merged = 0;
+
+        boolean dirty = true;
+        while (dirty) {
+            dirty = false;
+
+            edges.clear();
+            for (int i = 0; i < quads.length; i++) {
+                Polygon quad = quads[i];
+                if (quad != null && quad.isQuad() && isFlat(quad)) {
+                    Vertex[] vertices = quad.vertices();
+                    for (int j = 0; j < 4; j++) {
+                        edges.put(new Edge(vertices[j], vertices[(j + 1) % 4]), i);
+                    }
+                }
+            }
+
+            // A quad can only merge once per pass because the edge map is rebuilt between passes
+            Arrays.fill(changed, false);
+            for (int i = 0; i < quads.length; i++) {
+                Polygon quad = quads[i];
+                if (quad == null || changed[i] || !quad.isQuad() || !isFlat(quad)) {
+                    continue;
+                }
+
+                Vertex[] vertices = quad.vertices();
+                for (int j = 0; j < 4; j++) {
+                    Integer neighbor = edges.get(new Edge(vertices[(j + 1) % 4], vertices[j]));
+                    if (neighbor == null || neighbor == i || changed[neighbor] || quads[neighbor] == null) {
+                        continue;
+                    }
+
+                    Polygon result = tryMerge(quad, j, quads[neighbor]);
+                    if (result != null) {
+                        quads[i] = result;
+                        quads[neighbor] = null;
+                        changed[i] = true;
+                        changed[neighbor] = true;
+                        merged++;
+                        dirty = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (merged > 0) {
+            polygons.clear();
+            for (Polygon quad : quads) {
+                if (quad != null) {
+                    polygons.add(quad);
+                }
+            }
+        }
+        return merged;
+    }
+
+    private static boolean isFlat(Polygon quad) {
+        Vector3fc[] normals = quad.normals();
+        for (int i = 1; i < normals.length; i++) {
+            if (!normals[0].equals(normals[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Attempts to merge two quads that share an edge into a single quad.
+     *
+     * @param first  The first quad
+     * @param edge   The index of the first vertex of the shared edge in the first quad
+     * @param second The second quad. It must contain the shared edge in the opposite direction
+     * @return The merged quad or <code>null</code> if the quads do not form a rectangle with continuous texture coordinates
+     */
+    private static @Nullable Polygon tryMerge(Polygon first, int edge, Polygon second) {
+        if (!Objects.equals(first.material(), second.material()) || !first.normals()[0].equals(second.normals()[0])) {
+            return null;
+        }
+
+        Vertex[] a = first.vertices();
+        Vertex[] b = second.vertices();
+        Vertex shared0 = a[edge];
+        Vertex shared1 = a[(edge + 1) % 4];
+        int secondEdge = -1;
+        for (int i = 0; i < 4; i++) {
+            if (b[i].equals(shared1) && b[(i + 1) % 4].equals(shared0)) {
+                secondEdge = i;
+                break;
+            }
+        }
+        if (secondEdge == -1) {
+            return null;
+        }
+
+        Vertex a2 = a[(edge + 2) % 4];
+        Vertex a3 = a[(edge + 3) % 4];
+        Vertex b2 = b[(secondEdge + 2) % 4];
+        Vertex b3 = b[(secondEdge + 3) % 4];
+
+        // Both shared vertices must lie on the new outer edges with matching texture coordinates
+        if (!isBetween(a3, shared0, b2) || !isBetween(b3, shared1, a2)) {
+            return null;
+        }
+
+        return new Polygon(first.material(), new Vertex[]{a2, a3, b2, b3}, new Vector3fc[]{first.normals()[0], first.normals()[0], first.normals()[0], first.normals()[0]});
+    }
+
+    private static boolean isBetween(Vertex start, Vertex middle, Vertex end) {
+        float dx = end.x() - start.x();
+        float dy = end.y() - start.y();
+        float dz = end.z() - start.z();
+        float lengthSq = dx * dx + dy * dy + dz * dz;
+        if (lengthSq < EPSILON * EPSILON) {
+            return false;
+        }
+
+        float mx = middle.x() - start.x();
+        float my = middle.y() - start.y();
+        float mz = middle.z() - start.z();
+        float t = (mx * dx + my * dy + mz * dz) / lengthSq;
+        if (t <= 0 || t >= 1) {
+            return false;
+        }
+
+        float scale = (float) Math.sqrt(lengthSq);
+        return Math.abs(start.x() + dx * t - middle.x()) <= EPSILON * scale &&
+                Math.abs(start.y() + dy * t - middle.y()) <= EPSILON * scale &&
+                Math.abs(start.z() + dz * t - middle.z()) <= EPSILON * scale &&
+                Math.abs(start.u() + (end.u() - start.u()) * t - middle.u()) <= EPSILON &&
+                Math.abs(start.v() + (end.v() - start.v()) * t - middle.v()) <= EPSILON;
+    }
+
+    private record Edge(Vertex from, Vertex to) {
+    }
+}
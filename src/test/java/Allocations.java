@@ -0,0 +1,33 @@
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the memory allocated on the current thread for tests that require code to not allocate.
+ *
+ * @author Ocelot
+ */
+final class Allocations {
+
+    private static final int WARMUP_ITERATIONS = 20000;
+
+    private Allocations() {
+    }
+
+    /**
+     * Runs the action enough times for the JIT to compile it, then measures a single run.
+     *
+     * @param action The action to measure
+     * @return The number of bytes allocated by the last run
+     */
+    static long measure(Runnable action) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            action.run();
+        }
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long overhead = -threadBean.getThreadAllocatedBytes(threadId) + threadBean.getThreadAllocatedBytes(threadId);
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        action.run();
+        return threadBean.getThreadAllocatedBytes(threadId) - before - overhead;
+    }
+}
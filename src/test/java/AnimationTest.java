@@ -0,0 +1,677 @@
+import com.google.gson.JsonParseException;
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.pinwheel.api.animation.AnimationBinding;
+import gg.moonflower.pinwheel.api.animation.AnimationControllerData;
+import gg.moonflower.pinwheel.api.animation.AnimationControllerParser;
+import gg.moonflower.pinwheel.api.animation.AnimationData;
+import gg.moonflower.pinwheel.api.animation.AnimationEffectDispatcher;
+import gg.moonflower.pinwheel.api.animation.AnimationEffectListener;
+import gg.moonflower.pinwheel.api.animation.AnimationParser;
+import gg.moonflower.pinwheel.api.animation.AnimationStateMachine;
+import gg.moonflower.pinwheel.api.animation.BakedAnimation;
+import gg.moonflower.pinwheel.api.animation.CompressedAnimation;
+import gg.moonflower.pinwheel.api.animation.KeyframeCursor;
+import gg.moonflower.pinwheel.api.animation.PlayingAnimation;
+import gg.moonflower.pinwheel.api.geometry.GeometryCompileException;
+import gg.moonflower.pinwheel.api.geometry.GeometryModel;
+import gg.moonflower.pinwheel.api.geometry.GeometryModelData;
+import gg.moonflower.pinwheel.api.geometry.GeometryModelParser;
+import gg.moonflower.pinwheel.api.geometry.GeometryRenderer;
+import gg.moonflower.pinwheel.api.geometry.GeometryTree;
+import gg.moonflower.pinwheel.api.geometry.bone.AnimatedBone;
+import gg.moonflower.pinwheel.api.transform.LocatorTransformation;
+import gg.moonflower.pinwheel.api.transform.MatrixStack;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+public class AnimationTest {
+
+    private static final String MODEL = "{\"format_version\":\"1.12.0\",\"minecraft:geometry\":[{\"description\":{\"identifier\":\"animated\",\"texture_width\":32,\"texture_height\":32},\"bones\":[{\"name\":\"root\",\"pivot\":[0,0,0]},{\"name\":\"body\",\"parent\":\"root\",\"pivot\":[0,3,0],\"cubes\":[{\"origin\":[-2,2,-2],\"size\":[4,6,4],\"uv\":[0,12]}]},{\"name\":\"head\",\"parent\":\"body\",\"pivot\":[0,8,0],\"cubes\":[{\"origin\":[-3,8,-3],\"size\":[6,6,6],\"uv\":[0,0]}]}]}]}";
+    private static final String ANIMATION = "{\"format_version\":\"1.8.0\",\"animations\":{\"animation.test.walk\":{\"loop\":true,\"animation_length\":2,\"bones\":{\"body\":{\"rotation\":{\"0.0\":[0,0,0],\"1.0\":[0,45,0],\"2.0\":[0,0,0]},\"position\":[0,1,0]},\"head\":{\"rotation\":{\"0.0\":{\"post\":[10,0,0],\"lerp_mode\":\"catmullrom\"},\"0.5\":{\"post\":[-10,0,0],\"lerp_mode\":\"catmullrom\"},\"1.5\":{\"post\":[10,0,0],\"lerp_mode\":\"catmullrom\"},\"2.0\":{\"post\":[-10,0,0],\"lerp_mode\":\"catmullrom\"}},\"scale\":{\"0.0\":[1,1,1],\"2.0\":[2,2,2]}},\"missing\":{\"position\":[5,5,5]}}}}}";
+
+    @Test
+    public void testAnimationBinding() throws GeometryCompileException {
+        GeometryModelData data = GeometryModelParser.parseModel(MODEL)[0];
+        AnimationData animation = AnimationParser.parse(ANIMATION)[0];
+        TestModel named = new TestModel(GeometryTree.create(data));
+        TestModel bound = new TestModel(GeometryTree.create(data));
+
+        AnimationBinding binding = AnimationBinding.bind(animation, bound);
+        Assertions.assertEquals(animation.boneAnimations().length, binding.boneIndices().length);
+        for (int i = 0; i < animation.boneAnimations().length; i++) {
+            int index = binding.boneIndices()[i];
+            if ("missing".equals(animation.boneAnimations()[i].name())) {
+                Assertions.assertEquals(-1, index);
+            } else {
+                Assertions.assertEquals(animation.boneAnimations()[i].name(), bound.getBone(index).getBone().name());
+            }
+        }
+
+        MolangEnvironment environment = MolangRuntime.runtime().create();
+        PlayingAnimation playingAnimation = PlayingAnimation.of(animation);
+        List<PlayingAnimation> animations = List.of(playingAnimation);
+        AnimationBinding[] bindings = {binding};
+        for (float time = 0; time < 4; time += 0.05F) {
+            playingAnimation.setAnimationTime(time);
+            named.applyAnimations(environment, animations);
+            bound.applyAnimations(environment, animations, bindings);
+
+            for (int i = 0; i < named.getBoneCount(); i++) {
+                Assertions.assertEquals(named.getBone(i).getAnimationPose(), bound.getBone(i).getAnimationPose(), "Pose mismatch at " + time);
+            }
+        }
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> bound.applyAnimations(environment, animations, new AnimationBinding[0]));
+    }
+
+    @Test
+    public void testKeyframeCursor() {
+        StringBuilder position = new StringBuilder();
+        StringBuilder rotation = new StringBuilder();
+        for (int i = 0; i <= 200; i++) {
+            if (i > 0) {
+                position.append(',');
+                rotation.append(',');
+            }
+            float time = i * 0.05F;
+            position.append('"').append(time).append("\":[").append(i * 10).append(",0,").append(-i).append(']');
+            rotation.append('"').append(time).append("\":{\"post\":[").append(i % 7).append(',').append(i % 3).append(",0],\"lerp_mode\":\"catmullrom\"}");
+        }
+        AnimationData animation = AnimationParser.parse("{\"format_version\":\"1.8.0\",\"animations\":{\"animation.test.long\":{\"animation_length\":10,\"bones\":{\"bone\":{\"position\":{" + position + "},\"rotation\":{" + rotation + "}}}}}}")[0];
+        AnimationData.BoneAnimation boneAnimation = animation.boneAnimations()[0];
+        Assertions.assertEquals(201, boneAnimation.positionFrames().length);
+
+        MolangEnvironment environment = MolangRuntime.runtime().create();
+        KeyframeCursor cursor = KeyframeCursor.create(animation);
+        AnimatedBone.AnimationPose expected = new AnimatedBone.AnimationPose();
+        AnimatedBone.AnimationPose actual = new AnimatedBone.AnimationPose();
+
+        float[] times = new float[1000];
+        for (int i = 0; i < 500; i++) {
+            times[i] = i * 0.021F - 0.5F;
+        }
+        Random random = new Random(0);
+        for (int i = 500; i < times.length; i++) {
+            times[i] = random.nextFloat() * 11.0F - 0.5F;
+        }
+
+        for (float time : times) {
+            expected.identity();
+            actual.identity();
+            GeometryModel.applyKeyframeAnimation(time, 1.0F, environment, expected, boneAnimation);
+            GeometryModel.applyKeyframeAnimation(time, 1.0F, environment, actual, boneAnimation, cursor, 0);
+            Assertions.assertEquals(expected, actual, "Pose mismatch at " + time);
+            if (time > 0.05F && time < 10.0F) {
+                Assertions.assertEquals(time * 200.0F, actual.position().x(), 1E-2F);
+            }
+        }
+    }
+
+    @Test
+    public void testConstantChannels() {
+        AnimationData animation = AnimationParser.parse(ANIMATION)[0];
+        MolangEnvironment environment = MolangRuntime.runtime().create();
+        AnimatedBone.AnimationPose expected = new AnimatedBone.AnimationPose();
+        AnimatedBone.AnimationPose actual = new AnimatedBone.AnimationPose();
+        for (AnimationData.BoneAnimation boneAnimation : animation.boneAnimations()) {
+            Assertions.assertNotNull(boneAnimation.constantPosition());
+            Assertions.assertNotNull(boneAnimation.constantRotation());
+            Assertions.assertNotNull(boneAnimation.constantScale());
+
+            // Parsed constant channels keep their original key frames
+            Assertions.assertSame(boneAnimation.positionFrames(), boneAnimation.positionFrames());
+
+            AnimationData.BoneAnimation expressions = new AnimationData.BoneAnimation(boneAnimation.name(), boneAnimation.positionFrames(), boneAnimation.rotationFrames(), boneAnimation.scaleFrames(), null, null, null);
+            AnimationData.BoneAnimation converted = new AnimationData.BoneAnimation(boneAnimation.name(), boneAnimation.positionFrames(), boneAnimation.rotationFrames(), boneAnimation.scaleFrames());
+            Assertions.assertNotNull(converted.constantPosition());
+            Assertions.assertNotNull(converted.constantRotation());
+            Assertions.assertNotNull(converted.constantScale());
+            for (float time = -0.5F; time < 3; time += 0.01F) {
+                expected.identity();
+                actual.identity();
+                GeometryModel.applyKeyframeAnimation(time, 0.5F, environment, expected, expressions);
+                GeometryModel.applyKeyframeAnimation(time, 0.5F, environment, actual, boneAnimation);
+                Assertions.assertEquals(expected, actual, "Pose mismatch at " + time);
+                actual.identity();
+                GeometryModel.applyKeyframeAnimation(time, 0.5F, environment, actual, converted);
+                Assertions.assertEquals(expected, actual, "Pose mismatch at " + time);
+            }
+        }
+
+        AnimationData expression = AnimationParser.parse("{\"format_version\":\"1.8.0\",\"animations\":{\"animation.test.expression\":{\"bones\":{\"bone\":{\"position\":[0,\"math.sin(q.anim_time)\",0],\"rotation\":{\"0.0\":[\"1\",\"-2.5\",0],\"1.0\":{\"pre\":[0,0,0],\"post\":[\"q.anim_time\",0,0]}}}}}}}")[0];
+        AnimationData.BoneAnimation boneAnimation = expression.boneAnimations()[0];
+        Assertions.assertNull(boneAnimation.constantPosition());
+        Assertions.assertNull(boneAnimation.constantRotation());
+        Assertions.assertNotNull(boneAnimation.constantScale());
+
+        AnimationData.KeyFrame dynamic = new AnimationData.KeyFrame(0, AnimationData.LerpMode.LINEAR, MolangExpression.ZERO, MolangExpression.of(() -> 1.0F), MolangExpression.ZERO, MolangExpression.ZERO, MolangExpression.ZERO, MolangExpression.ZERO);
+        Assertions.assertNull(AnimationData.ConstantChannel.of(new AnimationData.KeyFrame[]{dynamic}));
+    }
+
+    @Test
+    public void testApplyAnimationsAllocation() throws GeometryCompileException {
+        StringBuilder bones = new StringBuilder("{\"name\":\"root\",\"pivot\":[0,0,0]}");
+        StringBuilder boneAnimations = new StringBuilder();
+        String[] lerpModes = {"linear", "catmullrom", "ease_in_out_sine", "ease_out_bounce"};
+        for (int i = 0; i < 100; i++) {
+            bones.append(",{\"name\":\"bone").append(i).append("\",\"parent\":\"").append(i == 0 ? "root" : "bone" + (i - 1)).append("\",\"pivot\":[0,").append(i).append(",0],\"cubes\":[{\"origin\":[-1,").append(i).append(",-1],\"size\":[2,1,2],\"uv\":[0,0]}]}");
+            if (i > 0) {
+                boneAnimations.append(',');
+            }
+            String lerpMode = lerpModes[i % lerpModes.length];
+            boneAnimations.append("\"bone").append(i).append("\":{\"rotation\":{\"0.0\":{\"post\":[0,0,0],\"lerp_mode\":\"").append(lerpMode).append("\"},\"0.5\":{\"post\":[").append(i).append(",0,0],\"lerp_mode\":\"").append(lerpMode).append("\"},\"1.0\":{\"post\":[0,0,0],\"lerp_mode\":\"").append(lerpMode).append("\"}},\"position\":{\"0.0\":[0,0,0],\"1.0\":[0,1,0]},\"scale\":1.5}");
+        }
+        GeometryModelData data = GeometryModelParser.parseModel("{\"format_version\":\"1.12.0\",\"minecraft:geometry\":[{\"description\":{\"identifier\":\"rig\",\"texture_width\":16,\"texture_height\":16},\"bones\":[" + bones + "]}]}")[0];
+        AnimationData animation = AnimationParser.parse("{\"format_version\":\"1.8.0\",\"animations\":{\"animation.test.rig\":{\"loop\":true,\"animation_length\":1,\"bones\":{" + boneAnimations + "}}}}")[0];
+
+        TestModel model = new TestModel(GeometryTree.create(data));
+        Assertions.assertEquals(101, model.getBoneCount());
+        MolangEnvironment environment = MolangRuntime.runtime().create();
+        PlayingAnimation playingAnimation = PlayingAnimation.of(animation);
+        List<PlayingAnimation> animations = List.of(playingAnimation);
+        AnimationBinding[] bindings = {AnimationBinding.bind(animation, model)};
+
+        int[] frame = new int[1];
+        long allocated = Allocations.measure(() -> {
+            playingAnimation.setAnimationTime(frame[0]++ * 0.01F);
+            model.applyAnimations(environment, animations, bindings);
+        });
+        Assertions.assertEquals(0, allocated, "applyAnimations allocated " + allocated + " bytes");
+    }
+
+    @Test
+    public void testParallelAnimations() throws GeometryCompileException {
+        GeometryModelData data = GeometryModelParser.parseModel(MODEL)[0];
+        AnimationData animation = AnimationParser.parse(ANIMATION)[0];
+
+        int count = 64;
+        List<GeometryModel.AnimationJob> jobs = new ArrayList<>(count);
+        List<TestModel> expected = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            PlayingAnimation playingAnimation = PlayingAnimation.of(animation);
+            playingAnimation.setAnimationTime(i * 0.07F);
+            List<PlayingAnimation> animations = List.of(playingAnimation);
+
+            TestModel model = new TestModel(GeometryTree.create(data));
+            model.applyAnimations(MolangRuntime.runtime().create(), animations);
+            expected.add(model);
+            jobs.add(new GeometryModel.AnimationJob(new TestModel(GeometryTree.create(data)), MolangRuntime.runtime().create(), animations));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int run = 0; run < 10; run++) {
+                GeometryModel.applyAnimationsParallel(jobs, pool);
+                for (int i = 0; i < count; i++) {
+                    GeometryModel actual = jobs.get(i).model();
+                    for (int j = 0; j < actual.getBoneCount(); j++) {
+                        Assertions.assertEquals(expected.get(i).getBone(j).getAnimationPose(), actual.getBone(j).getAnimationPose(), "Pose mismatch in job " + i);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testAnimationStateMachine() {
+        AnimationControllerData parsed = AnimationControllerParser.parse("{\"format_version\":\"1.10.0\",\"animation_controllers\":{\"controller.animation.test\":{\"initial_state\":\"idle\",\"states\":{\"moving\":{\"animations\":[\"walk\",{\"look\":\"0.5\"}],\"transitions\":[{\"idle\":\"0\"}],\"blend_transition\":{\"0.0\":1,\"0.4\":0}},\"idle\":{\"animations\":[\"idle\"],\"transitions\":[{\"moving\":\"1\"}],\"blend_transition\":0.2,\"on_entry\":[\"@s test:event\",\"1\"]}}}}}")[0];
+        Assertions.assertEquals("controller.animation.test", parsed.name());
+        Assertions.assertEquals(parsed.getStateIndex("idle"), parsed.initialState());
+        AnimationControllerData.State moving = parsed.states()[parsed.getStateIndex("moving")];
+        Assertions.assertEquals(2, moving.animations().length);
+        Assertions.assertEquals("look", moving.animations()[1].animation());
+        Assertions.assertEquals(0.4F, moving.blendTransition());
+        Assertions.assertEquals(parsed.getStateIndex("idle"), moving.transitions()[0].target());
+        Assertions.assertEquals(1, parsed.states()[parsed.initialState()].onEntry().length);
+        Assertions.assertThrows(JsonParseException.class, () -> AnimationControllerParser.parse("{\"format_version\":\"1.10.0\",\"animation_controllers\":{\"controller.animation.test\":{\"states\":{\"default\":{\"transitions\":[{\"missing\":\"1\"}]}}}}}"));
+
+        boolean[] walking = new boolean[1];
+        int[] entries = new int[2];
+        MolangExpression walk = MolangExpression.of(() -> walking[0] ? 1.0F : 0.0F);
+        MolangExpression stop = MolangExpression.of(() -> walking[0] ? 0.0F : 1.0F);
+        AnimationControllerData controller = new AnimationControllerData("controller.animation.walk", 0, new AnimationControllerData.State[]{
+                new AnimationControllerData.State("default", new AnimationControllerData.StateAnimation[]{new AnimationControllerData.StateAnimation("idle", MolangExpression.of(1.0F))}, new AnimationControllerData.Transition[]{new AnimationControllerData.Transition(1, walk)}, 0.5F, new MolangExpression[]{MolangExpression.of(() -> (float) entries[0]++)}, new MolangExpression[0]),
+                new AnimationControllerData.State("walking", new AnimationControllerData.StateAnimation[]{new AnimationControllerData.StateAnimation("walk", MolangExpression.of(0.5F)), new AnimationControllerData.StateAnimation("missing", MolangExpression.of(1.0F))}, new AnimationControllerData.Transition[]{new AnimationControllerData.Transition(0, stop)}, 0.0F, new MolangExpression[]{MolangExpression.of(() -> (float) entries[1]++)}, new MolangExpression[0])
+        });
+
+        AnimationData walkAnimation = AnimationParser.parse(ANIMATION)[0];
+        AnimationData idleAnimation = new AnimationData("animation.test.idle", AnimationData.Loop.LOOP, MolangExpression.of(1.0F), 1.0F, false, new AnimationData.BoneAnimation[0], new AnimationData.SoundEffect[0], new AnimationData.ParticleEffect[0], new AnimationData.TimelineEffect[0]);
+        Map<String, AnimationData> animations = Map.of("idle", idleAnimation, "walk", walkAnimation);
+        AnimationStateMachine stateMachine = AnimationStateMachine.create(controller, MolangRuntime.runtime().create(), animations::get);
+        Assertions.assertEquals(1, entries[0]);
+        Assertions.assertEquals(1, stateMachine.getPlayingAnimations().size());
+
+        for (int i = 0; i < 10; i++) {
+            stateMachine.update(0.1F);
+        }
+        Assertions.assertEquals(0, stateMachine.getStateIndex());
+        Assertions.assertEquals(1.0F, stateMachine.getStateTime(), 1E-5F);
+
+        // Idle fades out over half a second while walking fades in
+        walking[0] = true;
+        stateMachine.update(0.1F);
+        Assertions.assertEquals(1, stateMachine.getStateIndex());
+        Assertions.assertEquals(0, stateMachine.getPreviousStateIndex());
+        Assertions.assertEquals(1, entries[1]);
+        Assertions.assertEquals(2, stateMachine.getPlayingAnimations().size());
+        PlayingAnimation idlePlaying = stateMachine.getPlayingAnimations().stream().filter(animation -> animation.getAnimation() == idleAnimation).findFirst().orElseThrow();
+        PlayingAnimation walkPlaying = stateMachine.getPlayingAnimations().stream().filter(animation -> animation.getAnimation() == walkAnimation).findFirst().orElseThrow();
+        Assertions.assertEquals(0, walkPlaying.getAnimationTime());
+        Assertions.assertEquals(0, walkPlaying.getWeightFactor());
+        Assertions.assertEquals(1, idlePlaying.getWeightFactor());
+
+        stateMachine.update(0.2F);
+        Assertions.assertEquals(0.4F, walkPlaying.getWeightFactor() / 0.5F, 1E-5F);
+        Assertions.assertEquals(0.6F, idlePlaying.getWeightFactor(), 1E-5F);
+        Assertions.assertEquals(0.2F, walkPlaying.getAnimationTime(), 1E-5F);
+
+        stateMachine.update(0.4F);
+        Assertions.assertFalse(stateMachine.isTransitioning());
+        Assertions.assertEquals(1, stateMachine.getPlayingAnimations().size());
+        Assertions.assertEquals(0.5F, walkPlaying.getWeightFactor());
+
+        // Walking has no blend time, so idle replaces it immediately
+        walking[0] = false;
+        stateMachine.update(0.1F);
+        Assertions.assertEquals(0, stateMachine.getStateIndex());
+        Assertions.assertFalse(stateMachine.isTransitioning());
+        Assertions.assertEquals(List.of(idlePlaying), List.copyOf(stateMachine.getPlayingAnimations()));
+        Assertions.assertEquals(2, entries[0]);
+
+        // Going back to idle before it finished fading out reverses the blend instead of snapping
+        walking[0] = true;
+        stateMachine.update(0.1F);
+        stateMachine.update(0.2F);
+        walking[0] = false;
+        stateMachine.update(0.1F);
+        Assertions.assertEquals(0, stateMachine.getStateIndex());
+        Assertions.assertEquals(1, stateMachine.getPreviousStateIndex());
+        Assertions.assertEquals(3, entries[0]);
+        Assertions.assertEquals(0.4F, idlePlaying.getWeightFactor(), 1E-5F);
+        Assertions.assertEquals(0.6F, walkPlaying.getWeightFactor() / 0.5F, 1E-5F);
+        Assertions.assertEquals(0.4F, idlePlaying.getAnimationTime(), 1E-5F);
+
+        stateMachine.update(0.3F);
+        Assertions.assertFalse(stateMachine.isTransitioning());
+        Assertions.assertEquals(1.0F, idlePlaying.getWeightFactor());
+
+        stateMachine.setState(1);
+        stateMachine.clearAnimations();
+        Assertions.assertEquals(0, stateMachine.getStateIndex());
+        Assertions.assertEquals(4, entries[0]);
+    }
+
+    @Test
+    public void testEffectDispatcher() {
+        AnimationData.SoundEffect[] sounds = {
+                new AnimationData.SoundEffect(0.0F, "start", MolangExpression.of(1.0F), MolangExpression.of(1.0F), false),
+                new AnimationData.SoundEffect(0.5F, "middle", MolangExpression.of(1.0F), MolangExpression.of(1.0F), false)
+        };
+        AnimationData.ParticleEffect[] particles = {new AnimationData.ParticleEffect(0.25F, "dust", "root")};
+        AnimationData.TimelineEffect[] timeline = {new AnimationData.TimelineEffect(0.9F, "v.end = 1;")};
+        AnimationData animation = new AnimationData("animation.test.effects", AnimationData.Loop.LOOP, MolangExpression.of(1.0F), 1.0F, false, new AnimationData.BoneAnimation[0], sounds, particles, timeline);
+
+        List<String> fired = new ArrayList<>();
+        AnimationEffectListener listener = new AnimationEffectListener() {
+            @Override
+            public void onSoundEffect(PlayingAnimation animation, AnimationData.SoundEffect effect) {
+                fired.add(effect.effect());
+            }
+
+            @Override
+            public void onParticleEffect(PlayingAnimation animation, AnimationData.ParticleEffect effect) {
+                fired.add(effect.effect());
+            }
+
+            @Override
+            public void onTimelineEffect(PlayingAnimation animation, AnimationData.TimelineEffect effect) {
+                fired.add(effect.data());
+            }
+        };
+
+        PlayingAnimation playingAnimation = PlayingAnimation.of(animation);
+        AnimationEffectDispatcher dispatcher = AnimationEffectDispatcher.create(playingAnimation, listener);
+        for (int i = 1; i <= 16; i++) {
+            playingAnimation.setAnimationTime(i * 0.125F);
+            dispatcher.update();
+        }
+        // The last update lands exactly on the start of the third loop
+        Assertions.assertEquals(List.of("start", "dust", "middle", "v.end = 1;", "start", "dust", "middle", "v.end = 1;", "start"), fired);
+
+        // Seeking backwards fires nothing and continues from the new time
+        fired.clear();
+        playingAnimation.setAnimationTime(0.3F);
+        dispatcher.update();
+        Assertions.assertEquals(List.of(), fired);
+        playingAnimation.setAnimationTime(0.6F);
+        dispatcher.update();
+        Assertions.assertEquals(List.of("middle"), fired);
+
+        // Skipped loops are only fired once
+        fired.clear();
+        playingAnimation.setAnimationTime(5.7F);
+        dispatcher.update();
+        Assertions.assertEquals(List.of("v.end = 1;", "start", "dust", "middle"), fired);
+
+        fired.clear();
+        dispatcher.seek(0.25F);
+        playingAnimation.setAnimationTime(0.5F);
+        dispatcher.update();
+        Assertions.assertEquals(List.of("dust", "middle"), fired);
+
+        fired.clear();
+        PlayingAnimation once = PlayingAnimation.of(new AnimationData("animation.test.once", AnimationData.Loop.NONE, MolangExpression.of(1.0F), 1.0F, false, new AnimationData.BoneAnimation[0], sounds, particles, timeline));
+        AnimationEffectDispatcher onceDispatcher = AnimationEffectDispatcher.create(once, listener);
+        for (int i = 1; i <= 40; i++) {
+            once.setAnimationTime(i * 0.1F);
+            onceDispatcher.update();
+        }
+        Assertions.assertEquals(List.of("start", "dust", "middle", "v.end = 1;"), fired);
+
+        // Updates that land exactly on an effect fire it immediately, including at the creation time
+        fired.clear();
+        once.setAnimationTime(0);
+        onceDispatcher = AnimationEffectDispatcher.create(once, listener);
+        onceDispatcher.update();
+        Assertions.assertEquals(List.of("start"), fired);
+        onceDispatcher.update();
+        Assertions.assertEquals(List.of("start"), fired);
+        once.setAnimationTime(0.25F);
+        onceDispatcher.update();
+        Assertions.assertEquals(List.of("start", "dust"), fired);
+        once.setAnimationTime(0.5F);
+        onceDispatcher.update();
+        Assertions.assertEquals(List.of("start", "dust", "middle"), fired);
+    }
+
+    @Test
+    public void testBakedAnimation() throws GeometryCompileException {
+        AnimationData animation = AnimationParser.parse(ANIMATION)[0];
+        Assertions.assertTrue(BakedAnimation.canBake(animation));
+        BakedAnimation baked = BakedAnimation.bake(animation, 60);
+        Assertions.assertEquals(121, baked.getSampleCount());
+        Assertions.assertEquals(animation.boneAnimations().length, baked.getTracks().length);
+        Assertions.assertTrue(baked.getMaxError() < 0.1F, "Max error was " + baked.getMaxError());
+        Assertions.assertTrue(BakedAnimation.bake(animation, 10).getMaxError() > baked.getMaxError());
+
+        GeometryModelData data = GeometryModelParser.parseModel(MODEL)[0];
+        TestModel exact = new TestModel(GeometryTree.create(data));
+        TestModel sampled = new TestModel(GeometryTree.create(data));
+        MolangEnvironment environment = MolangRuntime.runtime().create();
+        PlayingAnimation playingAnimation = PlayingAnimation.of(animation);
+        AnimationBinding binding = AnimationBinding.bind(animation, sampled);
+        for (float time = 0; time < 5; time += 0.013F) {
+            playingAnimation.setAnimationTime(time);
+            exact.applyAnimations(environment, List.of(playingAnimation));
+            sampled.resetTransformation();
+            baked.apply(sampled, playingAnimation.getRenderAnimationTime(), 1.0F, binding);
+
+            for (int i = 0; i < exact.getBoneCount(); i++) {
+                AnimatedBone.AnimationPose expected = exact.getBone(i).getAnimationPose();
+                AnimatedBone.AnimationPose actual = sampled.getBone(i).getAnimationPose();
+                Assertions.assertTrue(expected.position().equals(actual.position(), baked.getMaxError() + 1E-4F), "Position mismatch at " + time);
+                Assertions.assertTrue(expected.rotation().equals(actual.rotation(), baked.getMaxError() + 1E-4F), "Rotation mismatch at " + time);
+                Assertions.assertTrue(expected.scale().equals(actual.scale(), baked.getMaxError() + 1E-4F), "Scale mismatch at " + time);
+            }
+        }
+
+        // Animations without any length hold a single pose
+        AnimationData pose = AnimationParser.parse("{\"format_version\":\"1.8.0\",\"animations\":{\"animation.test.pose\":{\"bones\":{\"bone\":{\"position\":[1,2,3]}}}}}")[0];
+        BakedAnimation bakedPose = BakedAnimation.bake(pose, 60);
+        Assertions.assertEquals(1, bakedPose.getSampleCount());
+        Assertions.assertEquals(0, bakedPose.getSampleTime(0));
+        Assertions.assertEquals(0, bakedPose.getMaxError());
+        for (float time : new float[]{0, 0.5F, 10}) {
+            AnimatedBone.AnimationPose result = new AnimatedBone.AnimationPose();
+            bakedPose.sample(0, time, 1.0F, result);
+            Assertions.assertEquals(new Vector3f(1, 2, 3), result.position());
+            Assertions.assertEquals(new Vector3f(1, 1, 1), result.scale());
+        }
+
+        AnimationData expression = AnimationParser.parse("{\"format_version\":\"1.8.0\",\"animations\":{\"animation.test.expression\":{\"bones\":{\"bone\":{\"position\":[0,\"math.sin(q.anim_time)\",0]}}}}}")[0];
+        Assertions.assertFalse(BakedAnimation.canBake(expression));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> BakedAnimation.bake(expression, 60));
+    }
+
+    @Test
+    public void testCompressedAnimation() throws GeometryCompileException {
+        StringBuilder bones = new StringBuilder("{\"name\":\"root\",\"pivot\":[0,0,0]}");
+        StringBuilder boneAnimations = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            bones.append(",{\"name\":\"bone").append(i).append("\",\"parent\":\"root\",\"pivot\":[0,").append(i).append(",0]}");
+            StringBuilder position = new StringBuilder();
+            StringBuilder rotation = new StringBuilder();
+            StringBuilder scale = new StringBuilder();
+            for (int frame = 0; frame <= 48; frame++) {
+                if (frame > 0) {
+                    position.append(',');
+                    rotation.append(',');
+                    scale.append(',');
+                }
+                String time = "\"" + frame / 24.0F + "\"";
+                // Position moves in a straight line, rotation turns and then holds, and scale never changes
+                position.append(time).append(":[").append(frame * 0.25F).append(",0,").append(i).append(']');
+                rotation.append(time).append(":{\"post\":[").append(Math.min(frame, 24) * 2.0F).append(",").append(i).append(",0],\"lerp_mode\":\"").append(i % 2 == 0 ? "linear" : "catmullrom").append("\"}");
+                scale.append(time).append(":[1,1,1]");
+            }
+            if (i > 0) {
+                boneAnimations.append(',');
+            }
+            boneAnimations.append("\"bone").append(i).append("\":{\"position\":{").append(position).append("},\"rotation\":{").append(rotation).append("},\"scale\":{").append(scale).append("}}");
+        }
+        boneAnimations.append(",\"root\":{\"position\":[0,\"math.sin(q.anim_time)\",0]}");
+        GeometryModelData data = GeometryModelParser.parseModel("{\"format_version\":\"1.12.0\",\"minecraft:geometry\":[{\"description\":{\"identifier\":\"rig\",\"texture_width\":16,\"texture_height\":16},\"bones\":[" + bones + "]}]}")[0];
+        AnimationData animation = AnimationParser.parse("{\"format_version\":\"1.8.0\",\"animations\":{\"animation.test.library\":{\"loop\":true,\"animation_length\":2,\"bones\":{" + boneAnimations + "}}}}")[0];
+
+        CompressedAnimation compressed = CompressedAnimation.compress(animation, 0.05F);
+        Assertions.assertTrue(compressed.getMaxError() <= 0.05F, "Max error was " + compressed.getMaxError());
+        int sourceKeys = 0;
+        for (int i = 0; i < animation.boneAnimations().length; i++) {
+            AnimationData.BoneAnimation boneAnimation = animation.boneAnimations()[i];
+            sourceKeys += boneAnimation.positionFrames().length + boneAnimation.rotationFrames().length + boneAnimation.scaleFrames().length;
+            if ("root".equals(boneAnimation.name())) {
+                Assertions.assertFalse(compressed.isCompressed(i));
+                continue;
+            }
+
+            Assertions.assertTrue(compressed.isCompressed(i));
+            Assertions.assertEquals(2, compressed.getKeyCount(i, 0), "Straight lines only need their end points");
+            Assertions.assertTrue(compressed.getKeyCount(i, 1) < boneAnimation.rotationFrames().length);
+            Assertions.assertEquals(0, compressed.getKeyCount(i, 2), "Scale never changes from the default");
+        }
+        Assertions.assertTrue(compressed.getKeyCount() < sourceKeys / 3);
+
+        long sourceSize = estimateSize(animation);
+        long compressedSize = estimateSize(compressed);
+        Assertions.assertTrue(compressedSize * 5 < sourceSize, "Compressed animation used " + compressedSize + " bytes, source used " + sourceSize + " bytes");
+
+        TestModel exact = new TestModel(GeometryTree.create(data));
+        TestModel sampled = new TestModel(GeometryTree.create(data));
+        MolangEnvironment environment = MolangRuntime.runtime().create();
+        PlayingAnimation exactAnimation = PlayingAnimation.of(animation);
+        PlayingAnimation sampledAnimation = PlayingAnimation.of(compressed);
+        Assertions.assertSame(compressed, sampledAnimation.getCompressedAnimation());
+        AnimationBinding[] bindings = {AnimationBinding.bind(compressed.getAnimation(), sampled)};
+        for (float time = 0; time < 4; time += 0.011F) {
+            exactAnimation.setAnimationTime(time);
+            sampledAnimation.setAnimationTime(time);
+            exact.applyAnimations(environment, List.of(exactAnimation));
+            sampled.applyAnimations(environment, List.of(sampledAnimation), bindings);
+
+            // Time quantization adds a tiny amount of error on top of the reported error
+            float tolerance = compressed.getMaxError() + 1E-3F;
+            for (int i = 0; i < exact.getBoneCount(); i++) {
+                AnimatedBone.AnimationPose expected = exact.getBone(i).getAnimationPose();
+                AnimatedBone.AnimationPose actual = sampled.getBone(i).getAnimationPose();
+                Assertions.assertTrue(expected.position().equals(actual.position(), tolerance), "Position mismatch at " + time);
+                Assertions.assertTrue(expected.rotation().equals(actual.rotation(), tolerance), "Rotation mismatch at " + time);
+                Assertions.assertTrue(expected.scale().equals(actual.scale(), tolerance), "Scale mismatch at " + time);
+            }
+        }
+
+        // A frame close to but not at 0 is still interpolated towards, even when its time is smaller than the time precision
+        AnimationData start = AnimationParser.parse("{\"format_version\":\"1.8.0\",\"animations\":{\"animation.test.start\":{\"bones\":{\"bone\":{\"position\":{\"0.0004\":{\"pre\":[10,0,0],\"post\":[20,0,0]},\"1.0\":[20,0,0]}}}}}}")[0];
+        CompressedAnimation compressedStart = CompressedAnimation.compress(start, 0);
+        // Long captured clips only measure the error around each removed key, so they still compress within the tolerance
+        StringBuilder capture = new StringBuilder();
+        for (int frame = 0; frame <= 4800; frame++) {
+            if (frame > 0) {
+                capture.append(',');
+            }
+            float time = frame / 24.0F;
+            capture.append("\"").append(time).append("\":{\"post\":[").append((float) Math.sin(time) * 10.0F).append(",").append((float) Math.sin(time * 0.37F) * 5.0F).append(",0],\"lerp_mode\":\"catmullrom\"}");
+        }
+        AnimationData captured = AnimationParser.parse("{\"format_version\":\"1.8.0\",\"animations\":{\"animation.test.capture\":{\"bones\":{\"bone\":{\"rotation\":{" + capture + "}}}}}}")[0];
+        CompressedAnimation compressedCapture = CompressedAnimation.compress(captured, 0.2F);
+        Assertions.assertTrue(compressedCapture.getMaxError() <= 0.2F, "Max error was " + compressedCapture.getMaxError());
+        Assertions.assertTrue(compressedCapture.getKeyCount(0, 1) < captured.boneAnimations()[0].rotationFrames().length / 4, "Kept " + compressedCapture.getKeyCount(0, 1) + " keys");
+
+        float[] expected = {0, 20, 20};
+        float[] times = {0, 0.5F, 1.0F};
+        for (int i = 0; i < times.length; i++) {
+            AnimatedBone.AnimationPose pose = new AnimatedBone.AnimationPose();
+            compressedStart.apply(0, times[i], 1.0F, environment, pose, null);
+            Assertions.assertEquals(expected[i], pose.position().x(), 1E-3F, "Position mismatch at " + times[i]);
+        }
+    }
+
+    /**
+     * Estimates the retained size of an object graph, assuming a 64-bit JVM with compressed references.
+     */
+    private static long estimateSize(Object root) {
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Object> queue = new ArrayDeque<>();
+        queue.add(root);
+        long size = 0;
+        while (!queue.isEmpty()) {
+            Object object = queue.poll();
+            Class<?> type = object.getClass();
+            if (!visited.add(object) || type.isEnum() || object instanceof Class<?>) {
+                continue;
+            }
+
+            if (type.isArray()) {
+                int length = Array.getLength(object);
+                Class<?> component = type.getComponentType();
+                size += align(16 + (long) length * getSize(component));
+                if (!component.isPrimitive()) {
+                    for (int i = 0; i < length; i++) {
+                        Object element = Array.get(object, i);
+                        if (element != null) {
+                            queue.add(element);
+                        }
+                    }
+                }
+                continue;
+            }
+
+            long objectSize = 12;
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    objectSize += getSize(field.getType());
+                    // JDK internals can't be opened, so only the shallow size of those objects is counted
+                    if (!field.getType().isPrimitive() && !c.getName().startsWith("java.")) {
+                        try {
+                            field.setAccessible(true);
+                            Object value = field.get(object);
+                            if (value != null) {
+                                queue.add(value);
+                            }
+                        } catch (ReflectiveOperationException | RuntimeException ignored) {
+                        }
+                    }
+                }
+            }
+            size += align(objectSize);
+        }
+        return size;
+    }
+
+    private static long getSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class || !type.isPrimitive()) {
+            return 4;
+        }
+        if (type == char.class || type == short.class) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    private record TestModel(GeometryTree tree) implements GeometryModel {
+
+        @Override
+        public @Nullable AnimatedBone getBone(String name) {
+            return this.tree.getBone(name);
+        }
+
+        @Override
+        public int getBoneIndex(String name) {
+            return this.tree.getBoneIndex(name);
+        }
+
+        @Override
+        public AnimatedBone getBone(int index) {
+            return this.tree.getBone(index);
+        }
+
+        @Override
+        public int getBoneCount() {
+            return this.tree.getBoneCount();
+        }
+
+        @Override
+        public Collection<AnimatedBone> getBones() {
+            return this.tree.getBones();
+        }
+
+        @Override
+        public Collection<AnimatedBone> getRootBones() {
+            return this.tree.getRootBones();
+        }
+
+        @Override
+        public void render(GeometryRenderer renderer, MatrixStack matrixStack) {
+        }
+
+        @Override
+        public @Nullable LocatorTransformation getLocatorTransformation(String name) {
+            return null;
+        }
+
+        @Override
+        public GeometryModelData.Locator[] getLocators() {
+            return new GeometryModelData.Locator[0];
+        }
+    }
+}
@@ -0,0 +1,106 @@
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.pinwheel.api.geometry.GeometryModelData;
+import gg.moonflower.pinwheel.api.geometry.GeometryModelParser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Objects;
+
+public class GeometryParserTest {
+
+    private static final String[] MODELS = {
+            "{\"format_version\":\"1.1.0\",\"geometry.legacy\":{\"texturewidth\":64,\"textureheight\":32,\"visible_bounds_width\":2,\"visible_bounds_offset\":[0,1,0],\"preserve_model_pose\":true,\"cape\":\"ignored\",\"bones\":[{\"name\":\"body\",\"pivot\":[0,24,0],\"reset\":true,\"bind_pose_rotation2588\":[1,2,3],\"cubes\":[{\"origin\":[-4,12,-2],\"size\":[8,12,4],\"uv\":[16,16],\"inflate\":0.25},{\"origin\":[0,0,0],\"size\":[1,1,1],\"uv\":4}],\"locators\":{\"lead\":[0,24,0],\"hand\":2}}]},\"debug\":true}",
+            "{\"format_version\":\"1.8.0\",\"geometry.old\":{\"texturewidth\":64,\"textureheight\":64,\"cape\":\"cape\",\"bones\":[{\"name\":\"root\",\"neverrender\":true,\"bind_pose_rotation2588\":[1,2,3]},{\"name\":\"head\",\"parent\":\"root\",\"pivot\":[0,24,0],\"rotation\":[10,0,0],\"mirror\":true,\"cubes\":[{\"origin\":[-4,24,-4],\"size\":[8,8,8],\"uv\":[0,0],\"mirror\":false},{\"origin\":[-1,24,-5],\"size\":[2,2,1],\"uv\":{\"north\":{\"uv\":[24,0],\"uv_size\":[2,2],\"material_instance\":\"nose\"},\"up\":{\"uv\":[24,2]},\"uv\":[100,100]}}],\"poly_mesh\":{\"normalized_uvs\":true,\"positions\":[[0,0,0],[1,0,0],[1,1,0],[0,1,0]],\"normals\":[[0,0,-1]],\"uvs\":[[0,0],[1,0],[1,1],[0,1]],\"polys\":[[[0,0,0],[1,0,1],[2,0,2],[3,0,3]]]}}]}}",
+            "{\"format_version\":\"1.12.0\",\"minecraft:geometry\":[{\"description\":{\"identifier\":\"geometry.a\",\"texture_width\":32,\"texture_height\":16,\"visible_bounds_offset\":[0,0.75,0]},\"cape\":\"cape\",\"bones\":[{\"name\":\"root\",\"reset2588\":true,\"neverrender2588\":true,\"inflate\":0.5,\"cubes\":[{\"origin\":[0,0,0],\"size\":[1,2,3],\"pivot\":[0,1,0],\"rotation\":[0,45,0],\"uv\":[1,2]}],\"poly_mesh\":{\"positions\":[[0,0,0],[1,0,0],[1,1,0]],\"normals\":[[0,0,1]],\"uvs\":[[0,0],[1,0],[1,1]],\"polys\":\"tri_list\"}}]},{\"description\":{\"identifier\":\"geometry.b\"},\"bones\":[{\"name\":\"tri\",\"poly_mesh\":{\"positions\":[[0,0,0],[1,0,0],[1,1,0]],\"polys\":[[[0,0,0],[1,0,1],[2,0,2]]]}}]}]}",
+            "{\"format_version\":\"1.14.0\",\"minecraft:geometry\":[{\"description\":{\"identifier\":\"geometry.c\",\"texture_width\":16,\"texture_height\":16,\"preserve_model_pose2588\":true},\"bones\":[{\"name\":\"root\",\"cubes\":[{\"origin\":[0,0,0],\"size\":[4,4,4],\"uv\":{\"uv\":[8,4],\"east\":{\"uv\":[1,1],\"uv_size\":[-4,4]},\"down\":{\"uv\":[2,2],\"material_instance\":\"bottom\"}}}]}]}]}",
+            "{\"format_version\":\"1.16.0\",\"minecraft:geometry\":[{\"description\":{\"identifier\":\"geometry.d\"},\"bones\":[{\"name\":\"root\",\"binding\":1.5,\"locators\":{\"a\":[1,2,3]}},{\"name\":\"child\",\"parent\":\"root\",\"cubes\":[{\"size\":[2,2,2],\"uv\":{\"south\":{\"uv\":[0,0]}}}]}]}]}",
+            "{\"format_version\":\"1.21.0\",\"minecraft:geometry\":[{\"description\":{\"identifier\":\"geometry.e\",\"texture_width\":64,\"texture_height\":64},\"bones\":[{\"name\":\"root\",\"cubes\":[{\"origin\":[0,0,0],\"size\":[2,4,6],\"uv\":{\"uv\":[3,3],\"west\":{\"uv\":[0,0],\"uv_size\":[6,4],\"uv_rotation\":90},\"up\":{\"uv\":[6,0],\"uv_rotation\":270}}},{\"size\":[1,1,1],\"uv\":[32,32]}]}]}]}",
+            "{\"minecraft:geometry\":[{\"description\":{\"identifier\":\"geometry.late_version\"},\"bones\":[{\"name\":\"root\",\"pivot\":[1,2,3]}]}],\"format_version\":\"1.12.0\"}",
+    };
+
+    private static final String[] INVALID_MODELS = {
+            "{\"format_version\":\"1.0.0\",\"minecraft:geometry\":[]}",
+            "{\"format_version\":\"1.12.0\",\"minecraft:geometry\":[{\"description\":{\"identifier\":\"dup\"},\"bones\":[{\"name\":\"a\"},{\"name\":\"a\"}]}]}",
+            "{\"format_version\":\"1.12.0\",\"minecraft:geometry\":[{\"description\":{\"identifier\":\"zero\",\"texture_width\":0}}]}",
+            "{\"format_version\":\"1.14.0\",\"minecraft:geometry\":[{\"description\":{\"identifier\":\"box\"},\"bones\":[{\"name\":\"a\",\"cubes\":[{\"uv\":[0,0]}]}]}]}",
+            "{\"format_version\":\"1.21.0\",\"minecraft:geometry\":[{\"description\":{\"identifier\":\"rot\"},\"bones\":[{\"name\":\"a\",\"cubes\":[{\"uv\":{\"north\":{\"uv\":[0,0],\"uv_rotation\":45}}}]}]}]}",
+            "{\"format_version\":\"1.12.0\",\"minecraft:geometry\":[{\"description\":{\"identifier\":\"mesh\"},\"bones\":[{\"name\":\"a\",\"poly_mesh\":{\"positions\":[[0,0]],\"polys\":\"tri_list\"}}]}]}",
+            "{\"format_version\":\"1.8.0\",\"geometry.a\":{},\"geometry.b\":{}}",
+    };
+
+    @Test
+    public void testStreamingParity() {
+        for (String json : MODELS) {
+            GeometryModelData[] expected = GeometryModelParser.parseModel(JsonParser.parseString(json));
+            GeometryModelData[] actual = GeometryModelParser.parseModel(json);
+            Assertions.assertTrue(expected.length > 0);
+            Assertions.assertEquals(Arrays.toString(expected), Arrays.toString(actual));
+        }
+    }
+
+    @Test
+    public void testStreamingErrors() {
+        for (String json : INVALID_MODELS) {
+            Assertions.assertThrows(JsonParseException.class, () -> GeometryModelParser.parseModel(JsonParser.parseString(json)), json);
+            Assertions.assertThrows(JsonParseException.class, () -> GeometryModelParser.parseModel(json), json);
+        }
+    }
+
+    @Test
+    public void testBinaryRoundTrip(@TempDir Path folder) throws IOException {
+        for (int i = 0; i < MODELS.length; i++) {
+            GeometryModelData[] expected = GeometryModelParser.parseModel(MODELS[i]);
+
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            GeometryModelParser.writeBinary(expected, stream);
+            ByteBuffer buffer = ByteBuffer.wrap(stream.toByteArray());
+            Assertions.assertEquals(Arrays.toString(expected), Arrays.toString(GeometryModelParser.parseBinary(buffer)));
+            Assertions.assertEquals(0, buffer.position());
+
+            Path file = folder.resolve("model" + i + ".pgeo");
+            try (OutputStream fileStream = Files.newOutputStream(file)) {
+                GeometryModelParser.writeBinary(expected, fileStream);
+            }
+            Assertions.assertEquals(Arrays.toString(expected), Arrays.toString(GeometryModelParser.parseBinary(file)));
+
+            byte[] truncated = Arrays.copyOf(stream.toByteArray(), stream.size() / 2);
+            Assertions.assertThrows(IOException.class, () -> GeometryModelParser.parseBinary(ByteBuffer.wrap(truncated)));
+        }
+        Assertions.assertThrows(IOException.class, () -> GeometryModelParser.parseBinary(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5, 6, 7, 8})));
+    }
+
+    @Test
+    public void testBinaryBinding() throws IOException {
+        String binding = "query.has_parent ? math.sin(query.anim_time * 90) : 0";
+        GeometryModelData[] expected = GeometryModelParser.parseModel("{\"format_version\":\"1.16.0\",\"minecraft:geometry\":[{\"description\":{\"identifier\":\"binding\"},\"bones\":[{\"name\":\"root\",\"binding\":\"" + binding + "\"}]}]}");
+        Assertions.assertEquals(binding, Objects.requireNonNull(expected[0].bones()[0].binding()).toString());
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        GeometryModelParser.writeBinary(expected, stream);
+        GeometryModelData[] actual = GeometryModelParser.parseBinary(ByteBuffer.wrap(stream.toByteArray()));
+        Assertions.assertEquals(binding, Objects.requireNonNull(actual[0].bones()[0].binding()).toString());
+        Assertions.assertEquals(Arrays.toString(expected), Arrays.toString(actual));
+
+        // Bindings created in code can only be written if they are constant
+        Assertions.assertDoesNotThrow(() -> GeometryModelParser.writeBinary(withBinding(expected[0], MolangExpression.of(2)), new ByteArrayOutputStream()));
+        Assertions.assertThrows(IOException.class, () -> GeometryModelParser.writeBinary(withBinding(expected[0], MolangExpression.of(() -> 2.0F)), new ByteArrayOutputStream()));
+    }
+
+    private static GeometryModelData[] withBinding(GeometryModelData model, MolangExpression binding) {
+        GeometryModelData.Bone bone = model.bones()[0];
+        return new GeometryModelData[]{new GeometryModelData(model.description(), model.cape(), new GeometryModelData.Bone[]{
+                new GeometryModelData.Bone(bone.name(), bone.reset2588(), bone.neverRender2588(), bone.parent(), bone.pivot(), bone.rotation(), bone.bindPoseRotation2588(),
+                        bone.mirror(), bone.inflate(), bone.debug(), bone.cubes(), bone.locators(), binding, bone.polyMesh())
+        })};
+    }
+}
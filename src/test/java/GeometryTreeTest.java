@@ -1,15 +1,57 @@
 import com.google.common.base.Stopwatch;
+import gg.moonflower.pinwheel.api.geometry.GeometryBatchRenderer;
+import gg.moonflower.pinwheel.api.geometry.GeometryDrawList;
+import gg.moonflower.pinwheel.api.geometry.CompiledGeometry;
 import gg.moonflower.pinwheel.api.geometry.GeometryCompileException;
+import gg.moonflower.pinwheel.api.geometry.GeometryCompileOptions;
+import gg.moonflower.pinwheel.api.geometry.GeometryCuller;
 import gg.moonflower.pinwheel.api.geometry.GeometryModelData;
 import gg.moonflower.pinwheel.api.geometry.GeometryModelParser;
 import gg.moonflower.pinwheel.api.geometry.GeometryTree;
+import gg.moonflower.pinwheel.api.geometry.IndexedGeometry;
+import gg.moonflower.pinwheel.api.geometry.QuantizedGeometry;
+import gg.moonflower.pinwheel.api.geometry.VertexLayout;
 import gg.moonflower.pinwheel.api.geometry.bone.AnimatedBone;
+import gg.moonflower.pinwheel.api.geometry.bone.BoneBounds;
+import gg.moonflower.pinwheel.api.geometry.bone.Polygon;
+import gg.moonflower.pinwheel.api.geometry.bone.Vertex;
+import gg.moonflower.pinwheel.api.texture.ModelTexture;
+import gg.moonflower.pinwheel.api.texture.TextureLocation;
+import gg.moonflower.pinwheel.api.texture.TextureTable;
+import gg.moonflower.pinwheel.api.transform.LocatorTransformation;
+import gg.moonflower.pinwheel.api.transform.MatrixStack;
+import gg.moonflower.pinwheel.impl.geometry.VertexWriter;
+import gg.moonflower.pinwheel.impl.geometry.bone.AnimatedBoneImpl;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 public class GeometryTreeTest {
 
+    private static final String MODEL = "{\"format_version\":\"1.12.0\",\"minecraft:geometry\":[{\"description\":{\"identifier\":\"model\",\"texture_width\":32,\"texture_height\":32},\"bones\":[{\"name\":\"root\",\"pivot\":[0,0,0],\"cubes\":[{\"origin\":[-2,0,-2],\"size\":[4,2,4],\"uv\":[0,0]}]},{\"name\":\"body\",\"parent\":\"root\",\"pivot\":[0,3,0],\"rotation\":[10,0,5],\"cubes\":[{\"origin\":[-2,2,-2],\"size\":[4,6,4],\"uv\":[0,12]}]},{\"name\":\"head\",\"parent\":\"body\",\"pivot\":[0,8,0],\"cubes\":[{\"origin\":[-3,8,-3],\"size\":[6,6,6],\"uv\":[0,0]}]},{\"name\":\"hat\",\"parent\":\"head\",\"pivot\":[0,14,0],\"cubes\":[{\"origin\":[-3,14,-3],\"size\":[6,2,6],\"uv\":[0,0]}]},{\"name\":\"arm\",\"parent\":\"root\",\"pivot\":[3,6,0],\"rotation\":[0,30,0],\"cubes\":[{\"origin\":[2,0,-1],\"size\":[2,6,2],\"uv\":[16,0]}]}]}]}";
+
     @Test
     public void testGeometryTree() throws GeometryCompileException {
         GeometryModelData loadModel = GeometryModelParser.parseModel("{\"format_version\":\"1.12.0\",\"minecraft:geometry\":[{\"description\":{\"identifier\":\"creepie\",\"texture_width\":32,\"texture_height\":32,\"visible_bounds_width\":2,\"visible_bounds_height\":2.5,\"visible_bounds_offset\":[0,0.75,0]},\"bones\":[{\"name\":\"root\",\"pivot\":[0,0,0]},{\"name\":\"creepie\",\"parent\":\"root\",\"pivot\":[0,0,0],\"rotation\":[0,0,0]},{\"name\":\"r_leg_front\",\"parent\":\"creepie\",\"pivot\":[-2,3,-2],\"cubes\":[{\"origin\":[-3,0,-3],\"size\":[2,3,2],\"uv\":[16,12]}]},{\"name\":\"l_leg_front\",\"parent\":\"creepie\",\"pivot\":[2,3,-2],\"cubes\":[{\"origin\":[1,0,-3],\"size\":[2,3,2],\"uv\":[16,12]}]},{\"name\":\"r_leg_back\",\"parent\":\"creepie\",\"pivot\":[-2,3,2],\"cubes\":[{\"origin\":[-3,0,1],\"size\":[2,3,2],\"uv\":[16,17]}]},{\"name\":\"l_leg_back\",\"parent\":\"creepie\",\"pivot\":[2,3,2],\"cubes\":[{\"origin\":[1,0,1],\"size\":[2,3,2],\"uv\":[16,17]}]},{\"name\":\"upper_body\",\"parent\":\"creepie\",\"pivot\":[0,3,0],\"cubes\":[{\"origin\":[-2,2,-2],\"size\":[4,6,4],\"uv\":[0,12]}]},{\"name\":\"head\",\"parent\":\"upper_body\",\"pivot\":[0,8,0],\"cubes\":[{\"origin\":[-3,8,-3],\"size\":[6,6,6],\"uv\":[0,0]}]},{\"name\":\"floof\",\"parent\":\"head\",\"pivot\":[0,14,0],\"cubes\":[{\"origin\":[-3,14,0],\"size\":[6,6,0],\"uv\":[0,22]}]}]},{\"description\":{\"identifier\":\"creepie_armor\",\"texture_width\":32,\"texture_height\":32,\"visible_bounds_width\":2,\"visible_bounds_height\":2.5,\"visible_bounds_offset\":[0,0.75,0]},\"bones\":[{\"name\":\"root\",\"pivot\":[0,0,0]},{\"name\":\"creepie\",\"parent\":\"root\",\"pivot\":[0,0,0],\"rotation\":[0,0,0]},{\"name\":\"r_leg_front\",\"parent\":\"creepie\",\"pivot\":[-2,3,-2],\"cubes\":[{\"origin\":[-3,0,-3],\"size\":[2,3,2],\"inflate\":0.5,\"uv\":[16,12]}]},{\"name\":\"l_leg_front\",\"parent\":\"creepie\",\"pivot\":[2,3,-2],\"cubes\":[{\"origin\":[1,0,-3],\"size\":[2,3,2],\"inflate\":0.5,\"uv\":[16,12]}]},{\"name\":\"r_leg_back\",\"parent\":\"creepie\",\"pivot\":[-2,3,2],\"cubes\":[{\"origin\":[-3,0,1],\"size\":[2,3,2],\"inflate\":0.5,\"uv\":[16,17]}]},{\"name\":\"l_leg_back\",\"parent\":\"creepie\",\"pivot\":[2,3,2],\"cubes\":[{\"origin\":[1,0,1],\"size\":[2,3,2],\"inflate\":0.5,\"uv\":[16,17]}]},{\"name\":\"upper_body\",\"parent\":\"creepie\",\"pivot\":[0,3,0],\"cubes\":[{\"origin\":[-2,2,-2],\"size\":[4,6,4],\"inflate\":0.5,\"uv\":[0,12]}]},{\"name\":\"head\",\"parent\":\"upper_body\",\"pivot\":[0,8,0],\"cubes\":[{\"origin\":[-3,8,-3],\"size\":[6,6,6],\"inflate\":0.5,\"uv\":[0,0]}]}]}]}")[0];
@@ -30,6 +72,731 @@ public class GeometryTreeTest {
 //        builder.add(AnimatedBone.create());
     }
 
+    @Test
+    public void testIndexedBones() throws GeometryCompileException {
+        GeometryModelData model = GeometryModelParser.parseModel("{\"format_version\":\"1.12.0\",\"minecraft:geometry\":[{\"description\":{\"identifier\":\"baked\",\"texture_width\":32,\"texture_height\":32},\"bones\":[{\"name\":\"root\",\"pivot\":[0,0,0]},{\"name\":\"body\",\"parent\":\"root\",\"pivot\":[0,3,0],\"cubes\":[{\"origin\":[-2,2,-2],\"size\":[4,6,4],\"uv\":[0,12]}]},{\"name\":\"head\",\"parent\":\"body\",\"pivot\":[0,8,0],\"cubes\":[{\"origin\":[-3,8,-3],\"size\":[6,6,6],\"uv\":[0,0]},{\"origin\":[-3,14,0],\"size\":[6,6,0],\"uv\":[0,22]}]}]}]}")[0];
+        GeometryTree tree = GeometryTree.create(model);
+        IndexedGeometry indexed = tree.bakeIndexed();
+
+        // Every bone keeps its index and the polygons of each bone become triangles in the spans of that bone
+        Assertions.assertEquals(tree.getBoneCount(), indexed.getBoneCount());
+        int polygons = 0;
+        int span = 0;
+        for (int bone = 0; bone < tree.getBoneCount(); bone++) {
+            AnimatedBone animatedBone = tree.getBone(bone);
+            Assertions.assertEquals(animatedBone.getBone().name(), indexed.getBoneName(bone));
+
+            int expectedIndices = 0;
+            for (Polygon polygon : animatedBone.getPolygons()) {
+                expectedIndices += (polygon.vertices().length - 2) * 3;
+                polygons++;
+            }
+            int actualIndices = 0;
+            while (span < indexed.getSpanCount() && indexed.getSpanBone(span) == bone) {
+                actualIndices += indexed.getIndexCount(span);
+                span++;
+            }
+            Assertions.assertEquals(expectedIndices, actualIndices, animatedBone.getBone().name());
+        }
+        Assertions.assertEquals(indexed.getSpanCount(), span);
+        Assertions.assertEquals(6 + 6 + 2, polygons);
+        Assertions.assertEquals(polygons * 6, indexed.getIndexCount());
+    }
+
+    @Test
+    public void testParallelCompile() throws Exception {
+        GeometryModelData model = GeometryModelParser.parseModel("{\"format_version\":\"1.12.0\",\"minecraft:geometry\":[{\"description\":{\"identifier\":\"parallel\",\"texture_width\":64,\"texture_height\":64},\"bones\":[{\"name\":\"root\",\"pivot\":[0,0,0],\"cubes\":[{\"origin\":[-4,0,-4],\"size\":[8,8,8],\"pivot\":[0,4,0],\"rotation\":[15,30,45],\"uv\":[0,0]}]},{\"name\":\"arm\",\"parent\":\"root\",\"pivot\":[4,8,0],\"rotation\":[0,0,20],\"cubes\":[{\"origin\":[4,0,-1],\"size\":[2,8,2],\"pivot\":[5,8,0],\"rotation\":[-30,0,10],\"uv\":[32,0]}]}]}]}")[0];
+        IndexedGeometry expected = GeometryTree.create(model).bakeIndexed();
+
+        GeometryModelData[] models = new GeometryModelData[256];
+        Arrays.fill(models, model);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            GeometryTree[] trees = GeometryTree.createAll(models, executor).join();
+            Assertions.assertEquals(models.length, trees.length);
+            for (GeometryTree tree : trees) {
+                IndexedGeometry indexed = tree.bakeIndexed();
+                Assertions.assertArrayEquals(expected.getPositions(), indexed.getPositions());
+                Assertions.assertArrayEquals(expected.getUVs(), indexed.getUVs());
+                Assertions.assertArrayEquals(expected.getNormals(), indexed.getNormals());
+                Assertions.assertArrayEquals(expected.getIndices(), indexed.getIndices());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSharedGeometry() throws GeometryCompileException {
+        GeometryModelData model = GeometryModelParser.parseModel("{\"format_version\":\"1.12.0\",\"minecraft:geometry\":[{\"description\":{\"identifier\":\"shared\",\"texture_width\":32,\"texture_height\":32},\"bones\":[{\"name\":\"head\",\"parent\":\"body\",\"pivot\":[0,8,0],\"cubes\":[{\"origin\":[-3,8,-3],\"size\":[6,6,6],\"uv\":[0,0]}],\"locators\":{\"eyes\":[0,11,-3]}},{\"name\":\"root\",\"pivot\":[0,0,0]},{\"name\":\"body\",\"parent\":\"root\",\"pivot\":[0,3,0],\"cubes\":[{\"origin\":[-2,2,-2],\"size\":[4,6,4],\"uv\":[0,12]}]},{\"name\":\"tail\",\"parent\":\"root\",\"pivot\":[0,2,2]}]}]}")[0];
+        CompiledGeometry geometry = CompiledGeometry.compile(model);
+        GeometryTree first = geometry.createTree();
+        GeometryTree second = geometry.createTree();
+
+        Assertions.assertEquals(Arrays.asList("root", "body", "head", "tail"), first.getBones().stream().map(bone -> bone.getBone().name()).collect(Collectors.toList()));
+        Assertions.assertEquals(GeometryTree.create(model), first);
+        Assertions.assertEquals(1, first.getRootBones().size());
+        for (int i = 0; i < geometry.getBoneCount(); i++) {
+            Assertions.assertSame(geometry.getPolygons(i), first.getBone(i).getPolygons());
+            Assertions.assertSame(geometry.getPolygons(i), second.getBone(i).getPolygons());
+            Assertions.assertEquals(i, first.getBoneIndex(geometry.getBone(i).name()));
+        }
+
+        first.getBone(geometry.getBoneIndex("head")).getAnimationPose().rotation().set(0, 45, 0);
+        first.getBone(0).setVisible(false);
+        Assertions.assertEquals(0, second.getBone(geometry.getBoneIndex("head")).getAnimationPose().rotation().lengthSquared());
+        Assertions.assertTrue(second.getBone(0).isVisible());
+
+        first.updateLocators();
+        Assertions.assertNotSame(first.getLocatorTransformation("eyes"), second.getLocatorTransformation("eyes"));
+        Assertions.assertNotEquals(first.getLocatorTransformation("eyes").matrix(), second.getLocatorTransformation("eyes").matrix());
+    }
+
+    @Test
+    public void testWorldMatrices() throws GeometryCompileException {
+        GeometryModelData model = GeometryModelParser.parseModel(MODEL)[0];
+        GeometryTree tree = GeometryTree.create(model);
+        tree.getBone("body").getAnimationPose().add(0, 1, 0, 0, 20, 0, 0, 0, 0);
+        tree.getBone("head").getAnimationPose().add(1, 0, 0, 45, 0, 0, 0.5F, 0.5F, 0.5F);
+        tree.getBone("arm").getAnimationPose().add(0, 0, 0, -30, 0, 15, 0, 0, 0);
+
+        Map<Polygon, Matrix4f> rendered = new IdentityHashMap<>();
+        for (AnimatedBone bone : tree.getRootBones()) {
+            bone.render((matrixStack, polygon) -> rendered.put(polygon, new Matrix4f(matrixStack.position())), MatrixStack.create());
+        }
+
+        Matrix4f[] matrices = new Matrix4f[tree.getBoneCount()];
+        for (int i = 0; i < matrices.length; i++) {
+            matrices[i] = new Matrix4f();
+        }
+        tree.computeWorldMatrices(matrices);
+
+        Assertions.assertEquals(-1, tree.getParentIndex(0));
+        for (int i = 0; i < matrices.length; i++) {
+            AnimatedBone bone = tree.getBone(i);
+            int parent = tree.getParentIndex(i);
+            Assertions.assertTrue(parent < i);
+            Assertions.assertEquals(bone.getBone().parent(), parent == -1 ? null : tree.getBone(parent).getBone().name());
+            for (Polygon polygon : bone.getPolygons()) {
+                Assertions.assertTrue(rendered.get(polygon).equals(matrices[i], 1.0E-6F), bone.getBone().name());
+            }
+        }
+        Assertions.assertThrows(IllegalArgumentException.class, () -> tree.computeWorldMatrices(new Matrix4f[1]));
+    }
+
+    @Test
+    public void testDefaultBoneIndex() throws GeometryCompileException {
+        GeometryModelData model = GeometryModelParser.parseModel(MODEL)[0];
+        GeometryTree source = GeometryTree.create(model);
+        GeometryTree tree = new BoneListTree(new ArrayList<>(source.getBones()));
+        Assertions.assertEquals(source.getBoneCount(), tree.getBoneCount());
+        for (int i = 0; i < tree.getBoneCount(); i++) {
+            AnimatedBone bone = tree.getBone(i);
+            Assertions.assertSame(source.getBone(i), bone);
+            Assertions.assertEquals(i, tree.getBoneIndex(bone.getBone().name()));
+        }
+        Assertions.assertEquals(-1, tree.getBoneIndex("missing"));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> tree.getBone(tree.getBoneCount()));
+
+        // Trees that are equal by value must still return their own bones
+        GeometryTree copy = new BoneListTree(new ArrayList<>(GeometryTree.create(model).getBones()));
+        Assertions.assertEquals(tree, copy);
+        for (int i = 0; i < copy.getBoneCount(); i++) {
+            Assertions.assertNotSame(tree.getBone(i), copy.getBone(i));
+        }
+    }
+
+    @Test
+    public void testDefaultBoneOrder() throws GeometryCompileException {
+        GeometryTree source = GeometryTree.create(GeometryModelParser.parseModel(MODEL)[0]);
+        List<AnimatedBone> bones = new ArrayList<>(source.getBones());
+        Collections.reverse(bones);
+        GeometryTree tree = new BoneListTree(bones);
+        source.getBone("body").getAnimationPose().add(0, 1, 0, 0, 20, 0, 0, 0, 0);
+        source.getBone("arm").getAnimationPose().add(0, 0, 0, -30, 0, 15, 0, 0, 0);
+
+        // Children are visited in reverse, so arm comes before body
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < tree.getBoneCount(); i++) {
+            AnimatedBone bone = tree.getBone(i);
+            names.add(bone.getBone().name());
+            int parent = tree.getParentIndex(i);
+            Assertions.assertTrue(parent < i);
+            Assertions.assertEquals(bone.getBone().parent(), parent == -1 ? null : tree.getBone(parent).getBone().name());
+        }
+        Assertions.assertEquals(Arrays.asList("root", "arm", "body", "head", "hat"), names);
+
+        Matrix4f[] expected = new Matrix4f[source.getBoneCount()];
+        Matrix4f[] actual = new Matrix4f[tree.getBoneCount()];
+        Arrays.setAll(expected, i -> new Matrix4f());
+        Arrays.setAll(actual, i -> new Matrix4f());
+        source.computeWorldMatrices(expected);
+        tree.computeWorldMatrices(actual);
+        for (int i = 0; i < actual.length; i++) {
+            Assertions.assertTrue(expected[source.getBoneIndex(tree.getBone(i).getBone().name())].equals(actual[i], 1.0E-6F));
+        }
+
+        // Hiding body must skip its whole subtree while still rendering the arm with the root transformation
+        tree.getBone("body").setVisible(false);
+        Map<String, Matrix4f> rendered = new HashMap<>();
+        MatrixStack matrixStack = MatrixStack.create();
+        tree.renderBatched((stack, bone, geometry, span) -> rendered.put(bone.getBone().name(), new Matrix4f(stack.position())), matrixStack);
+        Assertions.assertTrue(matrixStack.position().equals(new Matrix4f(), 0));
+        Assertions.assertEquals(Set.of("root", "arm"), rendered.keySet());
+        Assertions.assertTrue(expected[source.getBoneIndex("arm")].equals(rendered.get("arm"), 1.0E-6F));
+
+        GeometryTree cycle = new BoneListTree(List.of(createBone("first", "second"), createBone("second", "first")));
+        Assertions.assertThrows(IllegalStateException.class, () -> cycle.getBone(0));
+    }
+
+    @Test
+    public void testBatchedRender() throws GeometryCompileException {
+        GeometryModelData model = GeometryModelParser.parseModel(MODEL)[0];
+        GeometryTree tree = GeometryTree.create(model);
+        tree.getBone("body").getAnimationPose().add(0, 1, 0, 0, 20, 0, 0, 0, 0);
+        tree.getBone("arm").getAnimationPose().add(0, 0, 0, -30, 0, 15, 0, 0, 0);
+        tree.getBone("head").setVisible(false);
+
+        Map<Polygon, Matrix4f> expected = new IdentityHashMap<>();
+        for (AnimatedBone bone : tree.getRootBones()) {
+            bone.render((matrixStack, polygon) -> expected.put(polygon, new Matrix4f(matrixStack.position())), MatrixStack.create());
+        }
+
+        Map<Polygon, Matrix4f> actual = new IdentityHashMap<>();
+        MatrixStack matrixStack = MatrixStack.create();
+        tree.renderBatched(GeometryBatchRenderer.polygons((stack, polygon) -> actual.put(polygon, new Matrix4f(stack.position()))), matrixStack);
+        Assertions.assertTrue(matrixStack.position().equals(new Matrix4f(), 0));
+
+        Assertions.assertEquals(expected.size(), actual.size());
+        Assertions.assertEquals(6 * 3, actual.size());
+        for (Map.Entry<Polygon, Matrix4f> entry : expected.entrySet()) {
+            Assertions.assertTrue(entry.getValue().equals(actual.get(entry.getKey()), 1.0E-6F));
+        }
+
+        int[] spans = new int[1];
+        tree.renderBatched((stack, bone, geometry, span) -> {
+            Assertions.assertEquals(bone.getBone().name(), geometry.getBoneName(geometry.getSpanBone(span)));
+            spans[0]++;
+        }, MatrixStack.create());
+        Assertions.assertEquals(3, spans[0]);
+    }
+
+    @Test
+    public void testCullHiddenFaces() throws GeometryCompileException {
+        // Two touching cubes, a cube enclosed by a bigger cube, and a rotated cube touching the bigger cube
+        GeometryModelData model = GeometryModelParser.parseModel("{\"format_version\":\"1.12.0\",\"minecraft:geometry\":[{\"description\":{\"identifier\":\"cull\",\"texture_width\":32,\"texture_height\":32},\"bones\":[{\"name\":\"row\",\"pivot\":[0,0,0],\"cubes\":[{\"origin\":[0,0,0],\"size\":[1,1,1],\"uv\":[0,0]},{\"origin\":[1,0,0],\"size\":[1,1,1],\"uv\":[0,0]}]},{\"name\":\"enclosed\",\"pivot\":[0,0,0],\"mirror\":true,\"cubes\":[{\"origin\":[0,0,0],\"size\":[4,4,4],\"uv\":[0,0]},{\"origin\":[1,1,1],\"size\":[2,2,2],\"uv\":[0,0]},{\"origin\":[4,0,0],\"size\":[4,4,4],\"pivot\":[4,0,0],\"rotation\":[0,45,0],\"uv\":[0,0]}]}]}]}")[0];
+        GeometryTree expected = GeometryTree.create(model);
+        CompiledGeometry culled = CompiledGeometry.compile(model, GeometryCompileOptions.builder().setCullHiddenFaces(true).build());
+
+        Assertions.assertEquals(2 + 6, culled.getCulledPolygonCount());
+        Assertions.assertEquals(10, culled.getPolygons(culled.getBoneIndex("row")).size());
+        Assertions.assertEquals(12, culled.getPolygons(culled.getBoneIndex("enclosed")).size());
+        Assertions.assertEquals(0, CompiledGeometry.compile(model).getCulledPolygonCount());
+
+        // Every remaining polygon must exist unchanged in the original mesh
+        for (int i = 0; i < culled.getBoneCount(); i++) {
+            List<Polygon> original = expected.getBone(i).getPolygons();
+            for (Polygon polygon : culled.getPolygons(i)) {
+                Assertions.assertTrue(original.stream().anyMatch(p -> Arrays.equals(p.vertices(), polygon.vertices())));
+            }
+        }
+    }
+
+    @Test
+    public void testMergeQuads() throws GeometryCompileException {
+        // A strip of four cubes with continuous north, south, and up textures and a repeated down texture
+        GeometryModelData model = GeometryModelParser.parseModel("{\"format_version\":\"1.16.0\",\"minecraft:geometry\":[{\"description\":{\"identifier\":\"merge\",\"texture_width\":16,\"texture_height\":16},\"bones\":[{\"name\":\"strip\",\"pivot\":[0,0,0],\"rotation\":[0,30,0],\"cubes\":[{\"origin\":[0,0,0],\"size\":[1,1,1],\"uv\":{\"north\":{\"uv\":[0,0],\"uv_size\":[1,1]},\"south\":{\"uv\":[3,2],\"uv_size\":[1,1]},\"up\":{\"uv\":[0,4],\"uv_size\":[1,1]},\"down\":{\"uv\":[0,8],\"uv_size\":[1,1]}}},{\"origin\":[1,0,0],\"size\":[1,1,1],\"uv\":{\"north\":{\"uv\":[1,0],\"uv_size\":[1,1]},\"south\":{\"uv\":[2,2],\"uv_size\":[1,1]},\"up\":{\"uv\":[1,4],\"uv_size\":[1,1]},\"down\":{\"uv\":[0,8],\"uv_size\":[1,1]}}},{\"origin\":[2,0,0],\"size\":[1,1,1],\"uv\":{\"north\":{\"uv\":[2,0],\"uv_size\":[1,1]},\"south\":{\"uv\":[1,2],\"uv_size\":[1,1]},\"up\":{\"uv\":[2,4],\"uv_size\":[1,1]},\"down\":{\"uv\":[0,8],\"uv_size\":[1,1]}}},{\"origin\":[3,0,0],\"size\":[1,1,1],\"uv\":{\"north\":{\"uv\":[3,0],\"uv_size\":[1,1]},\"south\":{\"uv\":[0,2],\"uv_size\":[1,1]},\"up\":{\"uv\":[3,4],\"uv_size\":[1,1]},\"down\":{\"uv\":[0,8],\"uv_size\":[1,1]}}}]}]}]}")[0];
+        CompiledGeometry merged = CompiledGeometry.compile(model, GeometryCompileOptions.builder().setMergeQuads(true).build());
+        Assertions.assertEquals(9, merged.getMergedPolygonCount());
+        Assertions.assertEquals(3 + 4, merged.getPolygons(0).size());
+
+        List<Polygon> expected = render(GeometryTree.create(model));
+        List<Polygon> actual = render(merged.createTree());
+        Assertions.assertEquals(expected.stream().mapToDouble(GeometryTreeTest::getArea).sum(), actual.stream().mapToDouble(GeometryTreeTest::getArea).sum(), 1.0E-5);
+
+        // Every point of the original mesh must be drawn by a merged quad with the same texture coordinate
+        float[][] samples = {{0.5F, 0.5F}, {0.1F, 0.1F}, {0.9F, 0.1F}, {0.9F, 0.9F}, {0.1F, 0.9F}};
+        for (Polygon polygon : expected) {
+            for (float[] sample : samples) {
+                float[] point = sample(polygon, sample[0], sample[1]);
+                Assertions.assertTrue(actual.stream().anyMatch(quad -> {
+                    if (!quad.normals()[0].equals(polygon.normals()[0])) {
+                        return false;
+                    }
+                    float[] uv = project(quad, point);
+                    return uv != null && Math.abs(uv[0] - point[3]) < 1.0E-5F && Math.abs(uv[1] - point[4]) < 1.0E-5F;
+                }), () -> "No merged quad draws " + Arrays.toString(point));
+            }
+        }
+    }
+
+    @Test
+    public void testIndexedGeometry() throws GeometryCompileException {
+        GeometryModelData model = GeometryModelParser.parseModel("{\"format_version\":\"1.16.0\",\"minecraft:geometry\":[{\"description\":{\"identifier\":\"indexed\",\"texture_width\":16,\"texture_height\":16},\"bones\":[{\"name\":\"body\",\"pivot\":[0,0,0],\"cubes\":[{\"origin\":[0,0,0],\"size\":[2,2,2],\"uv\":{\"north\":{\"uv\":[0,0],\"uv_size\":[2,2],\"material_instance\":\"eyes\"},\"south\":{\"uv\":[2,0],\"uv_size\":[2,2]},\"east\":{\"uv\":[4,0],\"uv_size\":[2,2]},\"west\":{\"uv\":[6,0],\"uv_size\":[2,2]},\"up\":{\"uv\":[8,0],\"uv_size\":[2,2]},\"down\":{\"uv\":[10,0],\"uv_size\":[2,2]}}}]},{\"name\":\"mesh\",\"parent\":\"body\",\"pivot\":[0,0,0],\"poly_mesh\":{\"normalized_uvs\":true,\"positions\":[[0,0,0],[1,0,0],[1,1,0],[0,1,0]],\"normals\":[[0,0,-1]],\"uvs\":[[0,0],[1,0],[1,1],[0,1]],\"polys\":[[[0,0,0],[1,0,1],[2,0,2]],[[0,0,0],[2,0,2],[3,0,3]]]}}]}]}")[0];
+        CompiledGeometry geometry = CompiledGeometry.compile(model);
+        GeometryTree tree = geometry.createTree();
+        IndexedGeometry indexed = tree.bakeIndexed();
+        Assertions.assertSame(indexed, geometry.createTree().bakeIndexed());
+
+        // The cube is split into two materials and the two triangles of the poly mesh share two vertices
+        Assertions.assertEquals(3, indexed.getSpanCount());
+        Assertions.assertEquals("eyes", indexed.getSpanMaterial(0));
+        Assertions.assertEquals("texture", indexed.getSpanMaterial(1));
+        Assertions.assertEquals(4, indexed.getVertexCount(0));
+        Assertions.assertEquals(20, indexed.getVertexCount(1));
+        Assertions.assertEquals(4, indexed.getVertexCount(2));
+        Assertions.assertEquals(36 + 6, indexed.getIndexCount());
+
+        // Every triangle must reproduce the original polygon vertices
+        for (int span = 0; span < indexed.getSpanCount(); span++) {
+            AnimatedBone bone = tree.getBone(indexed.getSpanBone(span));
+            String material = indexed.getSpanMaterial(span);
+            List<Polygon> polygons = bone.getPolygons().stream().filter(polygon -> Objects.equals(polygon.material(), material)).toList();
+            int index = indexed.getFirstIndex(span);
+            for (Polygon polygon : polygons) {
+                Vertex[] vertices = polygon.vertices();
+                for (int i = 1; i < vertices.length - 1; i++) {
+                    int[] corners = {0, i, i + 1};
+                    for (int corner : corners) {
+                        int vertex = indexed.getIndices()[index++];
+                        Assertions.assertTrue(vertex >= indexed.getFirstVertex(span) && vertex < indexed.getFirstVertex(span) + indexed.getVertexCount(span));
+                        Assertions.assertEquals(vertices[corner].x(), indexed.getPositions()[vertex * IndexedGeometry.POSITION_SIZE]);
+                        Assertions.assertEquals(vertices[corner].y(), indexed.getPositions()[vertex * IndexedGeometry.POSITION_SIZE + 1]);
+                        Assertions.assertEquals(vertices[corner].u(), indexed.getUVs()[vertex * IndexedGeometry.UV_SIZE]);
+                        Assertions.assertEquals(polygon.normals()[corner].z(), indexed.getNormals()[vertex * IndexedGeometry.NORMAL_SIZE + 2]);
+                    }
+                }
+            }
+            Assertions.assertEquals(indexed.getFirstIndex(span) + indexed.getIndexCount(span), index);
+        }
+
+        Assertions.assertTrue(indexed.hasShortIndices());
+        ShortBuffer indices = ShortBuffer.allocate(indexed.getIndexCount());
+        indexed.writeIndices(indices);
+        for (int i = 0; i < indexed.getIndexCount(); i++) {
+            Assertions.assertEquals(indexed.getIndices()[i], indices.get(i) & 0xFFFF);
+        }
+    }
+
+    @Test
+    public void testWriteVertices() throws GeometryCompileException {
+        GeometryModelData model = GeometryModelParser.parseModel(MODEL)[0];
+        GeometryTree tree = GeometryTree.create(model);
+        tree.getBone("body").getAnimationPose().add(0, 1, 0, 0, 20, 0, 0, 0, 0);
+        tree.getBone("head").setVisible(false);
+
+        IndexedGeometry indexed = tree.bakeIndexed();
+        Matrix4f[] expected = new Matrix4f[tree.getBoneCount()];
+        tree.renderBatched((stack, bone, geometry, span) -> expected[geometry.getSpanBone(span)] = new Matrix4f(stack.position()), MatrixStack.create());
+
+        VertexLayout layout = VertexLayout.builder()
+                .add(VertexLayout.Attribute.POSITION, VertexLayout.Format.FLOAT)
+                .add(VertexLayout.Attribute.UV, VertexLayout.Format.HALF)
+                .add(VertexLayout.Attribute.NORMAL, VertexLayout.Format.NORMALIZED_BYTE)
+                .pad(1)
+                .build();
+        Assertions.assertEquals(20, layout.getStride());
+
+        Matrix4f[] matrices = new Matrix4f[tree.getBoneCount()];
+        Arrays.setAll(matrices, unused -> new Matrix4f());
+        ByteBuffer buffer = ByteBuffer.allocateDirect(indexed.getVertexCount() * layout.getStride() + 4).order(ByteOrder.nativeOrder());
+        buffer.position(4);
+        tree.writeVertices(buffer, layout, matrices);
+        Assertions.assertEquals(buffer.capacity(), buffer.position());
+
+        Vector3f position = new Vector3f();
+        Vector3f normal = new Vector3f();
+        for (int span = 0; span < indexed.getSpanCount(); span++) {
+            Matrix4f matrix = expected[indexed.getSpanBone(span)];
+            for (int vertex = indexed.getFirstVertex(span); vertex < indexed.getFirstVertex(span) + indexed.getVertexCount(span); vertex++) {
+                int offset = 4 + vertex * layout.getStride();
+                if (matrix == null) {
+                    // Hidden bones and their children collapse into degenerate triangles
+                    Assertions.assertEquals(0, buffer.getFloat(offset));
+                    Assertions.assertEquals(0, buffer.getFloat(offset + 4));
+                    Assertions.assertEquals(0, buffer.getFloat(offset + 8));
+                    continue;
+                }
+
+                matrix.transformPosition(position.set(indexed.getPositions()[vertex * 3], indexed.getPositions()[vertex * 3 + 1], indexed.getPositions()[vertex * 3 + 2]));
+                Assertions.assertEquals(position.x(), buffer.getFloat(offset), 1.0E-6F);
+                Assertions.assertEquals(position.y(), buffer.getFloat(offset + 4), 1.0E-6F);
+                Assertions.assertEquals(position.z(), buffer.getFloat(offset + 8), 1.0E-6F);
+
+                Assertions.assertEquals(indexed.getUVs()[vertex * 2], VertexWriter.fromHalf(buffer.getShort(offset + 12)), 1.0E-3F);
+                Assertions.assertEquals(indexed.getUVs()[vertex * 2 + 1], VertexWriter.fromHalf(buffer.getShort(offset + 14)), 1.0E-3F);
+
+                matrix.transformDirection(normal.set(indexed.getNormals()[vertex * 3], indexed.getNormals()[vertex * 3 + 1], indexed.getNormals()[vertex * 3 + 2])).normalize();
+                Assertions.assertEquals(normal.x(), buffer.get(offset + 16) / 127.0F, 1.0E-2F);
+                Assertions.assertEquals(normal.y(), buffer.get(offset + 17) / 127.0F, 1.0E-2F);
+                Assertions.assertEquals(normal.z(), buffer.get(offset + 18) / 127.0F, 1.0E-2F);
+            }
+        }
+
+        for (float value : new float[]{0.0F, 1.0F, -2.5F, 0.1F, 65504.0F, 6.1E-5F, 3.0E-7F}) {
+            Assertions.assertEquals(value, VertexWriter.fromHalf(VertexWriter.toHalf(value)), Math.abs(value) * 1.0E-3F + 1.0E-7F);
+        }
+        Assertions.assertEquals(Float.POSITIVE_INFINITY, VertexWriter.fromHalf(VertexWriter.toHalf(1.0E6F)));
+
+        // Hidden bones must not produce NaN normals when inverting their zeroed matrices
+        VertexLayout floatNormals = VertexLayout.builder().add(VertexLayout.Attribute.NORMAL, VertexLayout.Format.FLOAT).build();
+        ByteBuffer normalBuffer = ByteBuffer.allocate(indexed.getVertexCount() * floatNormals.getStride()).order(ByteOrder.nativeOrder());
+        tree.writeVertices(normalBuffer, floatNormals, matrices);
+        for (int span = 0; span < indexed.getSpanCount(); span++) {
+            boolean hidden = expected[indexed.getSpanBone(span)] == null;
+            for (int vertex = indexed.getFirstVertex(span); vertex < indexed.getFirstVertex(span) + indexed.getVertexCount(span); vertex++) {
+                for (int i = 0; i < 3; i++) {
+                    float value = normalBuffer.getFloat(vertex * floatNormals.getStride() + i * 4);
+                    Assertions.assertFalse(Float.isNaN(value));
+                    if (hidden) {
+                        Assertions.assertEquals(0, value);
+                    }
+                }
+            }
+        }
+
+        long allocated = Allocations.measure(() -> {
+            buffer.position(4);
+            tree.writeVertices(buffer, layout, matrices);
+        });
+        Assertions.assertEquals(0, allocated, "writeVertices allocated " + allocated + " bytes");
+    }
+
+    @Test
+    public void testBonePalette() throws GeometryCompileException {
+        GeometryModelData model = GeometryModelParser.parseModel(MODEL)[0];
+        GeometryTree tree = GeometryTree.create(model);
+        tree.getBone("body").getAnimationPose().add(0, 1, 0, 0, 20, 0, 0, 0, 0);
+        tree.getBone("arm").getAnimationPose().add(0, 0, 0, -30, 0, 15, 1, 1, 1);
+
+        IndexedGeometry indexed = tree.bakeIndexed();
+        Matrix4f[] matrices = new Matrix4f[tree.getBoneCount()];
+        Arrays.setAll(matrices, unused -> new Matrix4f());
+
+        VertexLayout skinnedLayout = VertexLayout.builder().add(VertexLayout.Attribute.POSITION, VertexLayout.Format.FLOAT).build();
+        ByteBuffer skinned = ByteBuffer.allocate(indexed.getVertexCount() * skinnedLayout.getStride());
+        tree.writeVertices(skinned, skinnedLayout, matrices);
+
+        VertexLayout layout = VertexLayout.builder()
+                .add(VertexLayout.Attribute.POSITION, VertexLayout.Format.FLOAT)
+                .add(VertexLayout.Attribute.BONE_INDEX, VertexLayout.Format.UNSIGNED_BYTE)
+                .pad(3)
+                .build();
+        ByteBuffer vertices = ByteBuffer.allocate(indexed.getVertexCount() * layout.getStride());
+        indexed.writeVertices(vertices, layout);
+        Assertions.assertFalse(vertices.hasRemaining());
+
+        // Bone 256 does not fit in a single byte
+        String[] bones = new String[257];
+        Arrays.fill(bones, "bone");
+        IndexedGeometry large = new IndexedGeometry(bones, new int[]{256}, new String[]{null}, new int[]{0, 1}, new int[]{0, 0}, new float[3], new float[2], new float[3], new int[0]);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> large.writeVertices(ByteBuffer.allocate(layout.getStride()), layout));
+        VertexLayout shortLayout = VertexLayout.builder()
+                .add(VertexLayout.Attribute.POSITION, VertexLayout.Format.FLOAT)
+                .add(VertexLayout.Attribute.BONE_INDEX, VertexLayout.Format.UNSIGNED_SHORT)
+                .pad(2)
+                .build();
+        ByteBuffer largeVertices = ByteBuffer.allocate(shortLayout.getStride());
+        large.writeVertices(largeVertices, shortLayout);
+        Assertions.assertEquals(256, largeVertices.getShort(12) & 0xFFFF);
+
+        FloatBuffer palette = FloatBuffer.allocate(tree.getBoneCount() * 16);
+        tree.writeBonePalette(palette, matrices, false);
+        Assertions.assertFalse(palette.hasRemaining());
+        FloatBuffer affinePalette = FloatBuffer.allocate(tree.getBoneCount() * 12);
+        tree.writeBonePalette(affinePalette, matrices, true);
+        Assertions.assertFalse(affinePalette.hasRemaining());
+
+        Matrix4f matrix = new Matrix4f();
+        Vector3f position = new Vector3f();
+        for (int vertex = 0; vertex < indexed.getVertexCount(); vertex++) {
+            int offset = vertex * layout.getStride();
+            int bone = vertices.get(offset + 12) & 0xFF;
+            position.set(vertices.getFloat(offset), vertices.getFloat(offset + 4), vertices.getFloat(offset + 8));
+            matrix.set(Arrays.copyOfRange(palette.array(), bone * 16, bone * 16 + 16)).transformPosition(position);
+
+            int skinnedOffset = vertex * skinnedLayout.getStride();
+            Assertions.assertEquals(skinned.getFloat(skinnedOffset), position.x(), 1.0E-6F);
+            Assertions.assertEquals(skinned.getFloat(skinnedOffset + 4), position.y(), 1.0E-6F);
+            Assertions.assertEquals(skinned.getFloat(skinnedOffset + 8), position.z(), 1.0E-6F);
+
+            // Each row of the affine matrix is a dot product with the homogeneous position
+            for (int row = 0; row < 3; row++) {
+                int index = bone * 12 + row * 4;
+                float value = affinePalette.get(index) * vertices.getFloat(offset) + affinePalette.get(index + 1) * vertices.getFloat(offset + 4) + affinePalette.get(index + 2) * vertices.getFloat(offset + 8) + affinePalette.get(index + 3);
+                Assertions.assertEquals(skinned.getFloat(skinnedOffset + row * 4), value, 1.0E-6F);
+            }
+        }
+    }
+
+    @Test
+    public void testDrawList() throws GeometryCompileException {
+        String cube = "{\"origin\":[0,0,0],\"size\":[2,2,2],\"uv\":{\"north\":{\"uv\":[0,0],\"uv_size\":[2,2],\"material_instance\":\"eyes\"},\"south\":{\"uv\":[2,0],\"uv_size\":[2,2]},\"east\":{\"uv\":[4,0],\"uv_size\":[2,2]},\"west\":{\"uv\":[6,0],\"uv_size\":[2,2]},\"up\":{\"uv\":[8,0],\"uv_size\":[2,2]},\"down\":{\"uv\":[10,0],\"uv_size\":[2,2]}}}";
+        GeometryModelData model = GeometryModelParser.parseModel("{\"format_version\":\"1.16.0\",\"minecraft:geometry\":[{\"description\":{\"identifier\":\"draw_list\",\"texture_width\":16,\"texture_height\":16},\"bones\":[{\"name\":\"body\",\"pivot\":[0,0,0],\"cubes\":[" + cube + "]},{\"name\":\"head\",\"parent\":\"body\",\"pivot\":[0,2,0],\"cubes\":[" + cube + "]}]}]}")[0];
+        GeometryTree tree = GeometryTree.create(model);
+        IndexedGeometry indexed = tree.bakeIndexed();
+        Assertions.assertEquals(4, indexed.getSpanCount());
+
+        ModelTexture skin = ModelTexture.texture().setTextureLocation(TextureLocation.local("skin")).setTextureLayer(ModelTexture.TextureLayer.CUTOUT).build();
+        ModelTexture eyes = ModelTexture.texture().setTextureLocation(TextureLocation.local("eyes")).setTextureLayer(ModelTexture.TextureLayer.TRANSLUCENT).build();
+        ModelTexture eyesBase = ModelTexture.texture().setTextureLocation(TextureLocation.local("eyes_base")).setTextureLayer(ModelTexture.TextureLayer.SOLID).build();
+        TextureTable textures = new TextureTable(Map.of("texture", new ModelTexture[]{skin}, "eyes", new ModelTexture[]{eyes, eyesBase}));
+
+        GeometryDrawList drawList = tree.createDrawList(textures);
+        List<GeometryDrawList.Batch> batches = drawList.getBatches();
+        Assertions.assertEquals(List.of(eyesBase, skin, eyes), batches.stream().map(GeometryDrawList.Batch::texture).toList());
+        Assertions.assertArrayEquals(new int[]{0, 2}, batches.get(0).spans());
+        Assertions.assertArrayEquals(new int[]{1, 3}, batches.get(1).spans());
+        Assertions.assertArrayEquals(new int[]{0, 2}, batches.get(2).spans());
+
+        // The indices of each batch are the indices of its spans in order
+        int index = 0;
+        for (GeometryDrawList.Batch batch : batches) {
+            Assertions.assertEquals(index, batch.firstIndex());
+            for (int span : batch.spans()) {
+                for (int i = 0; i < indexed.getIndexCount(span); i++) {
+                    Assertions.assertEquals(indexed.getIndices()[indexed.getFirstIndex(span) + i], drawList.getIndices()[index++]);
+                }
+            }
+            Assertions.assertEquals(index, batch.firstIndex() + batch.indexCount());
+        }
+        Assertions.assertEquals(drawList.getIndices().length, index);
+
+        tree.getBone("head").setVisible(false);
+        Matrix4f[] matrices = new Matrix4f[tree.getBoneCount()];
+        Arrays.setAll(matrices, unused -> new Matrix4f());
+        List<GeometryDrawList.Batch> rendered = new ArrayList<>();
+        tree.renderDrawList(drawList, (list, batch, boneMatrices) -> {
+            Assertions.assertSame(matrices, boneMatrices);
+            Assertions.assertTrue(boneMatrices[0].equals(new Matrix4f(), 1.0E-6F));
+            Assertions.assertTrue(boneMatrices[1].equals(new Matrix4f().zero(), 0));
+            rendered.add(batch);
+        }, matrices);
+        Assertions.assertEquals(batches, rendered);
+    }
+
+    @Test
+    public void testQuantizedGeometry() throws GeometryCompileException {
+        GeometryModelData model = GeometryModelParser.parseModel("{\"format_version\":\"1.12.0\",\"minecraft:geometry\":[{\"description\":{\"identifier\":\"quantized\",\"texture_width\":64,\"texture_height\":64},\"bones\":[{\"name\":\"root\",\"pivot\":[0,0,0],\"cubes\":[{\"origin\":[-7.3,0,-2.1],\"size\":[14.6,3.7,4.2],\"uv\":[0,0]}]},{\"name\":\"body\",\"parent\":\"root\",\"pivot\":[0,3,0],\"cubes\":[{\"origin\":[-2,2,-2],\"size\":[4,6,4],\"uv\":[0,12],\"rotation\":[12,37,-5],\"pivot\":[0,5,0]},{\"origin\":[-1,8,-1],\"size\":[2,2,2],\"uv\":[20,20],\"inflate\":0.25}]}]}]}")[0];
+        IndexedGeometry indexed = GeometryTree.create(model).bakeIndexed();
+        QuantizedGeometry quantized = QuantizedGeometry.quantize(indexed);
+        IndexedGeometry decoded = quantized.decode();
+        Assertions.assertEquals(indexed.getVertexCount(), decoded.getVertexCount());
+        Assertions.assertArrayEquals(indexed.getIndices(), decoded.getIndices());
+
+        float[] bounds = quantized.getBoneBounds();
+        float[] uvBounds = quantized.getUVBounds();
+        Vector3f expected = new Vector3f();
+        Vector3f actual = new Vector3f();
+        for (int span = 0; span < indexed.getSpanCount(); span++) {
+            Assertions.assertEquals(indexed.getSpanMaterial(span), decoded.getSpanMaterial(span));
+            int bone = indexed.getSpanBone(span);
+            for (int vertex = indexed.getFirstVertex(span); vertex < indexed.getFirstVertex(span) + indexed.getVertexCount(span); vertex++) {
+                for (int axis = 0; axis < 3; axis++) {
+                    float error = (bounds[bone * 6 + 3 + axis] - bounds[bone * 6 + axis]) / 65535.0F / 2.0F;
+                    Assertions.assertEquals(indexed.getPositions()[vertex * 3 + axis], decoded.getPositions()[vertex * 3 + axis], error + 1.0E-6F);
+                }
+                for (int axis = 0; axis < 2; axis++) {
+                    float error = (uvBounds[2 + axis] - uvBounds[axis]) / 65535.0F / 2.0F;
+                    Assertions.assertEquals(indexed.getUVs()[vertex * 2 + axis], decoded.getUVs()[vertex * 2 + axis], error + 1.0E-7F);
+                }
+                expected.set(indexed.getNormals()[vertex * 3], indexed.getNormals()[vertex * 3 + 1], indexed.getNormals()[vertex * 3 + 2]);
+                actual.set(decoded.getNormals()[vertex * 3], decoded.getNormals()[vertex * 3 + 1], decoded.getNormals()[vertex * 3 + 2]);
+                Assertions.assertTrue(expected.distance(actual) < 1.0E-4F);
+            }
+        }
+
+        Random random = new Random(4);
+        for (int i = 0; i < 100000; i++) {
+            expected.set(random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1);
+            if (expected.lengthSquared() < 1.0E-6F) {
+                continue;
+            }
+            expected.normalize();
+            QuantizedGeometry.decodeNormal(QuantizedGeometry.encodeNormal(expected.x, expected.y, expected.z), actual);
+            Assertions.assertTrue(expected.distance(actual) < 1.0E-4F, () -> expected + " decoded as " + actual);
+        }
+        for (float[] axis : new float[][]{{1, 0, 0}, {-1, 0, 0}, {0, 1, 0}, {0, -1, 0}, {0, 0, 1}, {0, 0, -1}}) {
+            QuantizedGeometry.decodeNormal(QuantizedGeometry.encodeNormal(axis[0], axis[1], axis[2]), actual);
+            Assertions.assertTrue(actual.equals(new Vector3f(axis), 1.0E-4F));
+        }
+    }
+
+    @Test
+    public void testFrustumCulling() throws GeometryCompileException {
+        GeometryModelData model = GeometryModelParser.parseModel("{\"format_version\":\"1.12.0\",\"minecraft:geometry\":[{\"description\":{\"identifier\":\"culling\",\"texture_width\":32,\"texture_height\":32},\"bones\":[{\"name\":\"root\",\"pivot\":[0,0,0],\"cubes\":[{\"origin\":[-8,0,-8],\"size\":[16,16,16],\"uv\":[0,0]}]},{\"name\":\"arm\",\"parent\":\"root\",\"pivot\":[0,0,0],\"cubes\":[{\"origin\":[-1,0,-1],\"size\":[2,4,2],\"uv\":[0,0]}]},{\"name\":\"hand\",\"parent\":\"arm\",\"pivot\":[0,0,0],\"cubes\":[{\"origin\":[-1,0,-1],\"size\":[2,2,2],\"uv\":[0,0]}]},{\"name\":\"locator\",\"parent\":\"root\",\"pivot\":[0,0,0]}]}]}")[0];
+        CompiledGeometry geometry = CompiledGeometry.compile(model);
+        GeometryTree tree = geometry.createTree();
+
+        BoneBounds bounds = tree.getBounds(0);
+        Assertions.assertSame(geometry.getBounds(0), bounds);
+        Assertions.assertTrue(bounds.min().equals(-0.5F, -1.0F, -0.5F));
+        Assertions.assertTrue(bounds.max().equals(0.5F, 0.0F, 0.5F));
+        Assertions.assertEquals(Math.sqrt(0.5F * 0.5F * 3), bounds.radius(), 1.0E-6F);
+        Assertions.assertTrue(tree.getBounds(3).isEmpty());
+
+        // Move the arm out of view and the hand back into view
+        tree.getBone("arm").getAnimationPose().add(320, 0, 0, 0, 0, 0, 0, 0, 0);
+        tree.getBone("hand").getAnimationPose().add(-320, 0, 0, 0, 0, 0, 0, 0, 0);
+
+        GeometryCuller culler = GeometryCuller.create(tree);
+        Assertions.assertTrue(culler.cull(new FrustumIntersection(new Matrix4f().ortho(-2, 2, -2, 2, -2, 2))));
+        Assertions.assertTrue(culler.isModelVisible());
+        Assertions.assertTrue(culler.isBoneVisible(0));
+        Assertions.assertFalse(culler.isBoneVisible(1));
+        Assertions.assertTrue(culler.isSubtreeVisible(1));
+        Assertions.assertTrue(culler.isBoneVisible(2));
+        Assertions.assertFalse(culler.isBoneVisible(3));
+
+        List<String> rendered = new ArrayList<>();
+        tree.renderBatched((stack, bone, indexed, span) -> rendered.add(bone.getBone().name()), MatrixStack.create(), culler);
+        Assertions.assertEquals(List.of("root", "hand"), rendered);
+
+        tree.getBone("arm").setVisible(false);
+        culler.cull(new FrustumIntersection(new Matrix4f().ortho(-2, 2, -2, 2, -2, 2)));
+        Assertions.assertFalse(culler.isSubtreeVisible(1));
+        Assertions.assertFalse(culler.isBoneVisible(2));
+
+        // Only the arm is inside this view, but it is hidden
+        Assertions.assertFalse(culler.cull(new FrustumIntersection(new Matrix4f().ortho(19, 21, -2, 2, -2, 2))));
+        tree.getBone("arm").setVisible(true);
+        Assertions.assertTrue(culler.cull(new FrustumIntersection(new Matrix4f().ortho(19, 21, -2, 2, -2, 2))));
+        Assertions.assertFalse(culler.isBoneVisible(0));
+        Assertions.assertTrue(culler.isBoneVisible(1));
+        Assertions.assertFalse(culler.isSubtreeVisible(2));
+    }
+
+    @Test
+    public void testCachedWorldMatrices() throws GeometryCompileException {
+        GeometryModelData model = GeometryModelParser.parseModel(MODEL)[0];
+        CompiledGeometry geometry = CompiledGeometry.compile(model);
+        GeometryTree tree = geometry.createTree();
+        Assertions.assertTrue(new AnimatedBone.AnimationPose().isIdentity());
+
+        Matrix4f[] matrices = new Matrix4f[tree.getBoneCount()];
+        Arrays.setAll(matrices, unused -> new Matrix4f());
+        tree.getBone("body").getAnimationPose().add(0, 1, 0, 0, 20, 0, 0, 0, 0);
+        tree.computeWorldMatrices(matrices);
+
+        // Resetting and reapplying the same pose must not recompute anything
+        tree.resetTransformation();
+        tree.getBone("body").getAnimationPose().add(0, 1, 0, 0, 20, 0, 0, 0, 0);
+        for (AnimatedBone bone : tree.getBones()) {
+            Assertions.assertFalse(((AnimatedBoneImpl) bone).updateLocalMatrix(), bone.getBone().name());
+        }
+
+        // Changes made directly to the pose vectors are picked up and propagate to all children
+        tree.getBone("body").getAnimationPose().rotation().set(0, -35, 10);
+        tree.getBone("arm").getAnimationPose().scale().set(2);
+        tree.computeWorldMatrices(matrices);
+
+        GeometryTree expected = geometry.createTree();
+        expected.getBone("body").getAnimationPose().add(0, 1, 0, 0, -35, 10, 0, 0, 0);
+        expected.getBone("arm").getAnimationPose().scale().set(2);
+        Map<Polygon, Matrix4f> rendered = new IdentityHashMap<>();
+        for (AnimatedBone bone : expected.getRootBones()) {
+            bone.render((matrixStack, polygon) -> rendered.put(polygon, new Matrix4f(matrixStack.position())), MatrixStack.create());
+        }
+        for (int i = 0; i < tree.getBoneCount(); i++) {
+            Assertions.assertTrue(rendered.get(expected.getBone(i).getPolygons().get(0)).equals(matrices[i], 1.0E-6F), tree.getBone(i).getBone().name());
+        }
+
+        // Rendering between pose changes updates the local matrices, which must not hide the change from the next pass
+        for (int step = 1; step <= 3; step++) {
+            tree.getBone("head").getAnimationPose().rotation().set(90 * step, 0, 0);
+            expected.getBone("head").getAnimationPose().rotation().set(90 * step, 0, 0);
+            tree.renderBatched((stack, bone, indexed, span) -> {
+            }, MatrixStack.create());
+            tree.getBone("hat").transform(new Matrix4f());
+
+            Matrix4f[] expectedMatrices = new Matrix4f[expected.getBoneCount()];
+            Arrays.setAll(expectedMatrices, unused -> new Matrix4f());
+            expected.computeWorldMatrices(expectedMatrices);
+            tree.computeWorldMatrices(matrices);
+            for (int i = 0; i < matrices.length; i++) {
+                Assertions.assertTrue(expectedMatrices[i].equals(matrices[i], 1.0E-6F), tree.getBone(i).getBone().name());
+            }
+        }
+    }
+
+    private static AnimatedBone createBone(String name, @Nullable String parent) {
+        GeometryModelData.Bone bone = new GeometryModelData.Bone(name, false, false, parent, new Vector3f(), new Vector3f(), new Vector3f(),
+                false, 0, false, new GeometryModelData.Cube[0], new GeometryModelData.Locator[0], null, null);
+        return new AnimatedBoneImpl(bone, 16, 16, new ArrayList<>());
+    }
+
+    private static List<Polygon> render(GeometryTree tree) {
+        List<Polygon> polygons = new ArrayList<>();
+        for (AnimatedBone bone : tree.getRootBones()) {
+            bone.render((matrixStack, polygon) -> polygons.add(polygon), MatrixStack.create());
+        }
+        return polygons;
+    }
+
+    private static float[] sample(Polygon quad, float s, float t) {
+        Vertex[] v = quad.vertices();
+        float[] result = new float[5];
+        for (int i = 0; i < 5; i++) {
+            float a = get(v[0], i) + (get(v[1], i) - get(v[0], i)) * s;
+            float b = get(v[3], i) + (get(v[2], i) - get(v[3], i)) * s;
+            result[i] = a + (b - a) * t;
+        }
+        return result;
+    }
+
+    private static float[] project(Polygon quad, float[] point) {
+        Vertex[] v = quad.vertices();
+        float[] a = new float[3];
+        float[] b = new float[3];
+        float[] d = new float[3];
+        for (int i = 0; i < 3; i++) {
+            a[i] = get(v[1], i) - get(v[0], i);
+            b[i] = get(v[3], i) - get(v[0], i);
+            d[i] = point[i] - get(v[0], i);
+        }
+        float aa = dot(a, a);
+        float ab = dot(a, b);
+        float bb = dot(b, b);
+        float da = dot(d, a);
+        float db = dot(d, b);
+        float det = aa * bb - ab * ab;
+        float s = (da * bb - db * ab) / det;
+        float t = (db * aa - da * ab) / det;
+        if (s < -1.0E-5F || s > 1 + 1.0E-5F || t < -1.0E-5F || t > 1 + 1.0E-5F) {
+            return null;
+        }
+        for (int i = 0; i < 3; i++) {
+            if (Math.abs(a[i] * s + b[i] * t - d[i]) > 1.0E-5F) {
+                return null;
+            }
+        }
+        return new float[]{
+                v[0].u() + (v[1].u() - v[0].u()) * s + (v[3].u() - v[0].u()) * t,
+                v[0].v() + (v[1].v() - v[0].v()) * s + (v[3].v() - v[0].v()) * t
+        };
+    }
+
+    private static double getArea(Polygon quad) {
+        Vertex[] v = quad.vertices();
+        Vector3f a = new Vector3f(v[1].x() - v[0].x(), v[1].y() - v[0].y(), v[1].z() - v[0].z());
+        Vector3f b = new Vector3f(v[3].x() - v[0].x(), v[3].y() - v[0].y(), v[3].z() - v[0].z());
+        return a.cross(b).length();
+    }
+
+    private static float get(Vertex vertex, int component) {
+        return switch (component) {
+            case 0 -> vertex.x();
+            case 1 -> vertex.y();
+            case 2 -> vertex.z();
+            case 3 -> vertex.u();
+            default -> vertex.v();
+        };
+    }
+
+    private static float dot(float[] a, float[] b) {
+        return a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
+    }
+
     private String getBoneTree(AnimatedBone bone) {
         return this.getBoneTree("\t", bone);
     }
@@ -41,4 +808,40 @@ public class GeometryTreeTest {
         }
         return builder.toString();
     }
+
+    /**
+     * A tree that only provides its bones, so every lookup uses the default implementations.
+     */
+    private record BoneListTree(List<AnimatedBone> bones) implements GeometryTree {
+
+        @Override
+        public @Nullable AnimatedBone getBone(String name) {
+            for (AnimatedBone bone : this.bones) {
+                if (bone.getBone().name().equals(name)) {
+                    return bone;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Collection<AnimatedBone> getBones() {
+            return this.bones;
+        }
+
+        @Override
+        public Collection<AnimatedBone> getRootBones() {
+            return this.bones.stream().filter(bone -> bone.getBone().parent() == null).collect(Collectors.toList());
+        }
+
+        @Override
+        public @Nullable LocatorTransformation getLocatorTransformation(String name) {
+            return null;
+        }
+
+        @Override
+        public GeometryModelData.Locator[] getLocators() {
+            return new GeometryModelData.Locator[0];
+        }
+    }
 }